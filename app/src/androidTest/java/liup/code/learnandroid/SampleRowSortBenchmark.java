@@ -0,0 +1,109 @@
+package liup.code.learnandroid;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 在设备上比较两种列表排序方式：原先每行一个HashMap、每次比较都调用Collator.compare，
+ * 与{@link SampleRow}预先计算CollationKey后按字节比较（包括生成key的时间），
+ * 耗时输出到logcat（tag为SampleRowSortBenchmark）。
+ */
+@RunWith(AndroidJUnit4.class)
+public class SampleRowSortBenchmark {
+
+    private static final String TAG = "SampleRowSortBenchmark";
+
+    private static final int[] SIZES = {1000, 10000, 50000};
+
+    private static final int WARMUP_ROUNDS = 2;
+
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void compareSortStrategies() throws Exception {
+        for (int size : SIZES) {
+            List<String> titles = randomTitles(size);
+
+            long mapNanos = Long.MAX_VALUE;
+            long rowNanos = Long.MAX_VALUE;
+            List<Map<String, Object>> maps = null;
+            List<SampleRow> rows = null;
+            for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+                long start = System.nanoTime();
+                maps = sortMaps(titles);
+                long middle = System.nanoTime();
+                rows = sortRows(titles);
+                long end = System.nanoTime();
+                if (round >= WARMUP_ROUNDS) {
+                    mapNanos = Math.min(mapNanos, middle - start);
+                    rowNanos = Math.min(rowNanos, end - middle);
+                }
+            }
+
+            // 两种方式的排序结果必须一致。
+            for (int i = 0; i < size; i++) {
+                assertEquals(maps.get(i).get("title"), rows.get(i).getTitle());
+            }
+            Log.i(TAG, size + " rows: HashMap+Collator.compare " + mapNanos / 1000
+                    + "us, SampleRow+CollationKey " + rowNanos / 1000 + "us");
+        }
+    }
+
+    /** 原来的排序方式. */
+    private static List<Map<String, Object>> sortMaps(List<String> titles) {
+        final Collator collator = Collator.getInstance();
+        List<Map<String, Object>> data = new ArrayList<Map<String, Object>>(titles.size());
+        for (String title : titles) {
+            Map<String, Object> temp = new HashMap<String, Object>();
+            temp.put("title", title);
+            temp.put("intent", null);
+            data.add(temp);
+        }
+        Collections.sort(data, new Comparator<Map<String, Object>>() {
+            public int compare(Map<String, Object> map1, Map<String, Object> map2) {
+                return collator.compare(map1.get("title"), map2.get("title"));
+            }
+        });
+        return data;
+    }
+
+    private static List<SampleRow> sortRows(List<String> titles) {
+        Collator collator = Collator.getInstance();
+        List<SampleRow> data = new ArrayList<SampleRow>(titles.size());
+        for (String title : titles) {
+            data.add(new SampleRow(collator, new SampleCatalog.Item(title, null, null, null)));
+        }
+        Collections.sort(data, new Comparator<SampleRow>() {
+            public int compare(SampleRow row1, SampleRow row2) {
+                return row1.sortKey.compareTo(row2.sortKey);
+            }
+        });
+        return data;
+    }
+
+    private static List<String> randomTitles(int size) {
+        Random random = new Random(size);
+        String[] words = {"Accessibility", "Animation", "Custom", "View", "Layout", "Default",
+                "Service", "Clock", "Alarm", "List", "Graphics", "Media", "Text", "Toggle"};
+        List<String> titles = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            titles.add(words[random.nextInt(words.length)] + " "
+                    + words[random.nextInt(words.length)] + " " + random.nextInt(1000));
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,135 @@
+package liup.code.learnandroid.accessibility;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static liup.code.learnandroid.accessibility.FeedbackProfile.entry;
+import static org.junit.Assert.*;
+
+/**
+ * 在设备上比较{@link FeedbackProfile}与原来的SparseArray查找表的查找耗时，
+ * 结果输出到logcat（tag为FeedbackProfileBenchmark）。
+ */
+@RunWith(AndroidJUnit4.class)
+public class FeedbackProfileBenchmark {
+
+    private static final String TAG = "FeedbackProfileBenchmark";
+
+    private static final int INDEX_SCREEN_ON = FeedbackProfile.INDEX_SCREEN_ON;
+
+    private static final int INDEX_SCREEN_OFF = FeedbackProfile.INDEX_SCREEN_OFF;
+
+    private static final int INDEX_RINGER_NORMAL = FeedbackProfile.INDEX_RINGER_NORMAL;
+
+    private static final int INDEX_RINGER_VIBRATE = FeedbackProfile.INDEX_RINGER_VIBRATE;
+
+    private static final int INDEX_RINGER_SILENT = FeedbackProfile.INDEX_RINGER_SILENT;
+
+    private static final int WARMUP_ROUNDS = 3;
+
+    private static final int ROUNDS = 10;
+
+    private static final int LOOKUPS_PER_ROUND = 1000000;
+
+    /** 查找的key：大部分命中，也有没有反馈的事件类型. */
+    private static final int[] KEYS = {
+            AccessibilityEvent.TYPE_VIEW_CLICKED,
+            AccessibilityEvent.TYPE_VIEW_FOCUSED,
+            AccessibilityEvent.TYPE_VIEW_HOVER_ENTER,
+            AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED,
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED,
+            INDEX_SCREEN_ON,
+            AccessibilityEvent.TYPE_VIEW_SELECTED,
+            INDEX_RINGER_NORMAL
+    };
+
+    /** 与res/xml/clockback_profile.xml相同的反馈配置，资源ID用假的值. */
+    private final FeedbackProfile mProfile = FeedbackProfile.of(
+            entry(AccessibilityEvent.TYPE_VIEW_CLICKED, 1, 0L, 100L),
+            entry(AccessibilityEvent.TYPE_VIEW_LONG_CLICKED, 1, 0L, 100L),
+            entry(AccessibilityEvent.TYPE_VIEW_SELECTED, 2, 0L, 15L, 10L, 15L),
+            entry(AccessibilityEvent.TYPE_VIEW_FOCUSED, 2, 0L, 15L, 10L, 15L),
+            entry(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED, 3, 0L, 25L, 50L, 25L, 50L, 25L),
+            entry(AccessibilityEvent.TYPE_VIEW_HOVER_ENTER, 4, 0L, 15L, 10L, 15L, 15L, 10L),
+            entry(INDEX_SCREEN_ON, 5, 0L, 10L, 10L, 20L, 20L, 30L),
+            entry(INDEX_SCREEN_OFF, 6, 0L, 30L, 20L, 20L, 10L, 10L),
+            entry(INDEX_RINGER_SILENT, 7),
+            entry(INDEX_RINGER_VIBRATE, 8),
+            entry(INDEX_RINGER_NORMAL, 9));
+
+    /** 防止查找被优化掉. */
+    private long mSink;
+
+    @Test
+    public void lookupsMatchAndAreFaster() throws Exception {
+        SparseArray<Integer> sounds = new SparseArray<Integer>();
+        for (int key : mProfile.getSoundKeys()) {
+            sounds.put(key, mProfile.getSoundResourceId(key));
+        }
+        SparseArray<long[]> patterns = new SparseArray<long[]>();
+        for (int key : mProfile.getVibrationKeys()) {
+            patterns.put(key, mProfile.getVibrationPattern(key));
+        }
+        for (int key : KEYS) {
+            Integer soundId = sounds.get(key);
+            assertEquals(soundId != null ? soundId : 0, mProfile.getSoundResourceId(key));
+            assertSame(patterns.get(key), mProfile.getVibrationPattern(key));
+        }
+
+        long sparseNanos = Long.MAX_VALUE;
+        long profileNanos = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            lookUpSparse(sounds, patterns);
+            long middle = System.nanoTime();
+            lookUpProfile();
+            long end = System.nanoTime();
+            if (round >= WARMUP_ROUNDS) {
+                sparseNanos = Math.min(sparseNanos, middle - start);
+                profileNanos = Math.min(profileNanos, end - middle);
+            }
+        }
+        Log.i(TAG, "SparseArray: " + sparseNanos / LOOKUPS_PER_ROUND + "."
+                + sparseNanos % LOOKUPS_PER_ROUND / (LOOKUPS_PER_ROUND / 10)
+                + "ns/lookup, FeedbackProfile: " + profileNanos / LOOKUPS_PER_ROUND + "."
+                + profileNanos % LOOKUPS_PER_ROUND / (LOOKUPS_PER_ROUND / 10)
+                + "ns/lookup (" + mSink + ")");
+        assertTrue("FeedbackProfile " + profileNanos + "ns, SparseArray " + sparseNanos + "ns",
+                profileNanos < sparseNanos);
+    }
+
+    /** 原来的查找方式：每次查找提示音都拆箱. */
+    private void lookUpSparse(SparseArray<Integer> sounds, SparseArray<long[]> patterns) {
+        long sum = 0;
+        for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+            int key = KEYS[i & (KEYS.length - 1)];
+            Integer soundId = sounds.get(key);
+            if (soundId != null) {
+                sum += soundId;
+            }
+            long[] pattern = patterns.get(key);
+            if (pattern != null) {
+                sum += pattern.length;
+            }
+        }
+        mSink += sum;
+    }
+
+    private void lookUpProfile() {
+        long sum = 0;
+        for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+            int key = KEYS[i & (KEYS.length - 1)];
+            sum += mProfile.getSoundResourceId(key);
+            long[] pattern = mProfile.getVibrationPattern(key);
+            if (pattern != null) {
+                sum += pattern.length;
+            }
+        }
+        mSink += sum;
+    }
+}
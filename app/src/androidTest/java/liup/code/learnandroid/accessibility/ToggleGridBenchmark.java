@@ -0,0 +1,119 @@
+package liup.code.learnandroid.accessibility;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityNodeProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * 在设备上为1024个格子的{@link CustomViewAccessibilityActivity.ToggleGridView}生成整棵虚拟节点树，
+ * 以及触摸浏览时的命中测试，耗时输出到logcat（tag为ToggleGridBenchmark）。
+ */
+@RunWith(AndroidJUnit4.class)
+public class ToggleGridBenchmark {
+
+    private static final String TAG = "ToggleGridBenchmark";
+
+    private static final int ROWS = 32;
+
+    private static final int COLUMNS = 32;
+
+    private static final int WARMUP_ROUNDS = 3;
+
+    private static final int ROUNDS = 10;
+
+    private CustomViewAccessibilityActivity.ToggleGridView mGrid;
+
+    /** 防止命中测试被优化掉. */
+    private long mSink;
+
+    @Before
+    public void setUp() throws Exception {
+        final Context context = new ContextThemeWrapper(InstrumentationRegistry.getTargetContext(),
+                android.R.style.Theme_Material_Light);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mGrid = new CustomViewAccessibilityActivity.ToggleGridView(context, null);
+                mGrid.setGridSize(ROWS, COLUMNS);
+                int unspecified = View.MeasureSpec.makeMeasureSpec(0,
+                        View.MeasureSpec.UNSPECIFIED);
+                mGrid.measure(unspecified, unspecified);
+                mGrid.layout(0, 0, mGrid.getMeasuredWidth(), mGrid.getMeasuredHeight());
+            }
+        });
+    }
+
+    @Test
+    public void buildsNodeTreeFor1kCells() throws Exception {
+        AccessibilityNodeProvider provider = mGrid.getAccessibilityNodeProvider();
+        AccessibilityNodeInfo host = provider.createAccessibilityNodeInfo(
+                AccessibilityNodeProvider.HOST_VIEW_ID);
+        assertEquals(ROWS * COLUMNS, host.getChildCount());
+        host.recycle();
+
+        // 每个格子中心的命中测试都找回这个格子。
+        Rect bounds = new Rect();
+        for (int cell = 0; cell < ROWS * COLUMNS; cell++) {
+            AccessibilityNodeInfo info = provider.createAccessibilityNodeInfo(cell);
+            info.getBoundsInParent(bounds);
+            assertTrue(info.isCheckable());
+            assertEquals(cell, mGrid.getCellAt(bounds.exactCenterX(), bounds.exactCenterY()));
+            info.recycle();
+        }
+
+        long treeNanos = Long.MAX_VALUE;
+        long hitTestNanos = Long.MAX_VALUE;
+        int lookups = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            buildTree(provider);
+            long middle = System.nanoTime();
+            lookups = hitTestAll();
+            long end = System.nanoTime();
+            if (round >= WARMUP_ROUNDS) {
+                treeNanos = Math.min(treeNanos, middle - start);
+                hitTestNanos = Math.min(hitTestNanos, end - middle);
+            }
+        }
+        Log.i(TAG, ROWS * COLUMNS + " cells: node tree " + treeNanos / 1000 + "us ("
+                + treeNanos / (ROWS * COLUMNS) + "ns/node), hit test "
+                + hitTestNanos / lookups + "ns/lookup (" + mSink + ")");
+    }
+
+    /** 与辅助服务读取整棵树一样：先取网格的节点，再逐个取格子的节点，用完回收. */
+    private static void buildTree(AccessibilityNodeProvider provider) {
+        AccessibilityNodeInfo host = provider.createAccessibilityNodeInfo(
+                AccessibilityNodeProvider.HOST_VIEW_ID);
+        int count = host.getChildCount();
+        host.recycle();
+        for (int cell = 0; cell < count; cell++) {
+            provider.createAccessibilityNodeInfo(cell).recycle();
+        }
+    }
+
+    /** 像触摸浏览时手指划过一样，每隔3个像素查找一次手指下的格子. */
+    private int hitTestAll() {
+        int lookups = 0;
+        long sum = 0;
+        for (int y = 0; y < mGrid.getHeight(); y += 3) {
+            for (int x = 0; x < mGrid.getWidth(); x += 3) {
+                sum += mGrid.getCellAt(x, y);
+                lookups++;
+            }
+        }
+        mSink += sum;
+        return lookups;
+    }
+}
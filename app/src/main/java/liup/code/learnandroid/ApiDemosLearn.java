@@ -2,24 +2,36 @@ package liup.code.learnandroid;
 
 import android.app.ListActivity;
 import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
 import android.support.v7.app.AppCompatActivity;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.ListView;
-import android.widget.SimpleAdapter;
 
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class ApiDemosLearn extends ListActivity {
 
+    /** 列表适配器，异步加载时逐批追加. */
+    private SampleListAdapter mAdapter;
+
+    /** 计算本列表排序key的Collator。Collator不是线程安全的，异步加载时只在加载线程上使用. */
+    private final Collator mCollator = Collator.getInstance();
+
+    /** 正在进行的异步加载，没有时为null. */
+    private CatalogLoadTask mLoadTask;
+
+    /** 当前列表对应的目录路径. */
+    private String mPath;
+
+    /** 构建列表时目录的版本，目录被包变化修补后据此刷新列表. */
+    private int mCatalogVersion = -1;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -31,75 +43,145 @@ public class ApiDemosLearn extends ListActivity {
         if (path == null) {
             path = "";
         }
-        setListAdapter(new SimpleAdapter(this, getData(path),
-                android.R.layout.simple_list_item_1, new String[]{"title"},
-                new int[]{android.R.id.text1}));
+        mPath = path;
+        mAdapter = new SampleListAdapter(this);
+        setListAdapter(mAdapter);
         getListView().setTextFilterEnabled(true);
-    }
 
-    protected List<Map<String, Object>> getData(String prefix) {
-        List<Map<String, Object>> myData = new ArrayList<Map<String, Object>>();
+        if (SampleCatalogLoader.peekCatalog() == null) {
+            // 在后台解析示例，避免在主线程上查询PackageManager和加载label。
+            mLoadTask = new CatalogLoadTask(path);
+            mLoadTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    }
 
-        Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
-        mainIntent.addCategory(Intent.CATEGORY_SAMPLE_CODE);
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // 目录已在内存中：第一次显示，或者目录在后台被包变化修补过，直接取当前一级。
+        SampleCatalog catalog = SampleCatalogLoader.peekCatalog();
+        if (mLoadTask == null && catalog != null && catalog.getVersion() != mCatalogVersion) {
+            mCatalogVersion = catalog.getVersion();
+            mAdapter.setRows(getData(mPath));
+            mAdapter.setCatalog(catalog);
+        }
+    }
 
-        PackageManager pm = getPackageManager();
-        List<ResolveInfo> list = pm.queryIntentActivities(mainIntent, 0);
+    @Override
+    protected void onDestroy() {
+        if (mLoadTask != null) {
+            mLoadTask.cancel(true);
+            mLoadTask = null;
+        }
+        super.onDestroy();
+    }
 
-        if (null == list)
-            return myData;
+    /**
+     * 在后台加载示例目录，把当前一级的列表项逐批追加到列表，加载完成后再统一排序。
+     * 如果其它实例先发布了目录，已追加的行来自被丢弃的目录，加载完成时整体换成共享目录的行。
+     */
+    private class CatalogLoadTask extends AsyncTask<Void, SampleRow[], List<SampleRow>>
+            implements SampleCatalogLoader.Progress {
+        /** 当前列表对应的目录路径. */
+        private final String mPrefix;
 
-        String[] prefixPath;
-        String prefixWithSlash = prefix;
+        /** 当前一级已经发布的列表项数量，只在加载线程上访问. */
+        private int mPublished;
 
-        if (prefix.equals("")) {
-            prefixPath = null;
-        } else {
-            prefixPath = prefix.split("/");
-            prefixWithSlash = prefix + "/";
+        CatalogLoadTask(String prefix) {
+            mPrefix = prefix;
         }
 
-        int len = list.size();
+        /**
+         * @return 需要替换全部行时返回共享目录当前一级的行；行已经逐批追加完时返回null。
+         */
+        @Override
+        protected List<SampleRow> doInBackground(Void... params) {
+            SampleCatalog catalog = SampleCatalogLoader.readOrLoadCatalog(
+                    getApplicationContext(), this);
+            if (catalog == null || isCancelled()) {
+                return null;
+            }
+            SampleCatalog published = SampleCatalogLoader.publishCatalog(catalog);
+            if (published != catalog && mPublished > 0) {
+                // 已发布的下标指向被丢弃的目录，不能接着追加。
+                List<SampleCatalog.Item> items = published.getItems(mPrefix);
+                List<SampleRow> rows = new ArrayList<SampleRow>(items.size());
+                addItems(rows, items, 0, items.size());
+                mPublished = items.size();
+                return rows;
+            }
+            onBatchLoaded(published);
+            return null;
+        }
 
-        Map<String, Boolean> entries = new HashMap<String, Boolean>();
+        /**
+         * 把当前一级中新出现的列表项发布到主线程。在加载线程上调用。
+         *
+         * @param catalog 正在构建的目录。
+         */
+        @Override
+        public void onBatchLoaded(SampleCatalog catalog) {
+            List<SampleCatalog.Item> items = catalog.getItems(mPrefix);
+            int len = items.size();
+            if (len <= mPublished) {
+                return;
+            }
+            List<SampleRow> batch = new ArrayList<SampleRow>(len - mPublished);
+            addItems(batch, items, mPublished, len);
+            mPublished = len;
+            publishProgress(batch.toArray(new SampleRow[batch.size()]));
+        }
 
-        for (int i = 0; i < len; i++) {
-            ResolveInfo info = list.get(i);
-            CharSequence labelSeq = info.loadLabel(pm);
-            String label = labelSeq != null
-                    ? labelSeq.toString()
-                    : info.activityInfo.name;
+        @Override
+        protected void onProgressUpdate(SampleRow[]... batches) {
+            for (SampleRow[] batch : batches) {
+                mAdapter.addAll(Arrays.asList(batch));
+            }
+        }
 
-            if (prefixWithSlash.length() == 0 || label.startsWith(prefixWithSlash)) {
+        @Override
+        protected void onPostExecute(List<SampleRow> rows) {
+            if (rows != null) {
+                mAdapter.setRows(rows);
+            }
+            // 所有批次都到齐后再按显示名称排序。
+            SampleCatalog catalog = SampleCatalogLoader.peekCatalog();
+            mCatalogVersion = catalog.getVersion();
+            mAdapter.sort(sDisplayNameComparator);
+            mAdapter.setCatalog(catalog);
+            mLoadTask = null;
+        }
+    }
 
-                String[] labelPath = label.split("/");
+    /**
+     * 把目录中[from, to)范围的列表项转换成列表数据。
+     */
+    private void addItems(List<SampleRow> data, List<SampleCatalog.Item> items,
+                          int from, int to) {
+        for (int i = from; i < to; i++) {
+            SampleCatalog.Item item = items.get(i);
+            data.add(new SampleRow(mCollator, item));
+        }
+    }
 
-                String nextLabel = prefixPath == null ? labelPath[0] : labelPath[prefixPath.length];
+    protected List<SampleRow> getData(String prefix) {
+        List<SampleRow> myData = new ArrayList<SampleRow>();
 
-                if ((prefixPath != null ? prefixPath.length : 0) == labelPath.length - 1) {
-                    addItem(myData, nextLabel, activityIntent(
-                            info.activityInfo.applicationInfo.packageName,
-                            info.activityInfo.name));
-                } else {
-                    if (entries.get(nextLabel) == null) {
-                        addItem(myData, nextLabel, browseIntent(prefix.equals("") ? nextLabel : prefix + "/" + nextLabel));
-                        entries.put(nextLabel, true);
-                    }
-                }
-            }
-        }
+        // 直接取目录树中对应节点的子项。
+        List<SampleCatalog.Item> items = SampleCatalogLoader.getCatalog(this).getItems(prefix);
+        addItems(myData, items, 0, items.size());
 
         Collections.sort(myData, sDisplayNameComparator);
 
         return myData;
     }
 
-    private final static Comparator<Map<String, Object>> sDisplayNameComparator =
-            new Comparator<Map<String, Object>>() {
-                private final Collator collator = Collator.getInstance();
-
-                public int compare(Map<String, Object> map1, Map<String, Object> map2) {
-                    return collator.compare(map1.get("title"), map2.get("title"));
+    /** 按预先计算好的排序key比较，不再在每次比较时按语言规则比较标题. */
+    private final static Comparator<SampleRow> sDisplayNameComparator =
+            new Comparator<SampleRow>() {
+                public int compare(SampleRow row1, SampleRow row2) {
+                    return row1.sortKey.compareTo(row2.sortKey);
                 }
             };
 
@@ -114,19 +196,15 @@ public class ApiDemosLearn extends ListActivity {
         result.putExtra("liup.code.apis.Path", path);
         return result;
     }
-    protected void addItem(List<Map<String, Object>> data, String name, Intent intent) {
-        Map<String, Object> temp = new HashMap<String, Object>();
-        temp.put("title", name);
-        temp.put("intent", intent);
-        data.add(temp);
-    }
 
     @Override
-    @SuppressWarnings("unchecked")
     protected void onListItemClick(ListView l, View v, int position, long id) {
-        Map<String, Object> map = (Map<String, Object>)l.getItemAtPosition(position);
+        SampleCatalog.Item item = ((SampleRow) l.getItemAtPosition(position)).item;
 
-        Intent intent = new Intent((Intent) map.get("intent"));
+        // 点击时才构建Intent，列表中不保存Intent。
+        Intent intent = item.isBrowse()
+                ? browseIntent(item.path)
+                : activityIntent(item.packageName, item.className);
         intent.addCategory(Intent.CATEGORY_SAMPLE_CODE);
         startActivity(intent);
     }
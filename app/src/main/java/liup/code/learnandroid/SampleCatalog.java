@@ -0,0 +1,203 @@
+package liup.code.learnandroid;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @title 示例目录的前缀树索引
+ * @desc .  按"/"切分每个示例Activity的label，建立一棵前缀树。
+ *          每一级列表就是对应节点的子项，浏览时只需沿路径查找节点，
+ *          不必再对全部示例重新查询PackageManager、加载label并切分。
+ *          目录可能被加载线程、主线程和包变化广播同时访问，所有方法都以目录自身加锁。
+ */
+class SampleCatalog {
+
+    /** 列表中的一项：要么指向一个示例Activity，要么指向下一级目录。 */
+    static final class Item {
+        /** 显示的标题，即label在当前级的那一段. */
+        final String title;
+
+        /** 示例所在的包名，目录项为null. */
+        final String packageName;
+
+        /** 示例Activity的类名，目录项为null. */
+        final String className;
+
+        /** 下一级目录的完整路径，示例项为null. */
+        final String path;
+
+        Item(String title, String packageName, String className, String path) {
+            this.title = title;
+            this.packageName = packageName;
+            this.className = className;
+            this.path = path;
+        }
+
+        boolean isBrowse() {
+            return path != null;
+        }
+    }
+
+    /** 一个示例Activity的原始记录，用于持久化和按包更新目录. */
+    static final class Entry {
+        /** 完整的label. */
+        final String label;
+
+        /** 示例所在的包名. */
+        final String packageName;
+
+        /** 示例Activity的类名. */
+        final String className;
+
+        /** 示例在前缀树中的列表项，加入目录时设置. */
+        Item item;
+
+        Entry(String label, String packageName, String className) {
+            this.label = label;
+            this.packageName = packageName;
+            this.className = className;
+        }
+    }
+
+    /** 前缀树节点. */
+    private static final class Node {
+        /** 子目录，按label的下一段索引. */
+        final HashMap<String, Node> children = new HashMap<String, Node>();
+
+        /** 本级的列表项，按扫描顺序排列（与原先getData的顺序一致）. */
+        final ArrayList<Item> items = new ArrayList<Item>();
+    }
+
+    private final Node mRoot = new Node();
+
+    /** 按添加顺序保存的全部示例. */
+    private final ArrayList<Entry> mEntries = new ArrayList<Entry>();
+
+    /** 每次修改目录时递增，用于判断依赖目录的数据是否过期. */
+    private int mVersion;
+
+    /**
+     * 添加一个示例Activity。
+     *
+     * @param label 示例的label，例如 "Accessibility/Custom View"。
+     * @param packageName 示例所在的包名。
+     * @param className 示例Activity的类名。
+     */
+    synchronized void add(String label, String packageName, String className) {
+        addLocked(new Entry(label, packageName, className));
+        mVersion++;
+    }
+
+    /**
+     * 用一个包的新示例替换该包原有的示例，只修改受影响的节点，不重建整个目录。
+     *
+     * @param packageName 发生变化的包名。
+     * @param entries 该包现在的示例，包已被卸载时为空列表。
+     */
+    synchronized void replacePackage(String packageName, List<Entry> entries) {
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            Entry entry = mEntries.get(i);
+            if (entry.packageName.equals(packageName)) {
+                removeLocked(entry);
+                mEntries.remove(i);
+            }
+        }
+        for (Entry entry : entries) {
+            addLocked(entry);
+        }
+        mVersion++;
+    }
+
+    private void addLocked(Entry entry) {
+        String[] labelPath = entry.label.split("/");
+        int last = labelPath.length - 1;
+
+        Node node = mRoot;
+        String path = null;
+        for (int i = 0; i < last; i++) {
+            String segment = labelPath[i];
+            path = path == null ? segment : path + "/" + segment;
+
+            Node child = node.children.get(segment);
+            if (child == null) {
+                // 第一次遇到这个目录，在上一级插入一个浏览项。
+                child = new Node();
+                node.children.put(segment, child);
+                node.items.add(new Item(segment, null, null, path));
+            }
+            node = child;
+        }
+        entry.item = new Item(labelPath[last], entry.packageName, entry.className, null);
+        node.items.add(entry.item);
+        mEntries.add(entry);
+    }
+
+    /** 从前缀树中删除示例，并删掉因此变空的目录. */
+    private void removeLocked(Entry entry) {
+        String[] labelPath = entry.label.split("/");
+        int last = labelPath.length - 1;
+
+        Node[] nodes = new Node[labelPath.length];
+        nodes[0] = mRoot;
+        for (int i = 0; i < last; i++) {
+            nodes[i + 1] = nodes[i].children.get(labelPath[i]);
+        }
+        removeItem(nodes[last].items, entry.item);
+
+        for (int i = last - 1; i >= 0 && nodes[i + 1].items.isEmpty(); i--) {
+            Node parent = nodes[i];
+            parent.children.remove(labelPath[i]);
+            for (Item item : parent.items) {
+                if (item.isBrowse() && item.title.equals(labelPath[i])) {
+                    removeItem(parent.items, item);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void removeItem(ArrayList<Item> items, Item item) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i) == item) {
+                items.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 返回某一级目录下的列表项，顺序与添加顺序一致。
+     *
+     * @param prefix 目录路径，""表示根目录。
+     * @return 列表项的副本，目录不存在时为空列表。
+     */
+    synchronized List<Item> getItems(String prefix) {
+        Node node = mRoot;
+        if (!prefix.equals("")) {
+            for (String segment : prefix.split("/")) {
+                node = node.children.get(segment);
+                if (node == null) {
+                    return Collections.emptyList();
+                }
+            }
+        }
+        return new ArrayList<Item>(node.items);
+    }
+
+    /** 按添加顺序返回全部示例的副本. */
+    synchronized List<Entry> getEntries() {
+        return new ArrayList<Entry>(mEntries);
+    }
+
+    /** 已添加的示例数量. */
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    /** 目录的修改次数. */
+    synchronized int getVersion() {
+        return mVersion;
+    }
+}
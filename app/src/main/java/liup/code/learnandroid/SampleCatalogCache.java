@@ -0,0 +1,168 @@
+package liup.code.learnandroid;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * @title 示例目录的磁盘缓存
+ * @desc .  把解析好的(label, 包名, 类名)保存成紧凑的二进制文件，下次冷启动时用内存映射读取，
+ *          跳过queryIntentActivities和逐个loadLabel的资源查找。
+ *          缓存以应用的versionCode和lastUpdateTime为key，key变化时才重建。
+ *
+ *          文件格式（大端）：
+ *          int magic, int 格式版本, long versionCode, long lastUpdateTime, int 条目数,
+ *          然后每个条目依次是label、包名、类名，每个字符串为 int 字节数 + UTF-8字节。
+ */
+class SampleCatalogCache {
+
+    /** 缓存文件名，位于应用的files目录. */
+    static final String FILE_NAME = "sample_catalog.bin";
+
+    /** 文件头魔数 "SCAT". */
+    private static final int MAGIC = 0x53434154;
+
+    /** 文件格式版本，格式变化时递增. */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File mFile;
+
+    /** 缓存key：本应用的versionCode. */
+    private final long mVersionCode;
+
+    /** 缓存key：本应用的lastUpdateTime. */
+    private final long mLastUpdateTime;
+
+    /**
+     * @param file 缓存文件。
+     * @param versionCode 当前应用的versionCode。
+     * @param lastUpdateTime 当前应用的lastUpdateTime。
+     */
+    SampleCatalogCache(File file, long versionCode, long lastUpdateTime) {
+        mFile = file;
+        mVersionCode = versionCode;
+        mLastUpdateTime = lastUpdateTime;
+    }
+
+    /**
+     * 打开本应用files目录下的缓存，key取本应用当前的versionCode和lastUpdateTime。
+     *
+     * @param context 任意Context。
+     * @return 缓存。
+     * @throws PackageManager.NameNotFoundException 找不到本应用的包信息。
+     */
+    static SampleCatalogCache open(Context context) throws PackageManager.NameNotFoundException {
+        PackageInfo packageInfo = context.getPackageManager()
+                .getPackageInfo(context.getPackageName(), 0);
+        return new SampleCatalogCache(new File(context.getFilesDir(), FILE_NAME),
+                packageInfo.versionCode, packageInfo.lastUpdateTime);
+    }
+
+    /**
+     * 读取缓存的目录。
+     *
+     * @return 缓存的目录；文件不存在或key不一致时返回null。
+     * @throws IOException 读取失败或文件已损坏。
+     */
+    SampleCatalog read() throws IOException {
+        if (!mFile.isFile()) {
+            return null;
+        }
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (buffer.getLong() != mVersionCode || buffer.getLong() != mLastUpdateTime) {
+                return null;
+            }
+
+            int count = buffer.getInt();
+            SampleCatalog catalog = new SampleCatalog();
+            byte[] scratch = new byte[256];
+            for (int i = 0; i < count; i++) {
+                String label = readString(buffer, scratch);
+                String packageName = readString(buffer, scratch);
+                String className = readString(buffer, scratch);
+                catalog.add(label, packageName, className);
+            }
+            return catalog;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated catalog cache " + mFile, e);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * 写入目录。先写临时文件再改名，避免读到写了一半的缓存。
+     *
+     * @param entries 要保存的示例。
+     * @throws IOException 写入失败。
+     */
+    void write(List<SampleCatalog.Entry> entries) throws IOException {
+        // 加载线程和包变化广播可能同时写同一个文件。
+        synchronized (SampleCatalogCache.class) {
+            writeLocked(entries);
+        }
+    }
+
+    private void writeLocked(List<SampleCatalog.Entry> entries) throws IOException {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(mVersionCode);
+            out.writeLong(mLastUpdateTime);
+            int count = entries.size();
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                SampleCatalog.Entry entry = entries.get(i);
+                writeString(out, entry.label);
+                writeString(out, entry.packageName);
+                writeString(out, entry.className);
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(mFile)) {
+            tmp.delete();
+            throw new IOException("Cannot rename " + tmp + " to " + mFile);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer, byte[] scratch) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Corrupt string length " + length);
+        }
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, UTF_8);
+    }
+}
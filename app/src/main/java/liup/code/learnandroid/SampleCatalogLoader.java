@@ -0,0 +1,219 @@
+package liup.code.learnandroid;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @title 示例目录的加载和更新
+ * @desc .  持有进程内共享的{@link SampleCatalog}。第一次加载时先读{@link SampleCatalogCache}，
+ *          缓存缺失或过期才查询PackageManager；之后某个包安装、更新或卸载时，
+ *          只查询这一个包的示例并修补内存中的目录和磁盘缓存，不重新扫描全部示例。
+ */
+final class SampleCatalogLoader {
+
+    private static final String LOG_TAG = "SampleCatalogLoader";
+
+    /** 后台加载时每解析这么多个示例就通知一次进度. */
+    private static final int LOAD_BATCH_SIZE = 64;
+
+    /** 异步加载的进度回调，在加载线程上调用. */
+    interface Progress {
+        /** 返回true时停止加载. */
+        boolean isCancelled();
+
+        /**
+         * 每加入一批示例后调用。
+         *
+         * @param catalog 正在构建的目录。
+         */
+        void onBatchLoaded(SampleCatalog catalog);
+    }
+
+    /** 进程内共享的示例目录，第一次使用时构建，所有ApiDemosLearn实例共用. */
+    private static SampleCatalog sCatalog;
+
+    private SampleCatalogLoader() {
+    }
+
+    /** 返回已加载的示例目录，尚未加载时返回null. */
+    static synchronized SampleCatalog peekCatalog() {
+        return sCatalog;
+    }
+
+    /**
+     * 发布加载好的目录。如果其它实例已经先发布了，则沿用已发布的目录。
+     *
+     * @param catalog 加载好的目录。
+     * @return 进程内共享的目录。
+     */
+    static synchronized SampleCatalog publishCatalog(SampleCatalog catalog) {
+        if (sCatalog == null) {
+            sCatalog = catalog;
+        }
+        return sCatalog;
+    }
+
+    /**
+     * 返回示例目录，尚未加载时在调用线程上同步加载。
+     *
+     * @param context 任意Context，用于获取PackageManager和files目录。
+     * @return 示例目录。
+     */
+    static SampleCatalog getCatalog(Context context) {
+        SampleCatalog catalog = peekCatalog();
+        if (catalog == null) {
+            catalog = publishCatalog(readOrLoadCatalog(context, null));
+        }
+        return catalog;
+    }
+
+    /**
+     * 先读磁盘缓存，缓存缺失或过期才查询PackageManager并重写缓存。
+     *
+     * @param context 任意Context，用于获取PackageManager和files目录。
+     * @param progress 异步加载的进度回调；同步加载时为null。
+     * @return 示例目录，加载被取消时返回null。
+     */
+    static SampleCatalog readOrLoadCatalog(Context context, Progress progress) {
+        // 缓存以本应用的版本为key，升级或重新安装后自动失效。
+        SampleCatalogCache cache = null;
+        try {
+            cache = SampleCatalogCache.open(context);
+            SampleCatalog catalog = cache.read();
+            if (catalog != null) {
+                return catalog;
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(LOG_TAG, "Cannot find own package", e);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Discarding unreadable catalog cache", e);
+        }
+
+        SampleCatalog catalog = loadCatalog(context.getPackageManager(), progress);
+        if (catalog != null && cache != null) {
+            try {
+                cache.write(catalog.getEntries());
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Cannot write catalog cache", e);
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * 查询所有CATEGORY_SAMPLE_CODE的Activity并建立目录。
+     *
+     * @param pm PackageManager
+     * @param progress 异步加载的进度回调，每加入一批示例就通知一次；同步加载时为null。
+     * @return 新建的示例目录，加载被取消时返回null。
+     */
+    private static SampleCatalog loadCatalog(PackageManager pm, Progress progress) {
+        SampleCatalog catalog = new SampleCatalog();
+
+        List<ResolveInfo> list = pm.queryIntentActivities(sampleIntent(null), 0);
+
+        if (null == list)
+            return catalog;
+
+        int len = list.size();
+
+        for (int i = 0; i < len; i++) {
+            ResolveInfo info = list.get(i);
+            catalog.add(loadLabel(info, pm), info.activityInfo.applicationInfo.packageName,
+                    info.activityInfo.name);
+
+            if (progress != null && (i + 1) % LOAD_BATCH_SIZE == 0) {
+                if (progress.isCancelled()) {
+                    return null;
+                }
+                progress.onBatchLoaded(catalog);
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * 某个包安装、更新或卸载后，只重新查询这个包的示例，修补内存中的目录和磁盘缓存。
+     * 会访问PackageManager和磁盘，不要在主线程上调用。
+     *
+     * @param context 任意Context。
+     * @param packageName 发生变化的包名。
+     * @param removed 包是否已被卸载。
+     */
+    static void onPackageChanged(Context context, String packageName, boolean removed) {
+        SampleCatalogCache cache;
+        try {
+            cache = SampleCatalogCache.open(context);
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(LOG_TAG, "Cannot find own package", e);
+            return;
+        }
+
+        SampleCatalog catalog = peekCatalog();
+        if (catalog == null) {
+            // 目录还没有加载到内存，修补磁盘缓存；没有有效缓存时下次启动会完整加载。
+            try {
+                catalog = cache.read();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Discarding unreadable catalog cache", e);
+            }
+            if (catalog == null) {
+                return;
+            }
+            catalog = publishCatalog(catalog);
+        }
+
+        List<SampleCatalog.Entry> entries = removed
+                ? Collections.<SampleCatalog.Entry>emptyList()
+                : loadPackageEntries(context.getPackageManager(), packageName);
+        catalog.replacePackage(packageName, entries);
+
+        try {
+            cache.write(catalog.getEntries());
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Cannot write catalog cache", e);
+        }
+    }
+
+    /**
+     * 查询一个包中所有CATEGORY_SAMPLE_CODE的Activity。
+     */
+    private static List<SampleCatalog.Entry> loadPackageEntries(PackageManager pm,
+                                                               String packageName) {
+        List<SampleCatalog.Entry> entries = new ArrayList<SampleCatalog.Entry>();
+        List<ResolveInfo> list = pm.queryIntentActivities(sampleIntent(packageName), 0);
+        if (list != null) {
+            for (ResolveInfo info : list) {
+                entries.add(new SampleCatalog.Entry(loadLabel(info, pm),
+                        info.activityInfo.applicationInfo.packageName, info.activityInfo.name));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param packageName 只查询这个包，为null时查询所有包。
+     * @return 查询示例Activity的Intent。
+     */
+    private static Intent sampleIntent(String packageName) {
+        Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
+        mainIntent.addCategory(Intent.CATEGORY_SAMPLE_CODE);
+        mainIntent.setPackage(packageName);
+        return mainIntent;
+    }
+
+    private static String loadLabel(ResolveInfo info, PackageManager pm) {
+        CharSequence labelSeq = info.loadLabel(pm);
+        return labelSeq != null
+                ? labelSeq.toString()
+                : info.activityInfo.name;
+    }
+}
@@ -0,0 +1,48 @@
+package liup.code.learnandroid;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.AsyncTask;
+
+/**
+ * @title 监听包的安装、更新和卸载
+ * @desc .  只把发生变化的那个包修补进示例目录和磁盘缓存，刷新代价与变化的大小成正比，而不是与目录大小成正比。
+ */
+public class SampleCatalogReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        Uri data = intent.getData();
+        if (data == null) {
+            return;
+        }
+        final String packageName = data.getSchemeSpecificPart();
+        String action = intent.getAction();
+
+        // 更新一个包时会依次收到REMOVED、ADDED（都带EXTRA_REPLACING）和REPLACED，只处理REPLACED。
+        boolean replacing = intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+        if (replacing && !Intent.ACTION_PACKAGE_REPLACED.equals(action)) {
+            return;
+        }
+        // 本应用更新后缓存key会变化，下次启动时完整加载。
+        if (context.getPackageName().equals(packageName)) {
+            return;
+        }
+
+        final boolean removed = Intent.ACTION_PACKAGE_REMOVED.equals(action);
+        final Context appContext = context.getApplicationContext();
+        final PendingResult result = goAsync();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SampleCatalogLoader.onPackageChanged(appContext, packageName, removed);
+                } finally {
+                    result.finish();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,190 @@
+package liup.code.learnandroid;
+
+import java.text.Collator;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @title 示例列表的文本过滤引擎
+ * @desc .  在整个目录（而不只是当前一级）中查找示例。构造时一次性计算每个label的规范化文本和各段起始位置；
+ *          用户在上一次输入后追加字符时，只在上一次的结果中继续缩小范围，不必重新扫描全部示例。
+ *
+ *          匹配规则：
+ *          1. 规范化后的完整label包含输入的文本，例如"custom"匹配"Accessibility/Custom View"。
+ *          2. 输入中带"/"时按段匹配，每一段是label中连续各段的前缀，例如"acc/cus"匹配"Accessibility/Custom View"。
+ *
+ *          两条规则在追加字符时都只会变严格，所以在上一次结果中缩小范围与重新扫描的结果相同。
+ *          这个类不是线程安全的，只应在Filter的工作线程上使用。
+ */
+class SampleFilterEngine {
+
+    /** 全部示例，按完整label排序. */
+    private final SampleRow[] mRows;
+
+    /** 规范化后的完整label，与mRows一一对应. */
+    private final String[] mNormalized;
+
+    /** 每个label中各段的起始位置，与mRows一一对应. */
+    private final int[][] mSegmentStarts;
+
+    /** 上一次的规范化输入，没有时为null. */
+    private String mLastQuery;
+
+    /** 上一次匹配的下标. */
+    private int[] mLastMatches;
+
+    /** 上一次过滤检查过的示例数量，用于测试和调优. */
+    private int mLastScanCount;
+
+    /**
+     * @param entries 目录中的全部示例。
+     * @param collator 计算排序key的Collator。
+     */
+    SampleFilterEngine(List<SampleCatalog.Entry> entries, Collator collator) {
+        int count = entries.size();
+        SampleRow[] rows = new SampleRow[count];
+        for (int i = 0; i < count; i++) {
+            SampleCatalog.Entry entry = entries.get(i);
+            rows[i] = new SampleRow(collator, new SampleCatalog.Item(
+                    entry.label, entry.packageName, entry.className, null));
+        }
+        Arrays.sort(rows, new Comparator<SampleRow>() {
+            public int compare(SampleRow row1, SampleRow row2) {
+                return row1.sortKey.compareTo(row2.sortKey);
+            }
+        });
+
+        mRows = rows;
+        mNormalized = new String[count];
+        mSegmentStarts = new int[count][];
+        for (int i = 0; i < count; i++) {
+            String normalized = normalize(rows[i].getTitle());
+            mNormalized[i] = normalized;
+            mSegmentStarts[i] = segmentStarts(normalized);
+        }
+    }
+
+    /**
+     * 过滤示例。
+     *
+     * @param constraint 用户输入。
+     * @return 匹配的示例，按完整label排序；输入为空时返回null。
+     */
+    List<SampleRow> filter(CharSequence constraint) {
+        if (constraint == null || constraint.length() == 0) {
+            mLastQuery = null;
+            mLastMatches = null;
+            mLastScanCount = 0;
+            return null;
+        }
+
+        String query = normalize(constraint);
+        String[] querySegments = query.indexOf('/') >= 0 ? query.split("/", -1) : null;
+
+        int[] matches;
+        int count = 0;
+        if (mLastQuery != null && query.startsWith(mLastQuery)) {
+            // 追加了字符：只在上一次的结果中继续缩小范围。
+            int[] candidates = mLastMatches;
+            matches = new int[candidates.length];
+            for (int index : candidates) {
+                if (matches(index, query, querySegments)) {
+                    matches[count++] = index;
+                }
+            }
+            mLastScanCount = candidates.length;
+        } else {
+            matches = new int[mRows.length];
+            for (int index = 0; index < mRows.length; index++) {
+                if (matches(index, query, querySegments)) {
+                    matches[count++] = index;
+                }
+            }
+            mLastScanCount = mRows.length;
+        }
+
+        mLastQuery = query;
+        mLastMatches = Arrays.copyOf(matches, count);
+        return new RowList(mRows, mLastMatches);
+    }
+
+    /** 上一次过滤检查过的示例数量. */
+    int getLastScanCount() {
+        return mLastScanCount;
+    }
+
+    private boolean matches(int index, String query, String[] querySegments) {
+        String label = mNormalized[index];
+        if (label.contains(query)) {
+            return true;
+        }
+        return querySegments != null && matchesSegments(label, mSegmentStarts[index], querySegments);
+    }
+
+    /**
+     * 判断label中是否有连续的若干段，依次以输入的各段为前缀。
+     */
+    private static boolean matchesSegments(String label, int[] starts, String[] querySegments) {
+        int last = starts.length - querySegments.length;
+        for (int first = 0; first <= last; first++) {
+            boolean matched = true;
+            for (int k = 0; k < querySegments.length && matched; k++) {
+                int segment = first + k;
+                int start = starts[segment];
+                int end = segment + 1 < starts.length ? starts[segment + 1] - 1 : label.length();
+                String querySegment = querySegments[k];
+                matched = querySegment.length() <= end - start
+                        && label.regionMatches(start, querySegment, 0, querySegment.length());
+            }
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] segmentStarts(String label) {
+        int count = 1;
+        for (int i = 0; i < label.length(); i++) {
+            if (label.charAt(i) == '/') {
+                count++;
+            }
+        }
+        int[] starts = new int[count];
+        int segment = 1;
+        for (int i = 0; i < label.length(); i++) {
+            if (label.charAt(i) == '/') {
+                starts[segment++] = i + 1;
+            }
+        }
+        return starts;
+    }
+
+    private static String normalize(CharSequence text) {
+        return text.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /** 按下标引用全部示例的只读列表，过滤结果不必复制行对象. */
+    private static final class RowList extends AbstractList<SampleRow> {
+        private final SampleRow[] mRows;
+        private final int[] mIndexes;
+
+        RowList(SampleRow[] rows, int[] indexes) {
+            mRows = rows;
+            mIndexes = indexes;
+        }
+
+        @Override
+        public SampleRow get(int location) {
+            return mRows[mIndexes[location]];
+        }
+
+        @Override
+        public int size() {
+            return mIndexes.length;
+        }
+    }
+}
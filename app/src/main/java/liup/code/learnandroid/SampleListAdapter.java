@@ -0,0 +1,172 @@
+package liup.code.learnandroid;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @title 示例列表的适配器
+ * @desc .  代替SimpleAdapter + List<Map<String,Object>>。每行只是一个{@link SampleRow}，
+ *          不再为每行保存HashMap和构建好的Intent；getView通过ViewHolder复用行视图。
+ *          文本过滤由{@link SampleFilterEngine}在整个目录中进行。
+ */
+class SampleListAdapter extends BaseAdapter implements Filterable {
+
+    private final LayoutInflater mInflater;
+
+    /** 当前一级的全部行. */
+    private final ArrayList<SampleRow> mRows = new ArrayList<SampleRow>();
+
+    /** 当前显示的行，没有过滤时与mRows相同. */
+    private List<SampleRow> mVisibleRows = mRows;
+
+    /** 当前的过滤条件，没有过滤时为null. */
+    private CharSequence mConstraint;
+
+    private Filter mFilter;
+
+    /** 用于过滤的完整目录，加载完成前为null. */
+    private volatile SampleCatalog mCatalog;
+
+    SampleListAdapter(Context context) {
+        mInflater = LayoutInflater.from(context);
+    }
+
+    /** 追加若干行. */
+    void addAll(Collection<SampleRow> rows) {
+        mRows.addAll(rows);
+        refresh();
+    }
+
+    /**
+     * 设置用于过滤的完整目录。过滤时在整个目录中查找，而不只是当前一级。
+     *
+     * @param catalog 完整目录。
+     */
+    void setCatalog(SampleCatalog catalog) {
+        mCatalog = catalog;
+        refresh();
+    }
+
+    /** 用新的行替换全部行. */
+    void setRows(Collection<SampleRow> rows) {
+        mRows.clear();
+        mRows.addAll(rows);
+        refresh();
+    }
+
+    /** 对全部行排序. */
+    void sort(Comparator<SampleRow> comparator) {
+        Collections.sort(mRows, comparator);
+        refresh();
+    }
+
+    /** 数据变化后按当前过滤条件重新过滤. */
+    private void refresh() {
+        if (mConstraint != null) {
+            getFilter().filter(mConstraint);
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return mVisibleRows.size();
+    }
+
+    @Override
+    public SampleRow getItem(int position) {
+        return mVisibleRows.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        ViewHolder holder;
+        if (convertView == null) {
+            convertView = mInflater.inflate(android.R.layout.simple_list_item_1, parent, false);
+            holder = new ViewHolder();
+            holder.text = (TextView) convertView.findViewById(android.R.id.text1);
+            convertView.setTag(holder);
+        } else {
+            holder = (ViewHolder) convertView.getTag();
+        }
+        holder.text.setText(getItem(position).getTitle());
+        return convertView;
+    }
+
+    @Override
+    public Filter getFilter() {
+        if (mFilter == null) {
+            mFilter = new CatalogFilter();
+        }
+        return mFilter;
+    }
+
+    /** 缓存行视图中的子视图，避免每次getView都findViewById. */
+    private static class ViewHolder {
+        TextView text;
+    }
+
+    /**
+     * 用{@link SampleFilterEngine}在整个目录中过滤。输入为空时显示当前一级的全部行。
+     */
+    private class CatalogFilter extends Filter {
+        /** 只在Filter的工作线程上访问. */
+        private SampleFilterEngine mEngine;
+
+        /** 建立mEngine时使用的目录. */
+        private SampleCatalog mEngineCatalog;
+
+        /** 建立mEngine时目录的版本. */
+        private int mEngineVersion;
+
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            FilterResults results = new FilterResults();
+            SampleCatalog catalog = mCatalog;
+            if (catalog == null) {
+                // 目录还在加载，暂不过滤。
+                return results;
+            }
+            int version = catalog.getVersion();
+            if (mEngine == null || mEngineCatalog != catalog || mEngineVersion != version) {
+                // 每个目录版本只规范化一次全部label。
+                mEngine = new SampleFilterEngine(catalog.getEntries(), Collator.getInstance());
+                mEngineCatalog = catalog;
+                mEngineVersion = version;
+            }
+            List<SampleRow> matches = mEngine.filter(constraint);
+            if (matches != null) {
+                results.values = matches;
+                results.count = matches.size();
+            }
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            mConstraint = constraint != null && constraint.length() > 0 ? constraint : null;
+            mVisibleRows = results.values != null ? (List<SampleRow>) results.values : mRows;
+            notifyDataSetChanged();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package liup.code.learnandroid;
+
+import java.text.CollationKey;
+import java.text.Collator;
+
+/**
+ * @title 示例列表的一行
+ * @desc .  代替原先每行一个HashMap的数据模型。构造时预先计算标题的{@link CollationKey}，
+ *          排序时只比较字节序列，不必每次比较都重新按语言规则比较整个字符串。
+ *          行本身只引用目录中的{@link SampleCatalog.Item}，点击时才根据包名、类名或目录路径构建Intent。
+ */
+final class SampleRow {
+
+    /** 目录中对应的列表项. */
+    final SampleCatalog.Item item;
+
+    /** 标题的排序key. */
+    final CollationKey sortKey;
+
+    /**
+     * @param collator 计算排序key的Collator，同一个列表中的行必须使用同一个Collator。
+     * @param item 目录中对应的列表项。
+     */
+    SampleRow(Collator collator, SampleCatalog.Item item) {
+        this.item = item;
+        this.sortKey = collator.getCollationKey(item.title);
+    }
+
+    /** 显示的标题. */
+    String getTitle() {
+        return item.title;
+    }
+
+    @Override
+    public String toString() {
+        return item.title;
+    }
+}
@@ -7,16 +7,34 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.media.AudioAttributes;
 import android.media.AudioManager;
+import android.media.MediaPlayer;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.os.Message;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
 import android.os.Vibrator;
+import android.provider.Settings;
 import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+import android.speech.tts.Voice;
 import android.util.Log;
-import android.util.SparseArray;
 import android.view.accessibility.AccessibilityEvent;
 
-import java.util.List;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 import liup.code.learnandroid.R;
 
@@ -42,14 +60,6 @@ public class ClockBackService extends AccessibilityService {
     /** service登陆的tag. */
     private static final String LOG_TAG = "ClockBackService";
 
-    /** 我们想要接收的可访问性事件之间的最小超时 */
-    private static final int EVENT_NOTIFICATION_TIMEOUT_MILLIS = 80;
-
-    /** 这适用于包名称在不同版本中更改的AlarmClock和Clock */
-    private static final String[] PACKAGE_NAMES = new String[] {
-            "com.android.alarmclock", "com.google.android.deskclock", "com.android.deskclock"
-    };
-
     // 我们传递的消息类型。
 
     /** 语音. */
@@ -76,24 +86,53 @@ public class ClockBackService extends AccessibilityService {
     /** 停止振动模式. */
     private static final int MESSAGE_STOP_VIBRATE = 8;
 
-    //屏幕状态广播相关常量。
+    /** 执行反馈合并队列中等待的反馈. */
+    private static final int MESSAGE_DRAIN_FEEDBACK = 9;
+
+    /** TTS引擎初始化完成，执行启动期间缓冲的语音. */
+    private static final int MESSAGE_TTS_READY = 10;
+
+    /** 发出窗口内合并好的振动. */
+    private static final int MESSAGE_FLUSH_HAPTICS = 11;
+
+    /** 最多同时等待执行的反馈数量，超过时丢弃优先级最低的. */
+    private static final int MAX_PENDING_FEEDBACK = 8;
+
+    /** 一句话最长的播放时间，收不到播放结束的回调时，过了这个时间等待的反馈也可以开始. */
+    private static final long MAX_UTTERANCE_NANOS = 10000000000L;
+
+    /** speak和playEarcon的utteranceId前缀，后面是utteranceId环中的位置；缓存key是十六进制，不会混淆. */
+    private static final String SPEECH_UTTERANCE_PREFIX = "speech:";
+
+    /** utteranceId环的长度。被打断的话的回调晚到这么多句之后，才会被当成新的那句话的回调. */
+    private static final int UTTERANCE_ID_COUNT = 64;
 
-    /**  打开屏幕广播的关键字. */
-    private static final int INDEX_SCREEN_ON = 0x00000100;
+    /** 预先拼好的utteranceId，按调度器的播放标识取模使用，说话时不再拼接字符串. */
+    private static final String[] UTTERANCE_IDS = newUtteranceIds();
 
-    /**  关闭屏幕广播的关键字. */
-    private static final int INDEX_SCREEN_OFF = 0x00000200;
+    /** 打开这个tag的DEBUG日志（adb shell setprop log.tag.ClockBackTrace DEBUG）后，连接时开始录制事件轨迹. */
+    private static final String TRACE_LOG_TAG = "ClockBackTrace";
 
-    //振铃模式改变相关常数。
+    /** 事件轨迹文件名，位于files目录. */
+    private static final String TRACE_FILE_NAME = "clockback_trace.bin";
 
-    /** 正常铃声模式key. */
-    private static final int INDEX_RINGER_NORMAL = 0x00000400;
+    /** 这么短的时间内到达的振动模式合并成一次振动，首次振动因此最多推迟这么久. */
+    private static final long HAPTIC_BATCH_WINDOW_MILLIS = 25;
 
-    /** 振动铃声模式key. */
-    private static final int INDEX_RINGER_VIBRATE = 0x00000800;
+    /** 最多同时播放的耳机数量. */
+    private static final int MAX_EARCON_STREAMS = 2;
 
-    /** 无声铃声模式key. */
-    private static final int INDEX_RINGER_SILENT = 0x00001000;
+    /** 合成语音缓存在cache目录下的子目录. */
+    private static final String SPEECH_CACHE_DIRECTORY = "speech";
+
+    /** 合成语音缓存的总大小上限. */
+    private static final long MAX_SPEECH_CACHE_BYTES = 4 * 1024 * 1024;
+
+    /** TTS引擎启动期间最多缓冲的语音请求数. */
+    private static final int MAX_PENDING_SPEECH = 4;
+
+    /** 解绑后TTS引擎保持的时间，这期间重新绑定不必重新初始化. */
+    private static final long TTS_STANDBY_MILLIS = 10000;
 
     //与语音相关的常量。
 
@@ -102,79 +141,155 @@ public class ClockBackService extends AccessibilityService {
      */
     private static final int QUEUING_MODE_INTERRUPT = 2;
 
-    /** 空格字符串常量. */
-    private static final String SPACE = " ";
-
-    /** 震动模式map. */
-    private static final SparseArray<long[]> sVibrationPatterns = new SparseArray<long[]>();
-    static {
-        sVibrationPatterns.put(AccessibilityEvent.TYPE_VIEW_CLICKED, new long[] {//点击
-                0L, 100L
-        });
-        sVibrationPatterns.put(AccessibilityEvent.TYPE_VIEW_LONG_CLICKED, new long[] {//长按
-                0L, 100L
-        });
-        sVibrationPatterns.put(AccessibilityEvent.TYPE_VIEW_SELECTED, new long[] {//选择
-                0L, 15L, 10L, 15L
-        });
-        sVibrationPatterns.put(AccessibilityEvent.TYPE_VIEW_FOCUSED, new long[] {//输入焦点事件
-                0L, 15L, 10L, 15L
-        });
-        sVibrationPatterns.put(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED, new long[] {//PopupWindow、Menu、Dialog的打开事件
-                0L, 25L, 50L, 25L, 50L, 25L
-        });
-        sVibrationPatterns.put(AccessibilityEvent.TYPE_VIEW_HOVER_ENTER, new long[] {//view的悬停事件
-                0L, 15L, 10L, 15L, 15L, 10L
-        });
-        sVibrationPatterns.put(INDEX_SCREEN_ON, new long[] {//打开屏幕广播
-                0L, 10L, 10L, 20L, 20L, 30L
-        });
-        sVibrationPatterns.put(INDEX_SCREEN_OFF, new long[] {//关闭屏幕广播
-                0L, 30L, 20L, 20L, 10L, 10L
-        });
-    }
+    /**
+     * 排队模式 - 排在之前的语音后面播放
+     */
+    private static final int QUEUING_MODE_ADD = 1;
 
-    /**  raw声音资源id map */
-    private static SparseArray<Integer> sSoundsResourceIds = new SparseArray<Integer>();
-    static {
-        sSoundsResourceIds.put(AccessibilityEvent.TYPE_VIEW_CLICKED,
-                R.raw.sound_view_clicked);
-        sSoundsResourceIds.put(AccessibilityEvent.TYPE_VIEW_LONG_CLICKED,
-                R.raw.sound_view_clicked);
-        sSoundsResourceIds.put(AccessibilityEvent.TYPE_VIEW_SELECTED,
-                R.raw.sound_view_focused_or_selected);
-        sSoundsResourceIds.put(AccessibilityEvent.TYPE_VIEW_FOCUSED,
-                R.raw.sound_view_focused_or_selected);
-        sSoundsResourceIds.put(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED,
-                R.raw.sound_window_state_changed);
-        sSoundsResourceIds.put(AccessibilityEvent.TYPE_VIEW_HOVER_ENTER,
-                R.raw.sound_view_hover_enter);
-        sSoundsResourceIds.put(INDEX_SCREEN_ON, R.raw.sound_screen_on);
-        sSoundsResourceIds.put(INDEX_SCREEN_OFF, R.raw.sound_screen_off);
-        sSoundsResourceIds.put(INDEX_RINGER_SILENT, R.raw.sound_ringer_silent);
-        sSoundsResourceIds.put(INDEX_RINGER_VIBRATE, R.raw.sound_ringer_vibrate);
-        sSoundsResourceIds.put(INDEX_RINGER_NORMAL, R.raw.sound_ringer_normal);
-    }
+    //音量变化的广播，与AudioManager中隐藏的常量相同。
+
+    private static final String ACTION_VOLUME_CHANGED = "android.media.VOLUME_CHANGED_ACTION";
+
+    private static final String EXTRA_VOLUME_STREAM_TYPE =
+            "android.media.EXTRA_VOLUME_STREAM_TYPE";
+
+    private static final String EXTRA_VOLUME_STREAM_VALUE =
+            "android.media.EXTRA_VOLUME_STREAM_VALUE";
 
     //声音集合相关的。
 
-    /** 耳机名字 - 动态设置. */
-    private final SparseArray<String> mEarconNames = new SparseArray<String>();
+    /** 已经注册到TTS引擎的耳机名字，按{@link FeedbackProfile#slotOf}索引，只在反馈线程上使用. */
+    private final String[] mEarconNames = new String[FeedbackProfile.SLOT_COUNT];
 
     //辅助字段。
 
     Context mContext;
 
-    /** 此服务目前提供的反馈. */
-    int mProvidedFeedbackType;
+    /** 把通道产生的反馈加入合并队列. */
+    private final FeedbackChannel.Sink mFeedbackSink = new FeedbackChannel.Sink() {
+        @Override
+        public void enqueueFeedback(int what, int key, CharSequence text) {
+            ClockBackService.this.enqueueFeedback(what, key, text);
+        }
+
+        @Override
+        public void stopFeedback(int stopWhat) {
+            mHandler.obtainMessage(stopWhat).sendToTarget();
+        }
+
+        @Override
+        public CharSequence getDeviceStateUtterance(int index) {
+            return generateScreenOnOrOffUtternace(index);
+        }
+    };
+
+    /**
+     * 当前的反馈配置：关注的应用、通知间隔、提示音和振动模式。
+     * 在反馈线程上加载，由主线程上的applyFeedbackProfile整体替换。
+     */
+    private volatile FeedbackProfile mFeedbackProfile = FeedbackProfile.EMPTY;
+
+    /**
+     * 振铃模式对应的反馈通道：正常时说话，振动时播放耳机，静音时振动。
+     * 依赖反馈配置，配置加载完成前为null，只在主线程上使用。
+     */
+    private RingerModeFeedback mRingerModeFeedback;
+
+    /**
+     * 此服务目前提供反馈的通道，由configureForRingerMode整体替换，
+     * 事件线程和广播接收器都只读取一次引用。
+     */
+    volatile FeedbackChannel mFeedbackChannel = FeedbackChannel.NONE;
+
+    /** 在分发前拒绝不需要处理的事件，只在主线程上使用. */
+    private final EventGate mEventGate = new EventGate();
+
+    /**
+     * 铃声模式、铃声音量和屏幕状态的快照。只由主线程上的广播接收器替换，
+     * 事件处理和生成话语时读取，不再跨进程查询AudioManager。
+     */
+    private final AtomicReference<DeviceState> mDeviceState =
+            new AtomicReference<DeviceState>(DeviceState.DEFAULT);
+
+    /** 铃声音量的最大值，连接时查询一次，用于换算音量变化广播中的音量. */
+    private int mMaxRingerVolume;
+
+    /** 当前声明接管的反馈类型. */
+    private int mTakeOverFeedbackTypes;
+
+    /** 按事件速率调整通知间隔，随反馈配置替换，只在主线程上使用. */
+    private EventRateThrottle mEventRateThrottle = throttleFor(FeedbackProfile.EMPTY);
 
-    /** 用于构建话语的可重用实例. */
-    private final StringBuilder mUtterance = new StringBuilder();
+    /** 主线程的Handler，用于空闲检查. */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** 通知间隔放宽后，空闲了就收紧回下限. */
+    private final Runnable mIdleCheck = new Runnable() {
+        @Override
+        public void run() {
+            if (!isInfrastructureInitialized) {
+                return;
+            }
+            if (mEventRateThrottle.onIdleCheck(SystemClock.uptimeMillis())) {
+                publishServiceInfo();
+            } else if (mEventRateThrottle.needsIdleCheck()) {
+                mMainHandler.postDelayed(this, EventRateThrottle.IDLE_MILLIS);
+            }
+        }
+    };
 
     //反馈提供服务。
 
-    /** 用于说话的{@link TextToSpeech } */
-    private TextToSpeech mTts;
+    /** TTS引擎的生命周期：启动期间缓冲语音，解绑后待机. */
+    private static final SpeechEngineLifecycle sSpeechLifecycle = new SpeechEngineLifecycle(
+            MAX_PENDING_SPEECH, TTS_STANDBY_MILLIS);
+
+    /**
+     * 用于说话的{@link TextToSpeech }，用应用的Context创建，可以比服务实例活得久。
+     * 创建和关闭都在sSpeechLifecycle的锁内进行，只有sSpeechLifecycle就绪时才能说话。
+     */
+    private static volatile TextToSpeech sTts;
+
+    /** 引擎初始化完成后通知当前连接的服务执行缓冲的语音；初始化失败时关闭引擎. */
+    private static final TextToSpeech.OnInitListener sTtsInitListener =
+            new TextToSpeech.OnInitListener() {
+        @Override
+        public void onInit(int status) {
+            boolean success = status == TextToSpeech.SUCCESS;
+            synchronized (sSpeechLifecycle) {
+                sSpeechLifecycle.onReady(success, System.nanoTime());
+                if (!success) {
+                    Log.e(LOG_TAG, "TextToSpeech failed to initialize: " + status);
+                    shutdownStoppedTts();
+                }
+            }
+            ClockBackService service = sConnectedService;
+            if (success && service != null) {
+                service.mHandler.sendEmptyMessage(MESSAGE_TTS_READY);
+            }
+        }
+    };
+
+    /** 待机的宽限期过后关闭引擎，期间重新绑定过时什么也不做. */
+    private static final Runnable sTtsStandbyCheck = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (sSpeechLifecycle) {
+                if (sSpeechLifecycle.onGraceExpired(System.nanoTime())) {
+                    shutdownStoppedTts();
+                }
+            }
+        }
+    };
+
+    /** 关闭已经不再使用的引擎，调用时持有sSpeechLifecycle的锁. */
+    private static void shutdownStoppedTts() {
+        TextToSpeech tts = sTts;
+        if (tts != null) {
+            sTts = null;
+            tts.shutdown();
+        }
+    }
 
     /** {@link AudioManager}检测振铃状态. */
     private AudioManager mAudioManager;
@@ -182,52 +297,434 @@ public class ClockBackService extends AccessibilityService {
     /** 用于提供触觉反馈的振动器. */
     private Vibrator mVibrator;
 
+    /** 合并短时间内的振动模式，只在反馈线程上加入和取出. */
+    private final HapticBatcher mHapticBatcher = new HapticBatcher(HAPTIC_BATCH_WINDOW_MILLIS);
+
+    /** 预先解码的低延迟耳机播放器. */
+    private EarconPlayer mEarconPlayer;
+
+    /** 为false时耳机仍交给TTS引擎播放，用于对比两种方式的延迟. */
+    boolean mLowLatencyEarcons = true;
+
+    /** 合成语音的磁盘缓存. */
+    SpeechCache mSpeechCache;
+
+    /** 播放缓存命中的合成语音. */
+    private MediaPlayer mSpeechPlayer;
+
+    /** 当前的合成语言，TTS初始化完成后更新，是缓存key的一部分. */
+    private volatile Locale mSpeechLocale;
+
+    /** 用户设置的语速，是缓存key的一部分. */
+    private int mSpeechRate;
+
     /** 标记infrastructure是否已初始化. */
     private boolean isInfrastructureInitialized;
 
-    /** 用于在服务的主线程上执行消息。. */
-    Handler mHandler = new Handler() {
+    /**
+     * 反馈线程。语音、耳机和振动反馈都在这个线程上执行，不与主线程上的事件接收和广播接收器竞争；
+     * mVibrator、mEarconPlayer和mSpeechPlayer只在这个线程上创建、使用和释放，sTts也只在这个线程上说话。
+     */
+    private HandlerThread mFeedbackThread;
+
+    /** 用于在反馈线程上执行消息. */
+    Handler mHandler;
+
+    /** 反馈流水线：事件线程加入反馈，反馈线程取出执行，输出时统计延迟. */
+    FeedbackPipeline mFeedbackPipeline;
+
+    /** 每个utteranceId当前对应的播放标识，反馈线程写入，TTS和MediaPlayer的回调读取. */
+    private final AtomicLongArray mUtteranceTokens = new AtomicLongArray(UTTERANCE_ID_COUNT);
+
+    /** 事件轨迹的录制器，没有录制时为null，只在主线程上使用. */
+    private EventTrace.Writer mTraceWriter;
+
+    /** 已连接的服务实例，供调试界面读取统计；未连接时为null. */
+    private static volatile ClockBackService sConnectedService;
+
+    /** 在反馈线程上执行反馈消息. */
+    private class FeedbackHandler extends Handler implements FeedbackPipeline.Renderer {
+
+        FeedbackHandler(Looper looper) {
+            super(looper);
+        }
+
         @Override
         public void handleMessage(Message message) {
             switch (message.what) {
-                case MESSAGE_SPEAK://语音
-                    String utterance = (String) message.obj;
-                    mTts.speak(utterance, QUEUING_MODE_INTERRUPT, null);
-                    return;
                 case MESSAGE_STOP_SPEAK://停止语音
-                    mTts.stop();
+                    stopCachedSpeech();
+                    stopTts();
                     return;
                 case MESSAGE_START_TTS://文字转语音
-                    mTts = new TextToSpeech(mContext, new TextToSpeech.OnInitListener() {
-                        public void onInit(int status) {
-                            //在这里注册，因为要添加耳机，TTS必须被初始化并且接收机立即以当前的振铃模式被调用。
-                            registerBroadCastReceiver();
+                    // 在反馈线程上加载反馈配置，不阻塞onServiceConnected。
+                    final FeedbackProfile profile = loadFeedbackProfile();
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            applyFeedbackProfile(profile);
                         }
                     });
+                    // 获得振动器服务。
+                    mVibrator = (Vibrator) getSystemService(Service.VIBRATOR_SERVICE);
+                    // 服务连接时就把所有耳机解码到内存。
+                    mEarconPlayer = new EarconPlayer(mContext, profile, MAX_EARCON_STREAMS);
+                    mEarconPlayer.setLatencyListener(mEarconLatencyListener);
+                    mSpeechCache = new SpeechCache(new File(getCacheDir(), SPEECH_CACHE_DIRECTORY),
+                            MAX_SPEECH_CACHE_BYTES);
+                    mSpeechPlayer = new MediaPlayer();
+                    mSpeechPlayer.setOnCompletionListener(mCachedSpeechCompletionListener);
+                    mSpeechLocale = Locale.getDefault();
+                    mSpeechRate = Settings.Secure.getInt(getContentResolver(),
+                            Settings.Secure.TTS_DEFAULT_RATE, 100);
+                    // 待机中的引擎直接使用，否则异步创建，就绪前的语音先缓冲。
+                    synchronized (sSpeechLifecycle) {
+                        if (sSpeechLifecycle.start(System.nanoTime())) {
+                            shutdownStoppedTts();
+                            sTts = new TextToSpeech(getApplicationContext(), sTtsInitListener);
+                        }
+                        sTts.setOnUtteranceProgressListener(mSynthesisListener);
+                    }
+                    if (sSpeechLifecycle.isReady()) {
+                        onTtsReady();
+                    }
                     return;
-                case MESSAGE_SHUTDOWN_TTS://停止文字转语音
-                    mTts.shutdown();
+                case MESSAGE_TTS_READY://TTS初始化完成
+                    onTtsReady();
                     return;
-                case MESSAGE_PLAY_EARCON://使用耳机
-                    int resourceId = message.arg1;
-                    playEarcon(resourceId);
+                case MESSAGE_SHUTDOWN_TTS://停止文字转语音
+                    // 引擎进入待机，宽限期内重新绑定可以直接使用。
+                    stopTts();
+                    synchronized (sSpeechLifecycle) {
+                        // 待机中的引擎比这个服务活得久，之后的回调不能再进入这个服务。
+                        TextToSpeech tts = sTts;
+                        if (tts != null) {
+                            tts.setOnUtteranceProgressListener(null);
+                        }
+                        if (sSpeechLifecycle.release(System.nanoTime())) {
+                            mMainHandler.postDelayed(sTtsStandbyCheck, TTS_STANDBY_MILLIS);
+                        }
+                    }
+                    // 丢弃还没执行的反馈和延迟的消息，它们不能在播放器释放后再执行。
+                    mFeedbackPipeline.getQueue().clear();
+                    mHapticBatcher.clear();
+                    removeCallbacksAndMessages(null);
+                    mEarconPlayer.release();
+                    mSpeechPlayer.release();
                     return;
                 case MESSAGE_STOP_PLAY_EARCON://停止使用耳机
-                    mTts.stop();
+                    mEarconPlayer.stop();
+                    stopTts();
+                    return;
+                case MESSAGE_STOP_VIBRATE://停止振动模式
+                    removeMessages(MESSAGE_FLUSH_HAPTICS);
+                    mHapticBatcher.clear();
+                    mVibrator.cancel();
+                    return;
+                case MESSAGE_FLUSH_HAPTICS://发出合并的振动
+                    long[] merged = mHapticBatcher.flush(mFeedbackPipeline.getStats(),
+                            MESSAGE_VIBRATE, System.nanoTime());
+                    if (merged != null) {
+                        mVibrator.vibrate(merged, -1);
+                    }
+                    return;
+                case MESSAGE_DRAIN_FEEDBACK://执行等待的反馈
+                    long waitNanos = mFeedbackPipeline.drain();
+                    if (waitNanos > 0) {
+                        // 剩下的反馈在等正在播放的反馈，收不到结束回调时到时再试。
+                        sendEmptyMessageDelayed(MESSAGE_DRAIN_FEEDBACK, waitNanos / 1000000 + 1);
+                    }
+                    return;
+            }
+        }
+
+        /**
+         * 执行一条反馈。
+         *
+         * @param what 反馈种类。
+         * @param key 反馈来源：事件类型或设备状态的key。
+         * @param text 要说的话。
+         * @param enqueueTimeNanos 反馈加入队列的时间。
+         */
+        @Override
+        public void render(int what, int key, CharSequence text, long enqueueTimeNanos) {
+            switch (what) {
+                case MESSAGE_SPEAK://语音
+                    // TTS引擎还没就绪时先缓冲。
+                    if (sSpeechLifecycle.offer(what, key, text, enqueueTimeNanos,
+                            System.nanoTime())) {
+                        // 调度器只在可以打断正在播放的反馈时才交过来。
+                        speak(key, text, QUEUING_MODE_INTERRUPT, enqueueTimeNanos);
+                    }
+                    return;
+                case MESSAGE_PLAY_EARCON://使用耳机
+                    // 声音还没解码完成时退回TTS播放。
+                    if (mLowLatencyEarcons && mEarconPlayer.play(key, enqueueTimeNanos)) {
+                        recordLatency(what, key, enqueueTimeNanos);
+                    } else if (sSpeechLifecycle.offer(what, key, null, enqueueTimeNanos,
+                            System.nanoTime())) {
+                        playEarconWithTts(key, QUEUING_MODE_INTERRUPT, enqueueTimeNanos);
+                    }
                     return;
                 case MESSAGE_VIBRATE://启动振动模式
-                    int key = message.arg1;
-                    long[] pattern = sVibrationPatterns.get(key);
+                    long[] pattern = mFeedbackProfile.getVibrationPattern(key);
                     if (pattern != null) {
-                        mVibrator.vibrate(pattern, -1);
+                        // 窗口内的振动合并后一次发出，不再互相取消。
+                        // 延迟在合并的波形真正发出时记录。
+                        if (mHapticBatcher.add(pattern, key, enqueueTimeNanos,
+                                System.nanoTime())) {
+                            sendEmptyMessageDelayed(MESSAGE_FLUSH_HAPTICS,
+                                    mHapticBatcher.getWindowMillis());
+                        }
+                        // 振动期间低优先级的振动不能替换它，合并窗口也算在内。
+                        long durationMillis = mHapticBatcher.getWindowMillis();
+                        for (long timing : pattern) {
+                            durationMillis += timing;
+                        }
+                        mFeedbackPipeline.getScheduler().startPlayback(System.nanoTime(),
+                                durationMillis * 1000000L);
                     }
                     return;
-                case MESSAGE_STOP_VIBRATE://停止振动模式
-                    mVibrator.cancel();
+            }
+        }
+
+        /** 引擎就绪（或待机中的引擎被重新使用）后更新语言，并按顺序执行缓冲的语音. */
+        private void onTtsReady() {
+            TextToSpeech tts = sTts;
+            if (tts == null || !sSpeechLifecycle.isReady()) {
+                return;
+            }
+            Voice voice = tts.getVoice();
+            if (voice != null) {
+                mSpeechLocale = voice.getLocale();
+            }
+            // 第一条打断之前的语音，其余的依次排在后面，启动期间的反馈都能听到。
+            mBufferedQueueMode = QUEUING_MODE_INTERRUPT;
+            sSpeechLifecycle.flush(mBufferedSpeechRenderer, System.nanoTime());
+        }
+
+        /** 执行启动期间缓冲的语音请求时使用的排队模式. */
+        private int mBufferedQueueMode;
+
+        private final FeedbackPipeline.Renderer mBufferedSpeechRenderer =
+                new FeedbackPipeline.Renderer() {
+            @Override
+            public void render(int what, int key, CharSequence text, long enqueueTimeNanos) {
+                FeedbackScheduler scheduler = mFeedbackPipeline.getScheduler();
+                scheduler.onRender(scheduler.priorityOf(key));
+                if (what == MESSAGE_SPEAK) {
+                    speak(key, text, mBufferedQueueMode, enqueueTimeNanos);
+                } else {
+                    playEarconWithTts(key, mBufferedQueueMode, enqueueTimeNanos);
+                }
+                mBufferedQueueMode = QUEUING_MODE_ADD;
+            }
+        };
+
+        /** 停止TTS正在说的话，并丢弃还没说的缓冲语音. */
+        private void stopTts() {
+            sSpeechLifecycle.clearPending();
+            TextToSpeech tts = sTts;
+            if (tts != null && sSpeechLifecycle.isReady()) {
+                tts.stop();
+            }
+        }
+
+        /** 反馈交给了输出接口，记录从加入队列到现在的延迟. */
+        private void recordLatency(int what, int key, long enqueueTimeNanos) {
+            mFeedbackPipeline.getStats().record(what, key, System.nanoTime() - enqueueTimeNanos);
+        }
+
+        /** 用TTS播放耳机，并记录延迟. */
+        private void playEarconWithTts(int key, int queueMode, long enqueueTimeNanos) {
+            if (playEarcon(key, queueMode)) {
+                mEarconPlayer.reportLatency(key, false, enqueueTimeNanos);
+                recordLatency(MESSAGE_PLAY_EARCON, key, enqueueTimeNanos);
+            }
+        }
+
+        /**
+         * 说出话语：缓存命中时直接播放合成好的音频，否则交给TTS合成，
+         * 反复出现的话语在说完后再合成到缓存文件。只在TTS引擎就绪时调用。
+         *
+         * @param key 反馈来源。
+         * @param text 要说的话。
+         * @param queueMode 打断之前的语音，还是排在后面。
+         * @param enqueueTimeNanos 反馈加入队列的时间。
+         */
+        private void speak(int key, CharSequence text, int queueMode, long enqueueTimeNanos) {
+            TextToSpeech tts = sTts;
+            String utteranceId = beginSpeechPlayback();
+            // 直接散列复用的缓冲区，反复出现的话语得到同一个key字符串。
+            String cacheKey = mSpeechCache.keyOf(text, mSpeechLocale, mSpeechRate);
+            // 缓存的音频由MediaPlayer播放，不能排在TTS的语音后面。
+            File file = queueMode == QUEUING_MODE_INTERRUPT ? mSpeechCache.get(cacheKey) : null;
+            if (file != null) {
+                tts.stop();
+                if (playCachedSpeech(file)) {
+                    recordLatency(MESSAGE_SPEAK, key, enqueueTimeNanos);
+                    mCachedSpeechUtteranceId = utteranceId;
                     return;
+                }
+            }
+
+            stopCachedSpeech();
+            // speak在返回前就把文本复制给TTS服务，可以直接传入复用的缓冲区。
+            tts.speak(text, queueMode, null, utteranceId);
+            recordLatency(MESSAGE_SPEAK, key, enqueueTimeNanos);
+            File target = mSpeechCache.beginWrite(cacheKey);
+            if (target != null) {
+                // 排在这句话后面合成，结果由mSynthesisListener加入缓存。
+                tts.synthesizeToFile(text, null, target, cacheKey);
+            }
+        }
+
+        private boolean playCachedSpeech(File file) {
+            try {
+                mSpeechPlayer.reset();
+                mSpeechPlayer.setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_ASSISTANCE_ACCESSIBILITY)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SPEECH)
+                        .build());
+                mSpeechPlayer.setDataSource(file.getPath());
+                mSpeechPlayer.prepare();
+                mSpeechPlayer.start();
+                return true;
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Cannot play cached speech " + file, e);
+                return false;
+            }
+        }
+
+        /** 正在播放的缓存语音的utteranceId. */
+        private String mCachedSpeechUtteranceId;
+
+        private final MediaPlayer.OnCompletionListener mCachedSpeechCompletionListener =
+                new MediaPlayer.OnCompletionListener() {
+            @Override
+            public void onCompletion(MediaPlayer player) {
+                onSpeechDone(mCachedSpeechUtteranceId);
+            }
+        };
+
+        private void stopCachedSpeech() {
+            if (mSpeechPlayer.isPlaying()) {
+                mSpeechPlayer.stop();
+            }
+        }
+    }
+    /**
+     * 正在执行的反馈开始通过TTS或缓存播放，占用语音输出直到播放结束。在反馈线程上调用。
+     *
+     * @return 传给TTS的utteranceId，播放结束时交给{@link #onSpeechDone}。
+     */
+    private String beginSpeechPlayback() {
+        long token = mFeedbackPipeline.getScheduler().startPlayback(System.nanoTime(),
+                MAX_UTTERANCE_NANOS);
+        int slot = (int) (token % UTTERANCE_ID_COUNT);
+        mUtteranceTokens.set(slot, token);
+        return UTTERANCE_IDS[slot];
+    }
+
+    private static String[] newUtteranceIds() {
+        String[] utteranceIds = new String[UTTERANCE_ID_COUNT];
+        for (int i = 0; i < utteranceIds.length; i++) {
+            utteranceIds[i] = SPEECH_UTTERANCE_PREFIX + i;
+        }
+        return utteranceIds;
+    }
+
+    /**
+     * @param utteranceId 带{@link #SPEECH_UTTERANCE_PREFIX}前缀的utteranceId。
+     * @return utteranceId在环中的位置，格式不对时返回-1。直接读字符，不分配内存。
+     */
+    private static int utteranceSlotOf(String utteranceId) {
+        int length = utteranceId.length();
+        int start = SPEECH_UTTERANCE_PREFIX.length();
+        if (length == start) {
+            return -1;
+        }
+        int slot = 0;
+        for (int i = start; i < length && slot < UTTERANCE_ID_COUNT; i++) {
+            int digit = utteranceId.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            slot = slot * 10 + digit;
+        }
+        return slot < UTTERANCE_ID_COUNT ? slot : -1;
+    }
+
+    /**
+     * 语音播放结束，等待的反馈可以开始了。过期的回调（这句话已经被打断）什么也不做。
+     *
+     * @param utteranceId 带{@link #SPEECH_UTTERANCE_PREFIX}前缀的utteranceId。
+     */
+    private void onSpeechDone(String utteranceId) {
+        if (utteranceId == null) {
+            return;
+        }
+        int slot = utteranceSlotOf(utteranceId);
+        if (slot < 0) {
+            return;
+        }
+        if (mFeedbackPipeline.getScheduler().onPlaybackDone(mUtteranceTokens.get(slot))) {
+            mHandler.sendEmptyMessage(MESSAGE_DRAIN_FEEDBACK);
+        }
+    }
+
+    /**
+     * speak和playEarcon的回调通知调度器播放结束；
+     * 其余的是synthesizeToFile的回调，utteranceId就是缓存key，把结果加入缓存。
+     */
+    private final UtteranceProgressListener mSynthesisListener = new UtteranceProgressListener() {
+        @Override
+        public void onStart(String utteranceId) {
+        }
+
+        @Override
+        public void onDone(String utteranceId) {
+            if (isSpeechUtterance(utteranceId)) {
+                onSpeechDone(utteranceId);
+            } else if (utteranceId != null) {
+                mSpeechCache.commit(utteranceId);
+            }
+        }
+
+        @Override
+        public void onError(String utteranceId) {
+            if (isSpeechUtterance(utteranceId)) {
+                onSpeechDone(utteranceId);
+            } else if (utteranceId != null) {
+                mSpeechCache.abort(utteranceId);
+            }
+        }
+
+        @Override
+        public void onStop(String utteranceId, boolean interrupted) {
+            if (isSpeechUtterance(utteranceId)) {
+                onSpeechDone(utteranceId);
+            } else if (utteranceId != null) {
+                mSpeechCache.abort(utteranceId);
+            }
+        }
+
+        private boolean isSpeechUtterance(String utteranceId) {
+            return utteranceId != null && utteranceId.startsWith(SPEECH_UTTERANCE_PREFIX);
+        }
+    };
+
+    /** 耳机延迟的测量钩子，默认在打开VERBOSE日志时输出. */
+    EarconPlayer.LatencyListener mEarconLatencyListener = new EarconPlayer.LatencyListener() {
+        @Override
+        public void onEarconPlayed(int earconId, boolean lowLatency, long latencyNanos) {
+            if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+                Log.v(LOG_TAG, "Earcon " + earconId + (lowLatency ? " SoundPool " : " TTS ")
+                        + latencyNanos / 1000 + "us");
             }
         }
     };
+
     /**
      *  用于接收我们的上下文 - 设备状态的更新。
      */
@@ -239,11 +736,22 @@ public class ClockBackService extends AccessibilityService {
             if (AudioManager.RINGER_MODE_CHANGED_ACTION.equals(action)) {//粘性广播意图动作，表明振铃模式已经改变。 包括新的铃声模式。
                 int ringerMode = intent.getIntExtra(AudioManager.EXTRA_RINGER_MODE,//新的铃声模式。
                         AudioManager.RINGER_MODE_NORMAL);//铃声模式可能会发出声音并可能振动。 如果在更换此模式之前的音量可以听到，则会发出声音。 如果振动设置打开，它会振动。
+                mDeviceState.set(mDeviceState.get().withRingerMode(ringerMode));
                 configureForRingerMode(ringerMode);
+            } else if (ACTION_VOLUME_CHANGED.equals(action)) {
+                // 只关心铃声音量，屏幕状态变化时读出来。
+                if (intent.getIntExtra(EXTRA_VOLUME_STREAM_TYPE, -1) == AudioManager.STREAM_RING) {
+                    int volume = intent.getIntExtra(EXTRA_VOLUME_STREAM_VALUE, 0);
+                    mDeviceState.set(mDeviceState.get().withVolumePercent(
+                            DeviceState.volumePercentOf(volume, mMaxRingerVolume)));
+                }
             } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
-                provideScreenStateChangeFeedback(INDEX_SCREEN_ON);
+                mDeviceState.set(mDeviceState.get().withScreenOn(true));
+                provideScreenStateChangeFeedback(FeedbackProfile.INDEX_SCREEN_ON);
             } else if (Intent.ACTION_SCREEN_OFF.equals(action)) {
-                provideScreenStateChangeFeedback(INDEX_SCREEN_OFF);
+                // 屏幕关闭后不再为事件提供反馈，只宣布屏幕关闭。
+                mDeviceState.set(mDeviceState.get().withScreenOn(false));
+                provideScreenStateChangeFeedback(FeedbackProfile.INDEX_SCREEN_OFF);
             } else {
                 Log.w(LOG_TAG, "Registered for but not handling action " + action);
             }
@@ -254,24 +762,29 @@ public class ClockBackService extends AccessibilityService {
          * @param feedbackIndex 静态映射反馈资源中反馈的索引。
          */
         private void provideScreenStateChangeFeedback(int feedbackIndex) {
-            // 我们根据我们目前提供的反馈采取具体行动。
-            switch (mProvidedFeedbackType) {
-                case AccessibilityServiceInfo.FEEDBACK_SPOKEN://表示口头反馈
-                    String utterance = generateScreenOnOrOffUtternace(feedbackIndex);
-                    mHandler.obtainMessage(MESSAGE_SPEAK, utterance).sendToTarget();
-                    return;
-                case AccessibilityServiceInfo.FEEDBACK_AUDIBLE://表示可听（未说出）反馈
-                    mHandler.obtainMessage(MESSAGE_PLAY_EARCON, feedbackIndex, 0).sendToTarget();
-                    return;
-                case AccessibilityServiceInfo.FEEDBACK_HAPTIC://表示触觉反馈
-                    mHandler.obtainMessage(MESSAGE_VIBRATE, feedbackIndex, 0).sendToTarget();
-                    return;
-                default:
-                    throw new IllegalStateException("Unexpected feedback type "
-                            + mProvidedFeedbackType);
-            }
+            // 由当前的反馈通道决定具体行动，语音通道才生成话语。
+            mFeedbackChannel.onDeviceStateChanged(feedbackIndex);
         }
     };
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // 启动反馈线程，事件接收线程只负责投递消息，立即返回。
+        mFeedbackThread = new HandlerThread(LOG_TAG + "-feedback",
+                Process.THREAD_PRIORITY_FOREGROUND);
+        mFeedbackThread.start();
+        FeedbackHandler handler = new FeedbackHandler(mFeedbackThread.getLooper());
+        mHandler = handler;
+        mFeedbackPipeline = new FeedbackPipeline(MAX_PENDING_FEEDBACK, handler);
+    }
+
+    @Override
+    public void onDestroy() {
+        // 处理完已投递的消息（包括停止TTS）后退出反馈线程。
+        mFeedbackThread.quitSafely();
+        super.onDestroy();
+    }
+
     /**
      *  无障碍服务的生命周期仅由系统管理，并遵循既定的服务生命周期。
      *  启动无障碍服务是由用户明确地在设备设置中启用服务来触发的。
@@ -287,20 +800,31 @@ public class ClockBackService extends AccessibilityService {
 
         mContext = this;
 
-        // 发送消息以启动TTS。
+        // 发送消息以在反馈线程上加载反馈配置，启动TTS和振动器。
         mHandler.sendEmptyMessage(MESSAGE_START_TTS);
 
-        // 获得振动器服务。
-        mVibrator = (Vibrator) getSystemService(Service.VIBRATOR_SERVICE);
-
-        // 获取AudioManager并根据当前铃声模式进行配置。
+        // 连接时查询一次设备状态，之后只由广播更新；反馈配置加载完成后根据铃声模式进行配置。
         mAudioManager = (AudioManager) getSystemService(Service.AUDIO_SERVICE);
-        // 在Froyo，铃声模式的广播接收器在注册时会回到当前状态，但在Eclair中这没有完成，因此我们在此进行了轮询。
-        int ringerMode = mAudioManager.getRingerMode();
-        configureForRingerMode(ringerMode);
+        mMaxRingerVolume = mAudioManager.getStreamMaxVolume(AudioManager.STREAM_RING);
+        mDeviceState.set(new DeviceState(mAudioManager.getRingerMode(),
+                DeviceState.volumePercentOf(
+                        mAudioManager.getStreamVolume(AudioManager.STREAM_RING), mMaxRingerVolume),
+                ((PowerManager) getSystemService(Service.POWER_SERVICE)).isInteractive()));
+
+        // 耳机由SoundPool播放，语音在TTS就绪前会缓冲，不必等TTS初始化完成再注册。
+        registerBroadCastReceiver();
+
+        startTraceIfEnabled();
 
         // 我们现在处于初始状态。
         isInfrastructureInitialized = true;
+        sConnectedService = this;
+
+        // 重新绑定时反馈配置已经加载过，直接使用；否则等反馈线程加载完成后再配置。
+        FeedbackProfile profile = FeedbackProfileLoader.getCached(R.xml.clockback_profile);
+        if (profile != null) {
+            applyFeedbackProfile(profile);
+        }
     }
 
     @Override
@@ -314,8 +838,15 @@ public class ClockBackService extends AccessibilityService {
                 unregisterReceiver(mBroadcastReceiver);
             }
 
+            stopTrace();
+            mMainHandler.removeCallbacks(mIdleCheck);
+            mFeedbackChannel = FeedbackChannel.NONE;
+            mFeedbackProfile = FeedbackProfile.EMPTY;
+            mEventGate.setFeedbackEnabled(false);
+
             // 我们不再处于初始状态。
             isInfrastructureInitialized = false;
+            sConnectedService = null;
         }
         return false;
     }
@@ -327,6 +858,7 @@ public class ClockBackService extends AccessibilityService {
         // 用我们感兴趣的广播意图创建一个过滤器。
         IntentFilter filter = new IntentFilter();
         filter.addAction(AudioManager.RINGER_MODE_CHANGED_ACTION);
+        filter.addAction(ACTION_VOLUME_CHANGED);
         filter.addAction(Intent.ACTION_SCREEN_ON);
         filter.addAction(Intent.ACTION_SCREEN_OFF);
         // 注册感兴趣的广播。
@@ -341,24 +873,12 @@ public class ClockBackService extends AccessibilityService {
      */
     private String generateScreenOnOrOffUtternace(int feedbackIndex) {
         // 获取公布模板。
-        int resourceId = (feedbackIndex == INDEX_SCREEN_ON) ? R.string.template_screen_on
+        int resourceId = (feedbackIndex == FeedbackProfile.INDEX_SCREEN_ON) ? R.string.template_screen_on
                 : R.string.template_screen_off;
         String template = mContext.getString(resourceId);
 
-        // 使用铃声百分比格式化模板。
-        int currentRingerVolume = mAudioManager.getStreamVolume(AudioManager.STREAM_RING);//AudioManager.STREAM_RING 用于识别电话铃声的音频流量
-        int maxRingerVolume = mAudioManager.getStreamMaxVolume(AudioManager.STREAM_RING);
-        int volumePercent = (100 / maxRingerVolume) * currentRingerVolume;
-
-        // 让我们围绕五点，这听起来更好。
-        int adjustment = volumePercent % 10;
-        if (adjustment < 5) {
-            volumePercent -= adjustment;
-        } else if (adjustment > 5) {
-            volumePercent += (10 - adjustment);
-        }
-
-        return String.format(template, volumePercent);
+        // 使用缓存的铃声百分比格式化模板，不再跨进程查询音量。
+        return String.format(template, mDeviceState.get().getVolumePercent());
     }
 
     /**
@@ -380,35 +900,27 @@ public class ClockBackService extends AccessibilityService {
      * @param ringerMode 设备铃声模式。
      */
     private void configureForRingerMode(int ringerMode) {
-        if (ringerMode == AudioManager.RINGER_MODE_SILENT) {//不会振动。 （这会覆盖振动设置。）
-            // 当铃声静音时，我们只想提供触觉反馈。
-            mProvidedFeedbackType = AccessibilityServiceInfo.FEEDBACK_HAPTIC;//AccessibilityServiceInfo.FEEDBACK_HAPTIC 表示触觉反馈。
-
-            // 接管口头和声音反馈，因此不提供此类反馈。
-            setServiceInfo(AccessibilityServiceInfo.FEEDBACK_HAPTIC//表示触觉反馈
-                    | AccessibilityServiceInfo.FEEDBACK_SPOKEN//表示口头反馈
-                    | AccessibilityServiceInfo.FEEDBACK_AUDIBLE);//表示可听（未说出）反馈
-
-            // 只使用耳机通知振铃器状态更改。
-            mHandler.obtainMessage(MESSAGE_PLAY_EARCON, INDEX_RINGER_SILENT, 0).sendToTarget();
-        } else if (ringerMode == AudioManager.RINGER_MODE_VIBRATE) {//（这会导致电话铃声总是振动，但是如果设置，通知振动只会振动。）
-            // 当振铃器振动时，我们只想提供听觉反馈。
-            mProvidedFeedbackType = AccessibilityServiceInfo.FEEDBACK_AUDIBLE;//表示可听（未说出）反馈。
-
-            // 接管口头反馈，以免提供口头反馈。
-            setServiceInfo(AccessibilityServiceInfo.FEEDBACK_AUDIBLE
-                    | AccessibilityServiceInfo.FEEDBACK_SPOKEN);
-
-            // 只使用耳机通知振铃器状态更改。
-            mHandler.obtainMessage(MESSAGE_PLAY_EARCON, INDEX_RINGER_VIBRATE, 0).sendToTarget();
-        } else if (ringerMode == AudioManager.RINGER_MODE_NORMAL) {
-            // 当铃声响起时，我们希望提供覆盖默认语音反馈的语音反馈。
-            mProvidedFeedbackType = AccessibilityServiceInfo.FEEDBACK_SPOKEN;
-            setServiceInfo(AccessibilityServiceInfo.FEEDBACK_SPOKEN);
-
-            // 只使用耳机通知振铃器状态更改。
-            mHandler.obtainMessage(MESSAGE_PLAY_EARCON, INDEX_RINGER_NORMAL, 0).sendToTarget();
+        if (mRingerModeFeedback == null) {
+            // 反馈配置还没有加载，加载完成后会再配置。
+            return;
         }
+        FeedbackChannel channel = mRingerModeFeedback.channelFor(ringerMode);
+        if (channel == null) {
+            return;
+        }
+        mFeedbackChannel = channel;
+        mEventGate.setEventTypes(channel.getEventTypes());
+        mEventGate.setFeedbackEnabled(true);
+
+        // 接管这个模式不提供的反馈，并且只订阅通道会处理的事件类型。
+        mTakeOverFeedbackTypes = RingerModeFeedback.takeOverFeedbackTypes(ringerMode);
+        publishServiceInfo();
+
+        // 只使用耳机通知振铃器状态更改。
+        int feedbackIndex = ringerMode == AudioManager.RINGER_MODE_SILENT ? FeedbackProfile.INDEX_RINGER_SILENT
+                : ringerMode == AudioManager.RINGER_MODE_VIBRATE ? FeedbackProfile.INDEX_RINGER_VIBRATE
+                : FeedbackProfile.INDEX_RINGER_NORMAL;
+        enqueueFeedback(MESSAGE_PLAY_EARCON, feedbackIndex, null);
     }
 
     /**
@@ -419,106 +931,264 @@ public class ClockBackService extends AccessibilityService {
      *   Note: feedbackType参数是按位或全部
      *   feedback 此服务想提供类型。
      * </p>
+     * @param eventTypes 要接收的事件类型，即当前反馈通道会处理的事件类型。
+     * @param notificationTimeout 系统合并同类事件的间隔。
      */
-    private void setServiceInfo(int feedbackType) {
+    private void setServiceInfo(int feedbackType, int eventTypes, int notificationTimeout) {
         AccessibilityServiceInfo info = new AccessibilityServiceInfo();
-        // 我们对所有类型的辅助事件感兴趣。
-        info.eventTypes = AccessibilityEvent.TYPES_ALL_MASK;
+        // 只接收当前通道会处理的辅助事件，其它事件系统不再发送过来。
+        info.eventTypes = eventTypes;
         // 我们想提供特定类型的反馈。
         info.feedbackType = feedbackType;
         // 我们希望以特定的时间间隔接收事件。
-        info.notificationTimeout = EVENT_NOTIFICATION_TIMEOUT_MILLIS;
+        info.notificationTimeout = notificationTimeout;
         // 我们只想接收来自特定包的无障碍事件。
-        info.packageNames = PACKAGE_NAMES;
+        info.packageNames = mFeedbackProfile.getPackageNames();
         setServiceInfo(info);
     }
 
     /** 辅助功能触发时的返回事件 */
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
-        Log.i(LOG_TAG, mProvidedFeedbackType + " " + event.toString());
-
-        // 我们根据我们目前提供的反馈类型采取行动。
-        if (mProvidedFeedbackType == AccessibilityServiceInfo.FEEDBACK_SPOKEN) {
-            mHandler.obtainMessage(MESSAGE_SPEAK, formatUtterance(event)).sendToTarget();
-        } else if (mProvidedFeedbackType == AccessibilityServiceInfo.FEEDBACK_AUDIBLE) {
-            mHandler.obtainMessage(MESSAGE_PLAY_EARCON, event.getEventType(), 0).sendToTarget();
-        } else if (mProvidedFeedbackType == AccessibilityServiceInfo.FEEDBACK_HAPTIC) {
-            mHandler.obtainMessage(MESSAGE_VIBRATE, event.getEventType(), 0).sendToTarget();
-        } else {
-            throw new IllegalStateException("Unexpected feedback type " + mProvidedFeedbackType);
+        // 事件速率变化时调整通知间隔，被拒绝的事件同样占用了跨进程的开销。
+        if (mEventRateThrottle.onEvent(event.getEventTime())) {
+            publishServiceInfo();
         }
+
+        // 录制系统发来的所有事件，重放时可以看到过滤前的情况。
+        if (mTraceWriter != null) {
+            recordEvent(event);
+        }
+
+        // 在任何字符串处理和消息分配之前拒绝不需要处理的事件。
+        if (mEventGate.check(event.getEventType(), event.getPackageName(),
+                mDeviceState.get().isScreenOn()) != EventGate.ACCEPTED) {
+            return;
+        }
+
+        // 只有打开了日志才构建事件的字符串。
+        FeedbackChannel channel = mFeedbackChannel;
+        if (Log.isLoggable(LOG_TAG, Log.VERBOSE)) {
+            Log.v(LOG_TAG, channel.getFeedbackType() + " " + event.toString());
+        }
+
+        // 由当前的反馈通道采取行动。
+        channel.onEvent(event.getEventType(), event.getText(), event.getContentDescription());
     }
-    /** 回调中断可访问性反馈。 */
-    @Override
-    public void onInterrupt() {
-        // 我们根据我们目前提供的反馈类型采取行动。
-        if (mProvidedFeedbackType == AccessibilityServiceInfo.FEEDBACK_SPOKEN) {
-            mHandler.obtainMessage(MESSAGE_STOP_SPEAK).sendToTarget();
-        } else if (mProvidedFeedbackType == AccessibilityServiceInfo.FEEDBACK_AUDIBLE) {
-            mHandler.obtainMessage(MESSAGE_STOP_PLAY_EARCON).sendToTarget();
-        } else if (mProvidedFeedbackType == AccessibilityServiceInfo.FEEDBACK_HAPTIC) {
-            mHandler.obtainMessage(MESSAGE_STOP_VIBRATE).sendToTarget();
-        } else {
-            throw new IllegalStateException("Unexpected feedback type " + mProvidedFeedbackType);
+
+    /** 在反馈线程上加载反馈配置，格式不对时不提供任何反馈. */
+    private FeedbackProfile loadFeedbackProfile() {
+        try {
+            return FeedbackProfileLoader.load(getResources(), R.xml.clockback_profile);
+        } catch (IOException | XmlPullParserException e) {
+            Log.e(LOG_TAG, "Cannot load feedback profile", e);
+            return FeedbackProfile.EMPTY;
         }
     }
 
     /**
-     * 格式化来自{@link AccessibilityEvent}的话语。
-     *
-     * @param event 从中发起格式化事件的事件。
-     * @return 格式化的话语。
+     * 换用新的反馈配置：按配置重建各振铃模式的反馈通道和通知间隔，再按当前振铃模式重新配置。
+     * 只在主线程上调用。
      */
-    private String formatUtterance(AccessibilityEvent event) {
-        StringBuilder utterance = mUtterance;
+    private void applyFeedbackProfile(FeedbackProfile profile) {
+        if (!isInfrastructureInitialized || profile == mFeedbackProfile) {
+            return;
+        }
+        mFeedbackProfile = profile;
+        mEventGate.setPackageNames(profile.getPackageNames());
+        mRingerModeFeedback = new RingerModeFeedback(
+                FeedbackChannel.spoken(AccessibilityServiceInfo.FEEDBACK_SPOKEN,
+                        RingerModeFeedback.SPOKEN_EVENT_TYPES, mFeedbackSink,
+                        MESSAGE_SPEAK, MESSAGE_STOP_SPEAK),
+                // 耳机和振动通道只订阅有对应声音或振动模式的事件类型。
+                FeedbackChannel.keyed(AccessibilityServiceInfo.FEEDBACK_AUDIBLE,
+                        RingerModeFeedback.eventTypesOf(profile.getSoundKeys(),
+                                FeedbackProfile.DEVICE_STATE_KEYS),
+                        mFeedbackSink, MESSAGE_PLAY_EARCON, MESSAGE_STOP_PLAY_EARCON),
+                FeedbackChannel.keyed(AccessibilityServiceInfo.FEEDBACK_HAPTIC,
+                        RingerModeFeedback.eventTypesOf(profile.getVibrationKeys(),
+                                FeedbackProfile.DEVICE_STATE_KEYS),
+                        mFeedbackSink, MESSAGE_VIBRATE, MESSAGE_STOP_VIBRATE));
+        mEventRateThrottle = throttleFor(profile);
+        // 连接时已经查询过铃声模式，之后的变化由广播更新快照。
+        configureForRingerMode(mDeviceState.get().getRingerMode());
+    }
 
-        // 在追加格式化文本之前清除话语。
-        utterance.setLength(0);
+    private static EventRateThrottle throttleFor(FeedbackProfile profile) {
+        return new EventRateThrottle(profile.getMinNotificationTimeoutMillis(),
+                profile.getMaxNotificationTimeoutMillis(), profile.getNotificationTimeoutMillis());
+    }
 
-        List<CharSequence> eventText = event.getText();
+    /** 按当前的反馈通道和通知间隔重新设置服务信息. */
+    private void publishServiceInfo() {
+        setServiceInfo(mTakeOverFeedbackTypes, mFeedbackChannel.getEventTypes(),
+                mEventRateThrottle.getTimeoutMillis());
+        // 放宽后要在空闲时收紧回来。
+        mMainHandler.removeCallbacks(mIdleCheck);
+        if (mEventRateThrottle.needsIdleCheck()) {
+            mMainHandler.postDelayed(mIdleCheck, EventRateThrottle.IDLE_MILLIS);
+        }
+    }
 
-        // 我们尝试获取事件文本，如果这样的话。
-        if (!eventText.isEmpty()) {
-            for (CharSequence subText : eventText) {
-                // 使01发音为1
-                if (subText.charAt(0) =='0') {
-                    subText = subText.subSequence(1, subText.length());
-                }
-                utterance.append(subText);
-                utterance.append(SPACE);
-            }
+    /** 打开了{@link #TRACE_LOG_TAG}的DEBUG日志时，开始把收到的事件录制到files目录. */
+    private void startTraceIfEnabled() {
+        if (!Log.isLoggable(TRACE_LOG_TAG, Log.DEBUG)) {
+            return;
+        }
+        File file = new File(getFilesDir(), TRACE_FILE_NAME);
+        try {
+            mTraceWriter = new EventTrace.Writer(new FileOutputStream(file));
+            Log.d(TRACE_LOG_TAG, "Recording events to " + file);
+        } catch (IOException e) {
+            Log.w(TRACE_LOG_TAG, "Cannot record events to " + file, e);
+        }
+    }
 
-            return utterance.toString();
+    private void recordEvent(AccessibilityEvent event) {
+        try {
+            mTraceWriter.write(event.getEventTime(), SystemClock.uptimeMillis(),
+                    event.getEventType(), event.getPackageName(), event.getText(),
+                    event.getContentDescription());
+        } catch (IOException e) {
+            Log.w(TRACE_LOG_TAG, "Stopped recording events", e);
+            stopTrace();
         }
+    }
 
-        // 没有事件文本，但我们尝试获取内容描述，这是描述视图（通常与ImageView一起使用）的可选属性。
-        CharSequence contentDescription = event.getContentDescription();
-        if (contentDescription != null) {
-            utterance.append(contentDescription);
-            return utterance.toString();
+    private void stopTrace() {
+        if (mTraceWriter == null) {
+            return;
+        }
+        try {
+            mTraceWriter.close();
+            Log.d(TRACE_LOG_TAG, "Recorded " + mTraceWriter.getCount() + " events");
+        } catch (IOException e) {
+            Log.w(TRACE_LOG_TAG, "Cannot finish event trace", e);
         }
+        mTraceWriter = null;
+    }
+
+    /**
+     * 把反馈加入合并队列，必要时通知反馈线程。
+     *
+     * @param what 反馈种类：MESSAGE_SPEAK、MESSAGE_PLAY_EARCON或MESSAGE_VIBRATE。
+     * @param key 反馈来源：事件类型或设备状态的key。
+     * @param text 要说的话，会被复制；没有时为null。
+     */
+    private void enqueueFeedback(int what, int key, CharSequence text) {
+        if (mFeedbackPipeline.offer(what, key, text)) {
+            mHandler.sendEmptyMessage(MESSAGE_DRAIN_FEEDBACK);
+        }
+    }
+
+    /** 回调中断可访问性反馈。 */
+    @Override
+    public void onInterrupt() {
+        // 还没执行的反馈也一并丢弃。
+        mFeedbackPipeline.interrupt();
+
+        // 由当前的反馈通道停止它的反馈。
+        mFeedbackChannel.onInterrupt();
+    }
+
+    /** adb shell dumpsys activity service .../.accessibility.ClockBackService 输出反馈统计. */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        dumpFeedbackStats(writer);
+    }
+
+    /**
+     * 输出反馈统计：队列深度、吞吐量、打断次数、按反馈种类和来源的延迟分布，以及语音缓存。
+     */
+    void dumpFeedbackStats(PrintWriter writer) {
+        writer.println("Feedback profile: " + mFeedbackProfile);
+        writer.println("Feedback channel: " + mFeedbackChannel.getFeedbackType());
+        writer.println("Notification timeout: " + mEventRateThrottle);
+        writer.println("Device state: " + mDeviceState.get());
+        writer.println("Event gate: " + mEventGate);
+        mFeedbackPipeline.getStats().dump(writer, mFeedbackPipeline.getQueue(), sFeedbackNames);
+        writer.println("Feedback scheduler: " + mFeedbackPipeline.getScheduler());
+        writer.println("Haptics: " + mHapticBatcher);
+        writer.println("Speech engine: " + sSpeechLifecycle);
+        writer.println("Speech cache: " + mSpeechCache);
+        writer.flush();
+    }
 
-        return utterance.toString();
+    /**
+     * 输出已连接服务的反馈统计，供调试界面使用。
+     *
+     * @return 服务没有连接时返回false。
+     */
+    static boolean dumpConnectedService(PrintWriter writer) {
+        ClockBackService service = sConnectedService;
+        if (service == null) {
+            return false;
+        }
+        service.dumpFeedbackStats(writer);
+        return true;
     }
 
+    /** 统计输出中反馈种类和来源的名称. */
+    private static final FeedbackStats.Names sFeedbackNames = new FeedbackStats.Names() {
+        @Override
+        public String feedbackName(int what) {
+            switch (what) {
+                case MESSAGE_SPEAK:
+                    return "speak";
+                case MESSAGE_PLAY_EARCON:
+                    return "earcon";
+                case MESSAGE_VIBRATE:
+                    return "vibrate";
+                default:
+                    return String.valueOf(what);
+            }
+        }
+
+        @Override
+        public String keyName(int key) {
+            switch (key) {
+                case FeedbackProfile.INDEX_SCREEN_ON:
+                    return "SCREEN_ON";
+                case FeedbackProfile.INDEX_SCREEN_OFF:
+                    return "SCREEN_OFF";
+                case FeedbackProfile.INDEX_RINGER_NORMAL:
+                    return "RINGER_NORMAL";
+                case FeedbackProfile.INDEX_RINGER_VIBRATE:
+                    return "RINGER_VIBRATE";
+                case FeedbackProfile.INDEX_RINGER_SILENT:
+                    return "RINGER_SILENT";
+                default:
+                    return AccessibilityEvent.eventTypeToString(key);
+            }
+        }
+    };
+
     /**
-     * 用耳机播放给它的声音ID。
+     * 用TTS引擎播放给它的声音ID，需要现场解码，延迟比{@link EarconPlayer}高。
      *
      * @param earconId 要播放的声音ID。
+     * @param queueMode 打断之前的语音，还是排在后面。
+     * @return 没有对应的声音时返回false。
      */
-    private void playEarcon(int earconId) {
-        String earconName = mEarconNames.get(earconId);
+    private boolean playEarcon(int earconId, int queueMode) {
+        TextToSpeech tts = sTts;
+        int slot = FeedbackProfile.slotOf(earconId);
+        if (slot < 0) {
+            return false;
+        }
+        String earconName = mEarconNames[slot];
         if (earconName == null) {
             // 我们不知道声音ID，因此我们需要加载声音。
-            Integer resourceId = sSoundsResourceIds.get(earconId);
-            if (resourceId != null) {
-                earconName = "[" + earconId + "]";
-                mTts.addEarcon(earconName, getPackageName(), resourceId);
-                mEarconNames.put(earconId, earconName);
+            int resourceId = mFeedbackProfile.getSoundResourceId(earconId);
+            if (resourceId == 0) {
+                return false;
             }
+            earconName = "[" + earconId + "]";
+            tts.addEarcon(earconName, getPackageName(), resourceId);
+            mEarconNames[slot] = earconName;
         }
 
-        mTts.playEarcon(earconName, QUEUING_MODE_INTERRUPT, null);
+        tts.playEarcon(earconName, queueMode, null, beginSpeechPlayback());
+        return true;
     }
 }
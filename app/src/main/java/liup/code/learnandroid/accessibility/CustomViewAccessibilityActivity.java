@@ -4,6 +4,7 @@ import android.app.Activity;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.os.Build;
 import android.os.Bundle;
 import android.text.Layout;
@@ -12,9 +13,14 @@ import android.text.TextPaint;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.TypedValue;
+import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewParent;
 import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityManager;
 import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityNodeProvider;
+import android.widget.ToggleButton;
 
 import liup.code.learnandroid.R;
 
@@ -189,7 +195,12 @@ public class CustomViewAccessibilityActivity extends Activity {
         }
 
         public CharSequence getText() {
-            return mChecked ? mTextOn : mTextOff;
+            return getStateText(mChecked);
+        }
+
+        /** 开或关时显示的文字. */
+        protected CharSequence getStateText(boolean checked) {
+            return checked ? mTextOn : mTextOff;
         }
 
         @Override
@@ -204,12 +215,7 @@ public class CustomViewAccessibilityActivity extends Activity {
 
         @Override
         public void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-            if (mOnLayout == null) {
-                mOnLayout = makeLayout(mTextOn);
-            }
-            if (mOffLayout == null) {
-                mOffLayout = makeLayout(mTextOff);
-            }
+            ensureLayouts();
             final int minWidth = Math.max(mOnLayout.getWidth(), mOffLayout.getWidth())
                     + getPaddingLeft() + getPaddingRight();
             final int minHeight = Math.max(mOnLayout.getHeight(), mOffLayout.getHeight())
@@ -218,6 +224,29 @@ public class CustomViewAccessibilityActivity extends Activity {
                     resolveSizeAndState(minHeight, heightMeasureSpec, 0));
         }
 
+        private void ensureLayouts() {
+            if (mOnLayout == null) {
+                mOnLayout = makeLayout(mTextOn);
+            }
+            if (mOffLayout == null) {
+                mOffLayout = makeLayout(mTextOff);
+            }
+        }
+
+        /** 开或关时绘制的文字布局. */
+        protected Layout getStateLayout(boolean checked) {
+            ensureLayouts();
+            return checked ? mOnLayout : mOffLayout;
+        }
+
+        /** 在(left, top)处绘制一个开或关的开关. */
+        protected void drawToggle(Canvas canvas, boolean checked, float left, float top) {
+            canvas.save();
+            canvas.translate(left, top);
+            getStateLayout(checked).draw(canvas);
+            canvas.restore();
+        }
+
         private Layout makeLayout(CharSequence text) {
             return new StaticLayout(text, mTextPaint,
                     (int) Math.ceil(Layout.getDesiredWidth(text, mTextPaint)),
@@ -227,11 +256,304 @@ public class CustomViewAccessibilityActivity extends Activity {
         @Override
         protected void onDraw(Canvas canvas) {
             super.onDraw(canvas);
-            canvas.save();
-            canvas.translate(getPaddingLeft(), getPaddingRight());
-            Layout switchText = mChecked ? mOnLayout : mOffLayout;
-            switchText.draw(canvas);
-            canvas.restore();
+            drawToggle(canvas, mChecked, getPaddingLeft(), getPaddingRight());
+        }
+    }
+
+    /**
+     *  演示如何为在一块画布上绘制许多逻辑控件的自定义视图提供可访问性支持。
+     *
+     *  每个格子都按{@link BaseToggleButton}的方式绘制成一个开关，但不是单独的View——几百个View太贵了。
+     *  格子通过{@link AccessibilityNodeProvider}暴露为虚拟视图，格子的编号就是虚拟视图ID：
+     *  节点从框架的对象池中取得，由调用方回收；触摸浏览时用{@link ToggleGridIndex}找到手指下的格子。
+     */
+    public static class ToggleGridView extends BaseToggleButton {
+
+        private static final int DEFAULT_ROWS = 4;
+
+        private static final int DEFAULT_COLUMNS = 4;
+
+        /** 格子之间的间隔，单位dip. */
+        private static final float CELL_SPACING_DIP = 8;
+
+        /** 格子的类名，辅助服务据此把格子读作开关. */
+        private static final String CELL_CLASS_NAME = ToggleButton.class.getName();
+
+        private final int mCellSpacing;
+
+        private int mRows;
+
+        private int mColumns;
+
+        private boolean[] mCellChecked;
+
+        /** 格子的描述，第一次用到时生成后缓存. */
+        private String[] mCellLabels;
+
+        /** 测量后建立. */
+        private ToggleGridIndex mIndex;
+
+        private AccessibilityNodeProvider mNodeProvider;
+
+        private int mHoveredCell = ToggleGridIndex.NO_CELL;
+
+        private int mAccessibilityFocusedCell = ToggleGridIndex.NO_CELL;
+
+        private final Rect mTempRect = new Rect();
+
+        private final Rect mTempVisibleRect = new Rect();
+
+        private final int[] mTempLocation = new int[2];
+
+        public ToggleGridView(Context context, AttributeSet attrs) {
+            super(context, attrs);
+            mCellSpacing = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
+                    CELL_SPACING_DIP, context.getResources().getDisplayMetrics());
+            setGridSize(DEFAULT_ROWS, DEFAULT_COLUMNS);
+        }
+
+        /** 设置行数和列数，所有格子回到关的状态. */
+        public void setGridSize(int rows, int columns) {
+            mRows = rows;
+            mColumns = columns;
+            mCellChecked = new boolean[rows * columns];
+            mCellLabels = new String[rows * columns];
+            mHoveredCell = ToggleGridIndex.NO_CELL;
+            mAccessibilityFocusedCell = ToggleGridIndex.NO_CELL;
+            requestLayout();
+            invalidate();
+        }
+
+        public int getCellCount() {
+            return mCellChecked.length;
+        }
+
+        public boolean isCellChecked(int cell) {
+            return mCellChecked[cell];
+        }
+
+        /**
+         * @return 视图坐标处的格子，没有时返回{@link ToggleGridIndex#NO_CELL}。
+         */
+        public int getCellAt(float x, float y) {
+            return mIndex != null ? mIndex.cellAt(x, y) : ToggleGridIndex.NO_CELL;
+        }
+
+        @Override
+        public void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            Layout on = getStateLayout(true);
+            Layout off = getStateLayout(false);
+            ToggleGridIndex index = new ToggleGridIndex(mRows, mColumns,
+                    Math.max(1, Math.max(on.getWidth(), off.getWidth())),
+                    Math.max(1, Math.max(on.getHeight(), off.getHeight())),
+                    mCellSpacing, getPaddingLeft(), getPaddingTop());
+            mIndex = index;
+            setMeasuredDimension(resolveSizeAndState(
+                    index.getWidth() + getPaddingLeft() + getPaddingRight(), widthMeasureSpec, 0),
+                    resolveSizeAndState(index.getHeight() + getPaddingTop() + getPaddingBottom(),
+                            heightMeasureSpec, 0));
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            // 不绘制BaseToggleButton自己的开关，只绘制格子。
+            ToggleGridIndex index = mIndex;
+            if (index == null) {
+                return;
+            }
+            int cellWidth = index.getCellWidth();
+            int cellHeight = index.getCellHeight();
+            for (int cell = 0; cell < index.getCellCount(); cell++) {
+                int left = index.getLeft(cell);
+                int top = index.getTop(cell);
+                if (!canvas.quickReject(left, top, left + cellWidth, top + cellHeight,
+                        Canvas.EdgeType.AA)) {
+                    drawToggle(canvas, mCellChecked[cell], left, top);
+                }
+            }
+        }
+
+        @Override
+        public boolean onTouchEvent(MotionEvent event) {
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    return getCellAt(event.getX(), event.getY()) != ToggleGridIndex.NO_CELL;
+                case MotionEvent.ACTION_UP:
+                    int cell = getCellAt(event.getX(), event.getY());
+                    if (cell != ToggleGridIndex.NO_CELL) {
+                        toggleCell(cell);
+                    }
+                    return true;
+                default:
+                    return true;
+            }
+        }
+
+        @Override
+        public boolean dispatchHoverEvent(MotionEvent event) {
+            // 触摸浏览时悬停事件指向手指下的格子，而不是整个视图。
+            AccessibilityManager manager = (AccessibilityManager) getContext()
+                    .getSystemService(Context.ACCESSIBILITY_SERVICE);
+            if (!manager.isEnabled() || !manager.isTouchExplorationEnabled()) {
+                return super.dispatchHoverEvent(event);
+            }
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_HOVER_ENTER:
+                case MotionEvent.ACTION_HOVER_MOVE:
+                    setHoveredCell(getCellAt(event.getX(), event.getY()));
+                    return true;
+                case MotionEvent.ACTION_HOVER_EXIT:
+                    setHoveredCell(ToggleGridIndex.NO_CELL);
+                    return true;
+                default:
+                    return super.dispatchHoverEvent(event);
+            }
+        }
+
+        private void setHoveredCell(int cell) {
+            if (cell == mHoveredCell) {
+                return;
+            }
+            int previous = mHoveredCell;
+            mHoveredCell = cell;
+            // 先进入新的格子再离开旧的，与框架对真实视图的顺序相同。
+            if (cell != ToggleGridIndex.NO_CELL) {
+                sendEventForCell(cell, AccessibilityEvent.TYPE_VIEW_HOVER_ENTER);
+            }
+            if (previous != ToggleGridIndex.NO_CELL) {
+                sendEventForCell(previous, AccessibilityEvent.TYPE_VIEW_HOVER_EXIT);
+            }
+        }
+
+        private void toggleCell(int cell) {
+            mCellChecked[cell] ^= true;
+            invalidate();
+            sendEventForCell(cell, AccessibilityEvent.TYPE_VIEW_CLICKED);
+        }
+
+        /** 以格子为来源发送无障碍事件，事件对象从框架的对象池中取得. */
+        private void sendEventForCell(int cell, int eventType) {
+            ViewParent parent = getParent();
+            AccessibilityManager manager = (AccessibilityManager) getContext()
+                    .getSystemService(Context.ACCESSIBILITY_SERVICE);
+            if (parent == null || !manager.isEnabled()) {
+                return;
+            }
+            AccessibilityEvent event = AccessibilityEvent.obtain(eventType);
+            event.setSource(this, cell);
+            event.setPackageName(getContext().getPackageName());
+            event.setClassName(CELL_CLASS_NAME);
+            event.setEnabled(isEnabled());
+            event.setChecked(mCellChecked[cell]);
+            event.getText().add(getCellLabel(cell));
+            event.getText().add(getStateText(mCellChecked[cell]));
+            parent.requestSendAccessibilityEvent(this, event);
+        }
+
+        private String getCellLabel(int cell) {
+            String label = mCellLabels[cell];
+            if (label == null) {
+                label = getContext().getString(R.string.accessibility_custom_cell,
+                        cell / mColumns + 1, cell % mColumns + 1);
+                mCellLabels[cell] = label;
+            }
+            return label;
+        }
+
+        @Override
+        public AccessibilityNodeProvider getAccessibilityNodeProvider() {
+            if (mNodeProvider == null) {
+                mNodeProvider = new CellNodeProvider();
+            }
+            return mNodeProvider;
+        }
+
+        /** 为整个网格和每个格子生成节点，执行对格子的操作. */
+        private class CellNodeProvider extends AccessibilityNodeProvider {
+
+            @Override
+            public AccessibilityNodeInfo createAccessibilityNodeInfo(int virtualViewId) {
+                ToggleGridView host = ToggleGridView.this;
+                if (virtualViewId == HOST_VIEW_ID) {
+                    AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain(host);
+                    onInitializeAccessibilityNodeInfo(info);
+                    for (int cell = 0; cell < mCellChecked.length; cell++) {
+                        info.addChild(host, cell);
+                    }
+                    return info;
+                }
+                ToggleGridIndex index = mIndex;
+                if (index == null || virtualViewId < 0 || virtualViewId >= mCellChecked.length) {
+                    return null;
+                }
+                AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain();
+                info.setSource(host, virtualViewId);
+                info.setParent(host);
+                info.setPackageName(getContext().getPackageName());
+                info.setClassName(CELL_CLASS_NAME);
+                info.setText(getCellLabel(virtualViewId));
+                info.setCheckable(true);
+                info.setChecked(mCellChecked[virtualViewId]);
+                info.setEnabled(isEnabled());
+                info.setClickable(true);
+                info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_CLICK);
+                if (mAccessibilityFocusedCell == virtualViewId) {
+                    info.setAccessibilityFocused(true);
+                    info.addAction(AccessibilityNodeInfo.AccessibilityAction
+                            .ACTION_CLEAR_ACCESSIBILITY_FOCUS);
+                } else {
+                    info.addAction(AccessibilityNodeInfo.AccessibilityAction
+                            .ACTION_ACCESSIBILITY_FOCUS);
+                }
+
+                // 位置由索引算出，不为格子保存矩形。
+                Rect bounds = mTempRect;
+                int left = index.getLeft(virtualViewId);
+                int top = index.getTop(virtualViewId);
+                bounds.set(left, top, left + index.getCellWidth(), top + index.getCellHeight());
+                info.setBoundsInParent(bounds);
+                info.setVisibleToUser(getLocalVisibleRect(mTempVisibleRect)
+                        && Rect.intersects(bounds, mTempVisibleRect));
+                getLocationOnScreen(mTempLocation);
+                bounds.offset(mTempLocation[0], mTempLocation[1]);
+                info.setBoundsInScreen(bounds);
+                return info;
+            }
+
+            @Override
+            public boolean performAction(int virtualViewId, int action, Bundle arguments) {
+                if (virtualViewId == HOST_VIEW_ID) {
+                    return performAccessibilityAction(action, arguments);
+                }
+                if (virtualViewId < 0 || virtualViewId >= mCellChecked.length) {
+                    return false;
+                }
+                switch (action) {
+                    case AccessibilityNodeInfo.ACTION_CLICK:
+                        toggleCell(virtualViewId);
+                        return true;
+                    case AccessibilityNodeInfo.ACTION_ACCESSIBILITY_FOCUS:
+                        if (mAccessibilityFocusedCell == virtualViewId) {
+                            return false;
+                        }
+                        mAccessibilityFocusedCell = virtualViewId;
+                        invalidate();
+                        sendEventForCell(virtualViewId,
+                                AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED);
+                        return true;
+                    case AccessibilityNodeInfo.ACTION_CLEAR_ACCESSIBILITY_FOCUS:
+                        if (mAccessibilityFocusedCell != virtualViewId) {
+                            return false;
+                        }
+                        mAccessibilityFocusedCell = ToggleGridIndex.NO_CELL;
+                        invalidate();
+                        sendEventForCell(virtualViewId,
+                                AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUS_CLEARED);
+                        return true;
+                    default:
+                        return false;
+                }
+            }
         }
     }
 }
@@ -0,0 +1,89 @@
+package liup.code.learnandroid.accessibility;
+
+/**
+ * @title 设备状态的快照
+ * @desc .  铃声模式、铃声音量百分比和屏幕是否打开。不可变，广播接收器每次变化时生成新的快照，
+ *          通过AtomicReference发布；事件线程和反馈线程只读取一次引用，
+ *          不需要加锁，也不需要跨进程查询AudioManager和PowerManager。
+ */
+final class DeviceState {
+
+    /** 与AudioManager.RINGER_MODE_NORMAL相同. */
+    static final int RINGER_MODE_NORMAL = 2;
+
+    /** 连接前的默认状态：正常铃声模式，音量未知，屏幕打开. */
+    static final DeviceState DEFAULT = new DeviceState(RINGER_MODE_NORMAL, 0, true);
+
+    private final int mRingerMode;
+
+    private final int mVolumePercent;
+
+    private final boolean mScreenOn;
+
+    /**
+     * @param ringerMode AudioManager.RINGER_MODE_*。
+     * @param volumePercent 铃声音量百分比，见{@link #volumePercentOf}。
+     * @param screenOn 屏幕是否打开。
+     */
+    DeviceState(int ringerMode, int volumePercent, boolean screenOn) {
+        mRingerMode = ringerMode;
+        mVolumePercent = volumePercent;
+        mScreenOn = screenOn;
+    }
+
+    /**
+     * 把音量换算成百分比，并按十位取整，这样读出来更好听；正好逢五时不变。
+     *
+     * @param volume 当前音量。
+     * @param maxVolume 最大音量，不大于0时返回0。
+     */
+    static int volumePercentOf(int volume, int maxVolume) {
+        if (maxVolume <= 0) {
+            return 0;
+        }
+        int volumePercent = volume * 100 / maxVolume;
+        int adjustment = volumePercent % 10;
+        if (adjustment < 5) {
+            volumePercent -= adjustment;
+        } else if (adjustment > 5) {
+            volumePercent += 10 - adjustment;
+        }
+        return volumePercent;
+    }
+
+    int getRingerMode() {
+        return mRingerMode;
+    }
+
+    int getVolumePercent() {
+        return mVolumePercent;
+    }
+
+    boolean isScreenOn() {
+        return mScreenOn;
+    }
+
+    /** 换了铃声模式的快照，没有变化时返回自身. */
+    DeviceState withRingerMode(int ringerMode) {
+        return ringerMode == mRingerMode ? this
+                : new DeviceState(ringerMode, mVolumePercent, mScreenOn);
+    }
+
+    /** 换了铃声音量的快照，没有变化时返回自身. */
+    DeviceState withVolumePercent(int volumePercent) {
+        return volumePercent == mVolumePercent ? this
+                : new DeviceState(mRingerMode, volumePercent, mScreenOn);
+    }
+
+    /** 换了屏幕状态的快照，没有变化时返回自身. */
+    DeviceState withScreenOn(boolean screenOn) {
+        return screenOn == mScreenOn ? this
+                : new DeviceState(mRingerMode, mVolumePercent, screenOn);
+    }
+
+    @Override
+    public String toString() {
+        return "DeviceState{ringerMode=" + mRingerMode + ", volume=" + mVolumePercent
+                + "%, screenOn=" + mScreenOn + "}";
+    }
+}
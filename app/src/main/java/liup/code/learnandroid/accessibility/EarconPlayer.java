@@ -0,0 +1,133 @@
+package liup.code.learnandroid.accessibility;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.SoundPool;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+
+/**
+ * @title 低延迟耳机播放器
+ * @desc .  服务连接时用{@link SoundPool}把所有R.raw.sound_*提示音解码成PCM常驻内存，
+ *          播放时直接从内存混音，不再经过TextToSpeech.playEarcon的解码和排队。
+ *          同时发声的数量有上限，超过时SoundPool停掉最早的声音。
+ *
+ *          只应在创建它的线程（反馈线程）上使用，加载完成的回调也投递到这个线程。
+ */
+class EarconPlayer {
+
+    /** 耳机播放延迟的测量钩子，用于与TTS播放方式对比. */
+    interface LatencyListener {
+        /**
+         * @param earconId 耳机ID。
+         * @param lowLatency true表示由SoundPool播放，false表示交给TTS引擎播放。
+         * @param latencyNanos 从反馈加入队列到开始播放（或交给TTS引擎）的时间。
+         */
+        void onEarconPlayed(int earconId, boolean lowLatency, long latencyNanos);
+    }
+
+    private final SoundPool mSoundPool;
+
+    /** SoundPool声音ID，按耳机ID的{@link FeedbackProfile#slotOf}索引，没有时为0. */
+    private final int[] mSoundIds = new int[FeedbackProfile.SLOT_COUNT];
+
+    /** 已经解码完成的SoundPool声音ID. */
+    private final SparseBooleanArray mLoadedSounds = new SparseBooleanArray();
+
+    /** 最近播放的流，停止时逐个停止. */
+    private final int[] mStreamIds;
+
+    private int mNextStream;
+
+    private LatencyListener mLatencyListener;
+
+    /**
+     * 创建播放器并开始解码所有提示音。
+     *
+     * @param context 用于读取raw资源。
+     * @param profile 耳机ID到raw资源ID的映射。
+     * @param maxStreams 最多同时发声的数量。
+     */
+    EarconPlayer(Context context, FeedbackProfile profile, int maxStreams) {
+        mSoundPool = new SoundPool.Builder()
+                .setMaxStreams(maxStreams)
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build())
+                .build();
+        mSoundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+            @Override
+            public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+                if (status == 0) {
+                    mLoadedSounds.put(sampleId, true);
+                }
+            }
+        });
+        mStreamIds = new int[maxStreams];
+
+        // 同一个资源只解码一次。
+        SparseIntArray loadedResources = new SparseIntArray();
+        for (int earconId : profile.getSoundKeys()) {
+            int resourceId = profile.getSoundResourceId(earconId);
+            int soundId = loadedResources.get(resourceId);
+            if (soundId == 0) {
+                soundId = mSoundPool.load(context, resourceId, 1);
+                loadedResources.put(resourceId, soundId);
+            }
+            mSoundIds[FeedbackProfile.slotOf(earconId)] = soundId;
+        }
+    }
+
+    void setLatencyListener(LatencyListener listener) {
+        mLatencyListener = listener;
+    }
+
+    /**
+     * 播放耳机。
+     *
+     * @param earconId 耳机ID。
+     * @param enqueueTimeNanos 反馈加入队列的时间，用于测量延迟。
+     * @return 声音还没解码完成或没有对应的声音时返回false，调用方可以退回TTS播放。
+     */
+    boolean play(int earconId, long enqueueTimeNanos) {
+        int slot = FeedbackProfile.slotOf(earconId);
+        int soundId = slot < 0 ? 0 : mSoundIds[slot];
+        if (soundId == 0 || !mLoadedSounds.get(soundId)) {
+            return false;
+        }
+        int streamId = mSoundPool.play(soundId, 1.0f, 1.0f, 1, 0, 1.0f);
+        if (streamId == 0) {
+            return false;
+        }
+        mStreamIds[mNextStream] = streamId;
+        mNextStream = (mNextStream + 1) % mStreamIds.length;
+        reportLatency(earconId, true, enqueueTimeNanos);
+        return true;
+    }
+
+    /**
+     * 报告一次耳机播放的延迟。TTS播放方式也通过这里报告，便于对比。
+     */
+    void reportLatency(int earconId, boolean lowLatency, long enqueueTimeNanos) {
+        LatencyListener listener = mLatencyListener;
+        if (listener != null) {
+            listener.onEarconPlayed(earconId, lowLatency, System.nanoTime() - enqueueTimeNanos);
+        }
+    }
+
+    /** 停止正在播放的耳机. */
+    void stop() {
+        for (int i = 0; i < mStreamIds.length; i++) {
+            if (mStreamIds[i] != 0) {
+                mSoundPool.stop(mStreamIds[i]);
+                mStreamIds[i] = 0;
+            }
+        }
+    }
+
+    /** 释放解码后的声音. */
+    void release() {
+        mSoundPool.release();
+    }
+}
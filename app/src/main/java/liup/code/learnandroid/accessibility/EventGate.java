@@ -0,0 +1,144 @@
+package liup.code.learnandroid.accessibility;
+
+/**
+ * @title 无障碍事件的分发前过滤
+ * @desc .  在格式化话语、投递反馈之前，先用几次整数比较和一次哈希查找拒绝不需要处理的事件：
+ *          反馈已停用、屏幕已关闭、事件类型不在当前通道订阅的范围内、或者来自不关注的应用。
+ *          系统按AccessibilityServiceInfo过滤事件，但设置更新前后仍会有事件漏过来，这里兜底。
+ *
+ *          屏幕状态由调用方从{@link DeviceState}快照中读取后传入。
+ *          每种拒绝原因分别计数，在服务的dump中输出。只在主线程上使用。
+ */
+final class EventGate {
+
+    /** 通过. */
+    static final int ACCEPTED = 0;
+
+    /** 反馈已停用，例如反馈配置还没有加载. */
+    static final int REJECTED_DISABLED = 1;
+
+    /** 屏幕已关闭. */
+    static final int REJECTED_SCREEN_OFF = 2;
+
+    /** 当前通道不处理这种事件类型. */
+    static final int REJECTED_EVENT_TYPE = 3;
+
+    /** 来自不关注的应用. */
+    static final int REJECTED_PACKAGE = 4;
+
+    private static final int RESULT_COUNT = 5;
+
+    private static final String[] RESULT_NAMES = {
+            "accepted", "disabled", "screenOff", "eventType", "package"
+    };
+
+    /** 开放寻址的包名哈希表，长度是2的幂，空槽为null；为null时接收所有应用. */
+    private String[] mPackageTable;
+
+    private int mEventTypes;
+
+    private boolean mFeedbackEnabled;
+
+    /** 按结果计数. */
+    private final long[] mCounts = new long[RESULT_COUNT];
+
+    /**
+     * 设置关注的应用。
+     *
+     * @param packageNames 包名，为null时接收所有应用的事件。
+     */
+    void setPackageNames(String[] packageNames) {
+        if (packageNames == null) {
+            mPackageTable = null;
+            return;
+        }
+        // 至少留一半空槽，查找时很快遇到空槽结束。
+        int size = Integer.highestOneBit(Math.max(1, packageNames.length) * 2) * 2;
+        String[] table = new String[size];
+        for (String packageName : packageNames) {
+            int slot = packageName.hashCode() & (size - 1);
+            while (table[slot] != null && !table[slot].equals(packageName)) {
+                slot = (slot + 1) & (size - 1);
+            }
+            // 保存常量池中的实例，系统传来的包名通常就是它，比较时引用相等即可。
+            table[slot] = packageName.intern();
+        }
+        mPackageTable = table;
+    }
+
+    /** 当前通道处理的事件类型，AccessibilityEvent.TYPE_*的按位或. */
+    void setEventTypes(int eventTypes) {
+        mEventTypes = eventTypes;
+    }
+
+    void setFeedbackEnabled(boolean feedbackEnabled) {
+        mFeedbackEnabled = feedbackEnabled;
+    }
+
+    /**
+     * 判断是否处理一个事件，并计数。
+     *
+     * @param eventType 事件类型。
+     * @param packageName 事件来源的包名，可以为null。
+     * @param screenOn 屏幕是否打开。
+     * @return {@link #ACCEPTED}或拒绝的原因。
+     */
+    int check(int eventType, CharSequence packageName, boolean screenOn) {
+        int result;
+        if (!mFeedbackEnabled) {
+            result = REJECTED_DISABLED;
+        } else if (!screenOn) {
+            result = REJECTED_SCREEN_OFF;
+        } else if ((mEventTypes & eventType) == 0) {
+            result = REJECTED_EVENT_TYPE;
+        } else if (!containsPackage(packageName)) {
+            result = REJECTED_PACKAGE;
+        } else {
+            result = ACCEPTED;
+        }
+        mCounts[result]++;
+        return result;
+    }
+
+    private boolean containsPackage(CharSequence packageName) {
+        String[] table = mPackageTable;
+        if (table == null) {
+            return true;
+        }
+        if (packageName == null) {
+            return false;
+        }
+        // 只有String的hashCode按内容计算并且会缓存。
+        String name = packageName instanceof String ? (String) packageName
+                : packageName.toString();
+        int slot = name.hashCode() & (table.length - 1);
+        String candidate;
+        while ((candidate = table[slot]) != null) {
+            if (candidate == name || candidate.equals(name)) {
+                return true;
+            }
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return false;
+    }
+
+    /**
+     * @param result {@link #ACCEPTED}或拒绝的原因。
+     * @return 这个结果出现的次数。
+     */
+    long getCount(int result) {
+        return mCounts[result];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("EventGate{");
+        for (int i = 0; i < RESULT_COUNT; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(RESULT_NAMES[i]).append('=').append(mCounts[i]);
+        }
+        return builder.append(", enabled=").append(mFeedbackEnabled).append('}').toString();
+    }
+}
@@ -0,0 +1,177 @@
+package liup.code.learnandroid.accessibility;
+
+/**
+ * @title 自适应的事件通知间隔
+ * @desc .  根据收到事件的速率调整AccessibilityServiceInfo.notificationTimeout：
+ *          事件风暴时加倍，让系统合并更多事件；空闲时回到下限，让单次操作及时得到反馈。
+ *
+ *          间隔只在下限到上限之间按2倍分档。负载是平均事件间隔（指数加权）内包含的通知间隔数，
+ *          负载达到{@link #WIDEN_LOAD}才放宽，降到{@link #NARROW_LOAD}以下才收紧，
+ *          两次调整之间至少间隔{@link #MIN_DWELL_MILLIS}，避免在两档之间来回切换。
+ *          只在主线程上使用。
+ */
+class EventRateThrottle {
+
+    /** 平均事件间隔的指数加权系数. */
+    static final double EWMA_ALPHA = 0.2;
+
+    /** 平均每个通知间隔至少有一个事件，说明系统已经在按间隔合并事件，放宽一档. */
+    static final double WIDEN_LOAD = 1.0;
+
+    /** 平均两个通知间隔都不到一个事件，收紧一档. 收紧后负载不超过它的一半，不会马上又放宽. */
+    static final double NARROW_LOAD = 0.5;
+
+    /** 两次调整之间的最短时间. */
+    static final long MIN_DWELL_MILLIS = 1000;
+
+    /** 超过这么久没有事件就认为空闲，直接回到下限. */
+    static final long IDLE_MILLIS = 1000;
+
+    /** 记录最近这么多次调整. */
+    private static final int HISTORY_SIZE = 16;
+
+    private final int mMinTimeoutMillis;
+
+    private final int mMaxTimeoutMillis;
+
+    private int mTimeoutMillis;
+
+    /** 平均事件间隔，没有事件时为-1. */
+    private double mAverageIntervalMillis = -1;
+
+    private long mLastEventTime;
+
+    private long mLastChangeTime;
+
+    private long mWidenCount;
+
+    private long mNarrowCount;
+
+    /** 最近的调整，循环使用：调整时间和调整后的间隔. */
+    private final long[] mHistoryTimes = new long[HISTORY_SIZE];
+
+    private final int[] mHistoryTimeouts = new int[HISTORY_SIZE];
+
+    private int mHistoryCount;
+
+    /**
+     * @param minTimeoutMillis 间隔的下限。
+     * @param maxTimeoutMillis 间隔的上限。
+     * @param initialTimeoutMillis 初始间隔，会被限制在上下限之间。
+     */
+    EventRateThrottle(int minTimeoutMillis, int maxTimeoutMillis, int initialTimeoutMillis) {
+        if (minTimeoutMillis <= 0 || maxTimeoutMillis < minTimeoutMillis) {
+            throw new IllegalArgumentException("Bad timeout bounds " + minTimeoutMillis
+                    + ".." + maxTimeoutMillis);
+        }
+        mMinTimeoutMillis = minTimeoutMillis;
+        mMaxTimeoutMillis = maxTimeoutMillis;
+        mTimeoutMillis = Math.min(Math.max(initialTimeoutMillis, minTimeoutMillis),
+                maxTimeoutMillis);
+    }
+
+    /** 当前的通知间隔. */
+    int getTimeoutMillis() {
+        return mTimeoutMillis;
+    }
+
+    /**
+     * 收到一个事件。
+     *
+     * @param eventTime 事件时间，单位毫秒。
+     * @return 通知间隔变化了，需要重新设置AccessibilityServiceInfo时返回true。
+     */
+    boolean onEvent(long eventTime) {
+        if (mAverageIntervalMillis < 0) {
+            mLastEventTime = eventTime;
+            mLastChangeTime = eventTime;
+            mAverageIntervalMillis = IDLE_MILLIS;
+            return false;
+        }
+        long interval = Math.max(0, eventTime - mLastEventTime);
+        mLastEventTime = eventTime;
+        if (interval >= IDLE_MILLIS) {
+            // 空闲后的第一次操作：立即回到下限。
+            mAverageIntervalMillis = interval;
+            return setTimeout(mMinTimeoutMillis, eventTime);
+        }
+        mAverageIntervalMillis += EWMA_ALPHA * (interval - mAverageIntervalMillis);
+
+        if (eventTime - mLastChangeTime < MIN_DWELL_MILLIS) {
+            return false;
+        }
+        double load = mTimeoutMillis / Math.max(1.0, mAverageIntervalMillis);
+        if (load >= WIDEN_LOAD && mTimeoutMillis < mMaxTimeoutMillis) {
+            return setTimeout(Math.min(mTimeoutMillis * 2, mMaxTimeoutMillis), eventTime);
+        }
+        if (load <= NARROW_LOAD && mTimeoutMillis > mMinTimeoutMillis) {
+            return setTimeout(Math.max(mTimeoutMillis / 2, mMinTimeoutMillis), eventTime);
+        }
+        return false;
+    }
+
+    /**
+     * 检查是否已经空闲。间隔大于下限时，调用方在{@link #IDLE_MILLIS}后调用。
+     *
+     * @param now 当前时间，与事件时间同一时钟。
+     * @return 已经空闲并回到下限时返回true。
+     */
+    boolean onIdleCheck(long now) {
+        if (mTimeoutMillis == mMinTimeoutMillis || now - mLastEventTime < IDLE_MILLIS) {
+            return false;
+        }
+        return setTimeout(mMinTimeoutMillis, now);
+    }
+
+    /** 间隔大于下限时需要安排空闲检查. */
+    boolean needsIdleCheck() {
+        return mTimeoutMillis > mMinTimeoutMillis;
+    }
+
+    private boolean setTimeout(int timeoutMillis, long now) {
+        if (timeoutMillis == mTimeoutMillis) {
+            return false;
+        }
+        if (timeoutMillis > mTimeoutMillis) {
+            mWidenCount++;
+        } else {
+            mNarrowCount++;
+        }
+        mTimeoutMillis = timeoutMillis;
+        mLastChangeTime = now;
+        int slot = mHistoryCount % HISTORY_SIZE;
+        mHistoryTimes[slot] = now;
+        mHistoryTimeouts[slot] = timeoutMillis;
+        mHistoryCount++;
+        return true;
+    }
+
+    /** 放宽的次数. */
+    long getWidenCount() {
+        return mWidenCount;
+    }
+
+    /** 收紧的次数. */
+    long getNarrowCount() {
+        return mNarrowCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("EventRateThrottle{timeout=")
+                .append(mTimeoutMillis).append("ms (").append(mMinTimeoutMillis).append("..")
+                .append(mMaxTimeoutMillis).append("), averageInterval=")
+                .append((long) mAverageIntervalMillis).append("ms, widened=")
+                .append(mWidenCount).append(", narrowed=").append(mNarrowCount)
+                .append(", history=[");
+        int first = Math.max(0, mHistoryCount - HISTORY_SIZE);
+        for (int i = first; i < mHistoryCount; i++) {
+            if (i > first) {
+                builder.append(", ");
+            }
+            int slot = i % HISTORY_SIZE;
+            builder.append(mHistoryTimes[slot]).append(':').append(mHistoryTimeouts[slot]);
+        }
+        return builder.append("]}").toString();
+    }
+}
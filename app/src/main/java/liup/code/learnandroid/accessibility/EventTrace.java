@@ -0,0 +1,285 @@
+package liup.code.learnandroid.accessibility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @title 无障碍事件轨迹文件
+ * @desc .  把收到的无障碍事件（类型、包名、文本、内容描述和时间戳）顺序写入紧凑的二进制文件，
+ *          之后可以在本地单元测试里读出来重放，复现线上的事件风暴。
+ *
+ *          文件格式：int magic, int 格式版本，然后是任意多条记录，每条记录依次为
+ *          事件时间与上一条的差、接收时间与事件时间的差（都是zigzag变长整数，单位毫秒）、
+ *          事件类型、包名、文本条数、各条文本、内容描述。
+ *          包名第一次出现时写出全文，之后只写编号；字符串为 长度+1（0表示null）+ UTF-8字节。
+ */
+final class EventTrace {
+
+    /** 文件头魔数 "CBTR". */
+    private static final int MAGIC = 0x43425452;
+
+    /** 文件格式版本，格式变化时递增. */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 读字符串时一次分配的最大字节数. */
+    private static final int STRING_CHUNK = 8192;
+
+    private EventTrace() {
+    }
+
+    /** 读出的一条事件，读下一条时复用. */
+    static final class Record {
+        /** 事件时间，单位毫秒. */
+        long eventTime;
+
+        /** 服务收到事件的时间，单位毫秒. */
+        long receiveTime;
+
+        int eventType;
+
+        CharSequence packageName;
+
+        final List<CharSequence> text = new ArrayList<CharSequence>();
+
+        CharSequence contentDescription;
+    }
+
+    /** 写入轨迹文件，不是线程安全的. */
+    static final class Writer implements Closeable {
+
+        private final DataOutputStream mOut;
+
+        private final Map<String, Integer> mPackageIds = new HashMap<String, Integer>();
+
+        private long mLastEventTime;
+
+        private int mCount;
+
+        Writer(OutputStream out) throws IOException {
+            mOut = new DataOutputStream(new BufferedOutputStream(out));
+            mOut.writeInt(MAGIC);
+            mOut.writeInt(FORMAT_VERSION);
+        }
+
+        /**
+         * 写入一条事件。
+         *
+         * @param eventTime 事件时间，单位毫秒。
+         * @param receiveTime 收到事件的时间，单位毫秒。
+         * @param eventType 事件类型。
+         * @param packageName 事件来源的包名。
+         * @param text 事件的文本。
+         * @param contentDescription 事件的内容描述。
+         */
+        void write(long eventTime, long receiveTime, int eventType, CharSequence packageName,
+                   List<CharSequence> text, CharSequence contentDescription) throws IOException {
+            writeVarLong(zigzag(eventTime - mLastEventTime));
+            writeVarLong(zigzag(receiveTime - eventTime));
+            mLastEventTime = eventTime;
+            writeVarLong(eventType & 0xffffffffL);
+            writePackage(packageName);
+            int size = text.size();
+            writeVarLong(size);
+            for (int i = 0; i < size; i++) {
+                writeString(text.get(i));
+            }
+            writeString(contentDescription);
+            mCount++;
+        }
+
+        /** 已写入的事件数量. */
+        int getCount() {
+            return mCount;
+        }
+
+        private void writePackage(CharSequence packageName) throws IOException {
+            if (packageName == null) {
+                writeVarLong(0);
+                return;
+            }
+            String name = packageName.toString();
+            Integer id = mPackageIds.get(name);
+            if (id != null) {
+                writeVarLong(id);
+                return;
+            }
+            id = mPackageIds.size() + 1;
+            mPackageIds.put(name, id);
+            writeVarLong(id);
+            writeString(name);
+        }
+
+        private void writeString(CharSequence value) throws IOException {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.toString().getBytes(UTF_8);
+            writeVarLong(bytes.length + 1);
+            mOut.write(bytes);
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7fL) != 0) {
+                mOut.write((int) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            mOut.write((int) value);
+        }
+
+        void flush() throws IOException {
+            mOut.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mOut.close();
+        }
+    }
+
+    /** 顺序读出轨迹文件. */
+    static final class Reader implements Closeable {
+
+        private final DataInputStream mIn;
+
+        private final List<String> mPackages = new ArrayList<String>();
+
+        private long mLastEventTime;
+
+        /**
+         * @throws IOException 读取失败或不是轨迹文件。
+         */
+        Reader(InputStream in) throws IOException {
+            mIn = new DataInputStream(new BufferedInputStream(in));
+            if (mIn.readInt() != MAGIC) {
+                throw new IOException("Not an event trace");
+            }
+            int version = mIn.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported event trace version " + version);
+            }
+        }
+
+        /**
+         * 读出下一条事件。
+         *
+         * @param record 用于接收事件。
+         * @return 已经读完时返回false。
+         * @throws IOException 读取失败、文件被截断或已损坏。
+         */
+        boolean next(Record record) throws IOException {
+            int first = mIn.read();
+            if (first < 0) {
+                return false;
+            }
+            record.eventTime = mLastEventTime + unzigzag(readVarLong(first));
+            record.receiveTime = record.eventTime + unzigzag(readVarLong(mIn.readUnsignedByte()));
+            mLastEventTime = record.eventTime;
+            record.eventType = (int) readVarLong();
+            record.packageName = readPackage();
+            int size = readCount();
+            record.text.clear();
+            for (int i = 0; i < size; i++) {
+                record.text.add(readString());
+            }
+            record.contentDescription = readString();
+            return true;
+        }
+
+        private String readPackage() throws IOException {
+            int id = readCount();
+            if (id == 0) {
+                return null;
+            }
+            if (id == mPackages.size() + 1) {
+                mPackages.add(readString());
+            } else if (id > mPackages.size()) {
+                throw new IOException("Bad package id " + id);
+            }
+            return mPackages.get(id - 1);
+        }
+
+        private String readString() throws IOException {
+            int length = readCount();
+            if (length == 0) {
+                return null;
+            }
+            // 流不知道还剩多少字节：长字符串边读边扩容，被截断的文件读到结尾就失败，
+            // 不会按损坏的长度一次分配。
+            int size = length - 1;
+            byte[] bytes = new byte[Math.min(size, STRING_CHUNK)];
+            int read = 0;
+            while (true) {
+                mIn.readFully(bytes, read, bytes.length - read);
+                read = bytes.length;
+                if (read == size) {
+                    return new String(bytes, UTF_8);
+                }
+                bytes = Arrays.copyOf(bytes, (int) Math.min(size, read * 2L));
+            }
+        }
+
+        /**
+         * 读出一个数量、编号或长度。
+         *
+         * @throws IOException 超出int范围，说明文件已损坏。
+         */
+        private int readCount() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Malformed event trace");
+            }
+            return (int) value;
+        }
+
+        private long readVarLong() throws IOException {
+            return readVarLong(mIn.readUnsignedByte());
+        }
+
+        private long readVarLong(int first) throws IOException {
+            long value = first & 0x7f;
+            int shift = 7;
+            int b = first;
+            while ((b & 0x80) != 0) {
+                if (shift > 63) {
+                    throw new IOException("Malformed varint");
+                }
+                b = mIn.read();
+                if (b < 0) {
+                    throw new EOFException();
+                }
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            }
+            return value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mIn.close();
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
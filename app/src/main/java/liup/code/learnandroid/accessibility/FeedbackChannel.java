@@ -0,0 +1,238 @@
+package liup.code.learnandroid.accessibility;
+
+import java.util.List;
+
+/**
+ * @title 反馈通道
+ * @desc .  一种反馈方式（语音、耳机、振动）的策略。{@link ClockBackService}根据振铃模式选定一个通道，
+ *          之后每个事件只需一次虚调用，不再在每个入口重复判断反馈类型。
+ *          多个通道可以用{@link #of}组合起来，同一个事件同时产生多种反馈。
+ *
+ *          通道本身不执行反馈，只把反馈交给{@link Sink}（反馈合并队列），因此不依赖Android框架，
+ *          可以在本地单元测试里直接驱动。事件和设备状态的回调都在主线程上调用。
+ */
+abstract class FeedbackChannel {
+
+    /** 通道产生的反馈交给它执行. */
+    interface Sink {
+        /**
+         * 加入一条反馈。
+         *
+         * @param what 反馈种类。
+         * @param key 反馈来源：事件类型或设备状态的key。
+         * @param text 要说的话，会被复制；没有时为null。
+         */
+        void enqueueFeedback(int what, int key, CharSequence text);
+
+        /**
+         * 停止正在执行的反馈。
+         *
+         * @param stopWhat 停止反馈的消息种类。
+         */
+        void stopFeedback(int stopWhat);
+
+        /**
+         * @param index 设备状态的key，例如屏幕打开或关闭。
+         * @return 宣布这个设备状态的话语。
+         */
+        CharSequence getDeviceStateUtterance(int index);
+    }
+
+    /** 不提供任何反馈的通道，服务连接前使用. */
+    static final FeedbackChannel NONE = new FeedbackChannel(0, 0) {
+        @Override
+        void onEvent(int eventType, List<CharSequence> text, CharSequence contentDescription) {
+        }
+
+        @Override
+        void onDeviceStateChanged(int index) {
+        }
+
+        @Override
+        void onInterrupt() {
+        }
+    };
+
+    /** AccessibilityServiceInfo.FEEDBACK_*的按位或. */
+    private final int mFeedbackType;
+
+    /** 通道会为之提供反馈的事件类型，AccessibilityEvent.TYPE_*的按位或. */
+    private final int mEventTypes;
+
+    FeedbackChannel(int feedbackType, int eventTypes) {
+        mFeedbackType = feedbackType;
+        mEventTypes = eventTypes;
+    }
+
+    /** 通道提供的反馈类型，AccessibilityServiceInfo.FEEDBACK_*的按位或. */
+    final int getFeedbackType() {
+        return mFeedbackType;
+    }
+
+    /**
+     * 通道会为之提供反馈的事件类型，服务只向系统订阅这些事件，
+     * 其它事件系统不再跨进程发送过来。
+     */
+    final int getEventTypes() {
+        return mEventTypes;
+    }
+
+    /**
+     * 为一个无障碍事件提供反馈。
+     *
+     * @param eventType 事件类型。
+     * @param text 事件的文本。
+     * @param contentDescription 事件的内容描述。
+     */
+    abstract void onEvent(int eventType, List<CharSequence> text, CharSequence contentDescription);
+
+    /**
+     * 为设备状态的变化提供反馈。
+     *
+     * @param index 设备状态的key。
+     */
+    abstract void onDeviceStateChanged(int index);
+
+    /** 停止正在执行的反馈. */
+    abstract void onInterrupt();
+
+    /**
+     * 语音通道：把事件的文本格式化成话语说出来。
+     *
+     * @param feedbackType 反馈类型。
+     * @param eventTypes 要说出来的事件类型。
+     * @param sink 执行反馈。
+     * @param what 说话的反馈种类。
+     * @param stopWhat 停止说话的反馈种类。
+     */
+    static FeedbackChannel spoken(int feedbackType, int eventTypes, Sink sink, int what,
+                                  int stopWhat) {
+        return new Spoken(feedbackType, eventTypes, sink, what, stopWhat);
+    }
+
+    /**
+     * 不需要话语的通道，例如耳机和振动：按事件类型或设备状态的key查找要播放的反馈。
+     *
+     * @param feedbackType 反馈类型。
+     * @param eventTypes 有对应反馈的事件类型。
+     * @param sink 执行反馈。
+     * @param what 执行反馈的种类。
+     * @param stopWhat 停止反馈的种类。
+     */
+    static FeedbackChannel keyed(int feedbackType, int eventTypes, Sink sink, int what,
+                                 int stopWhat) {
+        return new Keyed(feedbackType, eventTypes, sink, what, stopWhat);
+    }
+
+    /**
+     * 组合多个通道，同一个事件依次交给每个通道。
+     *
+     * @param channels 要组合的通道。
+     * @return 反馈类型和事件类型都是所有通道的按位或。
+     */
+    static FeedbackChannel of(FeedbackChannel... channels) {
+        return channels.length == 1 ? channels[0] : new Composite(channels.clone());
+    }
+
+    private static class Keyed extends FeedbackChannel {
+
+        final Sink mSink;
+
+        final int mWhat;
+
+        final int mStopWhat;
+
+        Keyed(int feedbackType, int eventTypes, Sink sink, int what, int stopWhat) {
+            super(feedbackType, eventTypes);
+            mSink = sink;
+            mWhat = what;
+            mStopWhat = stopWhat;
+        }
+
+        @Override
+        void onEvent(int eventType, List<CharSequence> text, CharSequence contentDescription) {
+            mSink.enqueueFeedback(mWhat, eventType, null);
+        }
+
+        @Override
+        void onDeviceStateChanged(int index) {
+            mSink.enqueueFeedback(mWhat, index, null);
+        }
+
+        @Override
+        void onInterrupt() {
+            mSink.stopFeedback(mStopWhat);
+        }
+    }
+
+    private static class Spoken extends Keyed {
+
+        /** 用于构建话语的可重用实例，只在主线程上使用. */
+        private final StringBuilder mUtterance = new StringBuilder();
+
+        Spoken(int feedbackType, int eventTypes, Sink sink, int what, int stopWhat) {
+            super(feedbackType, eventTypes, sink, what, stopWhat);
+        }
+
+        @Override
+        void onEvent(int eventType, List<CharSequence> text, CharSequence contentDescription) {
+            mSink.enqueueFeedback(mWhat, eventType,
+                    UtteranceFormatter.format(text, contentDescription, mUtterance));
+        }
+
+        @Override
+        void onDeviceStateChanged(int index) {
+            mSink.enqueueFeedback(mWhat, index, mSink.getDeviceStateUtterance(index));
+        }
+    }
+
+    private static class Composite extends FeedbackChannel {
+
+        private final FeedbackChannel[] mChannels;
+
+        Composite(FeedbackChannel[] channels) {
+            super(feedbackTypeOf(channels), eventTypesOf(channels));
+            mChannels = channels;
+        }
+
+        private static int feedbackTypeOf(FeedbackChannel[] channels) {
+            int feedbackType = 0;
+            for (FeedbackChannel channel : channels) {
+                feedbackType |= channel.getFeedbackType();
+            }
+            return feedbackType;
+        }
+
+        private static int eventTypesOf(FeedbackChannel[] channels) {
+            int eventTypes = 0;
+            for (FeedbackChannel channel : channels) {
+                eventTypes |= channel.getEventTypes();
+            }
+            return eventTypes;
+        }
+
+        @Override
+        void onEvent(int eventType, List<CharSequence> text, CharSequence contentDescription) {
+            // 系统按所有通道的并集发送事件，每个通道只处理自己订阅的那部分。
+            for (FeedbackChannel channel : mChannels) {
+                if ((channel.getEventTypes() & eventType) != 0) {
+                    channel.onEvent(eventType, text, contentDescription);
+                }
+            }
+        }
+
+        @Override
+        void onDeviceStateChanged(int index) {
+            for (FeedbackChannel channel : mChannels) {
+                channel.onDeviceStateChanged(index);
+            }
+        }
+
+        @Override
+        void onInterrupt() {
+            for (FeedbackChannel channel : mChannels) {
+                channel.onInterrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package liup.code.learnandroid.accessibility;
+
+/**
+ * @title 反馈流水线
+ * @desc .  把{@link FeedbackQueue}、{@link FeedbackScheduler}、{@link FeedbackStats}
+ *          和执行反馈的{@link Renderer}串起来：事件线程加入反馈，反馈线程按调度器允许的优先级
+ *          逐条取出交给Renderer。Renderer在真正调用输出接口时把延迟记入{@link #getStats}。
+ *          {@link ClockBackService}的Renderer调用TTS、SoundPool和振动器；
+ *          本地单元测试换成假的Renderer，就能在JVM上重放事件轨迹。
+ */
+class FeedbackPipeline {
+
+    /** 执行反馈，在反馈线程上调用；真正调用输出接口时调用{@link FeedbackStats#record}. */
+    interface Renderer {
+        /**
+         * @param what 反馈种类。
+         * @param key 反馈来源：事件类型或设备状态的key。
+         * @param text 要说的话，下一条反馈取出前有效。
+         * @param enqueueTimeNanos 反馈加入队列的时间。
+         */
+        void render(int what, int key, CharSequence text, long enqueueTimeNanos);
+    }
+
+    private final FeedbackQueue mQueue;
+
+    private final FeedbackScheduler mScheduler;
+
+    private final FeedbackStats mStats;
+
+    private final Renderer mRenderer;
+
+    /** 反馈线程取出反馈时复用的请求对象. */
+    private final FeedbackQueue.Request mRequest = new FeedbackQueue.Request();
+
+    /**
+     * @param capacity 最多同时等待执行的反馈数量。
+     * @param renderer 执行反馈。
+     */
+    FeedbackPipeline(int capacity, Renderer renderer) {
+        this(capacity, renderer, FeedbackScheduler.prioritized());
+    }
+
+    /**
+     * @param capacity 最多同时等待执行的反馈数量。
+     * @param renderer 执行反馈。
+     * @param scheduler 决定反馈的优先级、截止时间和能否打断正在播放的反馈。
+     */
+    FeedbackPipeline(int capacity, Renderer renderer, FeedbackScheduler scheduler) {
+        mQueue = new FeedbackQueue(capacity);
+        mScheduler = scheduler;
+        mStats = new FeedbackStats();
+        mRenderer = renderer;
+    }
+
+    /**
+     * 加入一条反馈。
+     *
+     * @return 需要通知反馈线程调用{@link #drain}时返回true。
+     */
+    boolean offer(int what, int key, CharSequence text) {
+        return offer(what, key, text, System.nanoTime());
+    }
+
+    /**
+     * 加入一条反馈。
+     *
+     * @param nowNanos 当前时间，重放时使用模拟的时钟。
+     * @return 需要通知反馈线程调用{@link #drain}时返回true。
+     */
+    boolean offer(int what, int key, CharSequence text, long nowNanos) {
+        int priority = mScheduler.priorityOf(key);
+        return mQueue.offer(what, key, text, priority, nowNanos,
+                mScheduler.deadlineOf(priority, nowNanos));
+    }
+
+    /**
+     * 执行优先级最高的一条反馈。
+     *
+     * @return 队列为空或者剩下的反馈都要等正在播放的反馈结束时返回false。
+     */
+    boolean renderNext() {
+        return renderNext(System.nanoTime());
+    }
+
+    /**
+     * 执行优先级最高的一条反馈。
+     *
+     * @param nowNanos 当前时间，重放时使用模拟的时钟。
+     * @return 队列为空或者剩下的反馈都要等正在播放的反馈结束时返回false。
+     */
+    boolean renderNext(long nowNanos) {
+        FeedbackQueue.Request request = mRequest;
+        if (!mQueue.poll(request, nowNanos, mScheduler.getMinPriority(nowNanos))) {
+            return false;
+        }
+        mScheduler.onRender(request.priority);
+        mRenderer.render(request.what, request.key, request.text, request.enqueueTimeNanos);
+        return true;
+    }
+
+    /**
+     * 执行所有可以执行的反馈，在反馈线程上调用。
+     *
+     * @return 还有反馈在等待正在播放的反馈结束时，返回最多还要等多久，调用方到时再调用一次；
+     *         播放结束的回调也会触发下一次调用。没有等待的反馈时返回-1。
+     */
+    long drain() {
+        while (renderNext()) {
+            // 继续取下一条。
+        }
+        return mQueue.size() > 0 ? mScheduler.getRemainingNanos(System.nanoTime()) : -1;
+    }
+
+    /** 反馈被打断：丢弃还没执行的反馈，输出已经停止. */
+    void interrupt() {
+        mQueue.clear();
+        mScheduler.reset();
+        mStats.recordInterrupt();
+    }
+
+    FeedbackQueue getQueue() {
+        return mQueue;
+    }
+
+    FeedbackScheduler getScheduler() {
+        return mScheduler;
+    }
+
+    FeedbackStats getStats() {
+        return mStats;
+    }
+}
@@ -0,0 +1,245 @@
+package liup.code.learnandroid.accessibility;
+
+import java.util.Arrays;
+
+/**
+ * @title 反馈配置
+ * @desc .  事件类型和设备状态key到提示音资源和振动模式的不可变查找表，以及服务关注的应用包名和事件通知间隔。
+ *          由{@link #of}从一张声明式的条目表生成，ClockBackService使用的配置见{@link FeedbackProfileLoader}。
+ *
+ *          key都是单个二进制位（AccessibilityEvent.TYPE_*和设备状态的INDEX_*），按位序号直接索引数组，
+ *          设备状态占用事件类型没有用到的高位，两者互不重叠，同一个配置里可以同时出现。
+ *          一次查找只是一次numberOfTrailingZeros和一次数组访问，既不装箱也不二分查找。
+ *          创建后不再修改，可以在任何线程上读取。
+ */
+final class FeedbackProfile {
+
+    /** 槽的数量，int的每一位一个槽. */
+    static final int SLOT_COUNT = Integer.SIZE;
+
+    //设备状态的key。AccessibilityEvent的事件类型只用到0x04000000，设备状态从第27位开始。
+
+    /**  打开屏幕广播的关键字. */
+    static final int INDEX_SCREEN_ON = 0x08000000;
+
+    /**  关闭屏幕广播的关键字. */
+    static final int INDEX_SCREEN_OFF = 0x10000000;
+
+    /** 正常铃声模式key. */
+    static final int INDEX_RINGER_NORMAL = 0x20000000;
+
+    /** 振动铃声模式key. */
+    static final int INDEX_RINGER_VIBRATE = 0x40000000;
+
+    /** 无声铃声模式key. */
+    static final int INDEX_RINGER_SILENT = 0x80000000;
+
+    /** 所有设备状态key的按位或，没有任何事件类型落在这些位上. */
+    static final int DEVICE_STATE_KEYS = INDEX_SCREEN_ON | INDEX_SCREEN_OFF
+            | INDEX_RINGER_NORMAL | INDEX_RINGER_VIBRATE | INDEX_RINGER_SILENT;
+
+    /** 默认的事件通知间隔. */
+    static final int DEFAULT_NOTIFICATION_TIMEOUT_MILLIS = 80;
+
+    /** 默认的事件通知间隔下限. */
+    static final int DEFAULT_MIN_NOTIFICATION_TIMEOUT_MILLIS = 40;
+
+    /** 默认的事件通知间隔上限. */
+    static final int DEFAULT_MAX_NOTIFICATION_TIMEOUT_MILLIS = 320;
+
+    /** 没有任何反馈的配置，配置加载完成前使用. */
+    static final FeedbackProfile EMPTY = of();
+
+    /** 配置中的一行：一个key对应的提示音和振动模式. */
+    static final class Entry {
+
+        final int key;
+
+        /** 提示音的raw资源ID，没有时为0. */
+        final int soundResourceId;
+
+        /** 振动模式，没有时为null. */
+        final long[] vibrationPattern;
+
+        Entry(int key, int soundResourceId, long[] vibrationPattern) {
+            this.key = key;
+            this.soundResourceId = soundResourceId;
+            this.vibrationPattern = vibrationPattern;
+        }
+    }
+
+    /** 提示音的raw资源ID，按槽索引，没有时为0. */
+    private final int[] mSoundResourceIds = new int[SLOT_COUNT];
+
+    /** 振动模式，按槽索引，没有时为null. */
+    private final long[][] mVibrationPatterns = new long[SLOT_COUNT][];
+
+    /** 有提示音的key，按配置中的顺序. */
+    private final int[] mSoundKeys;
+
+    /** 有振动模式的key，按配置中的顺序. */
+    private final int[] mVibrationKeys;
+
+    /** 只接收这些应用的事件，为null时接收所有应用的事件. */
+    private final String[] mPackageNames;
+
+    private final int mMinNotificationTimeoutMillis;
+
+    private final int mNotificationTimeoutMillis;
+
+    private final int mMaxNotificationTimeoutMillis;
+
+    private FeedbackProfile(String[] packageNames, int minNotificationTimeoutMillis,
+                            int notificationTimeoutMillis, int maxNotificationTimeoutMillis,
+                            Entry[] entries) {
+        if (minNotificationTimeoutMillis <= 0
+                || notificationTimeoutMillis < minNotificationTimeoutMillis
+                || maxNotificationTimeoutMillis < notificationTimeoutMillis) {
+            throw new IllegalArgumentException("Bad notification timeouts "
+                    + minNotificationTimeoutMillis + " <= " + notificationTimeoutMillis + " <= "
+                    + maxNotificationTimeoutMillis);
+        }
+        mPackageNames = packageNames != null ? packageNames.clone() : null;
+        mMinNotificationTimeoutMillis = minNotificationTimeoutMillis;
+        mNotificationTimeoutMillis = notificationTimeoutMillis;
+        mMaxNotificationTimeoutMillis = maxNotificationTimeoutMillis;
+        int soundCount = 0;
+        int vibrationCount = 0;
+        int seen = 0;
+        for (Entry entry : entries) {
+            int slot = slotOf(entry.key);
+            if (slot < 0) {
+                throw new IllegalArgumentException("Key is not a single bit: 0x"
+                        + Integer.toHexString(entry.key));
+            }
+            if ((seen & entry.key) != 0) {
+                throw new IllegalArgumentException("Duplicate key: 0x"
+                        + Integer.toHexString(entry.key));
+            }
+            seen |= entry.key;
+            if (entry.soundResourceId != 0) {
+                mSoundResourceIds[slot] = entry.soundResourceId;
+                soundCount++;
+            }
+            if (entry.vibrationPattern != null) {
+                mVibrationPatterns[slot] = entry.vibrationPattern;
+                vibrationCount++;
+            }
+        }
+        mSoundKeys = new int[soundCount];
+        mVibrationKeys = new int[vibrationCount];
+        soundCount = 0;
+        vibrationCount = 0;
+        for (Entry entry : entries) {
+            if (entry.soundResourceId != 0) {
+                mSoundKeys[soundCount++] = entry.key;
+            }
+            if (entry.vibrationPattern != null) {
+                mVibrationKeys[vibrationCount++] = entry.key;
+            }
+        }
+    }
+
+    /**
+     * 配置中的一行。
+     *
+     * @param key 事件类型或设备状态的key，必须是单个二进制位。
+     * @param soundResourceId 提示音的raw资源ID，没有提示音时为0。
+     * @param vibrationPattern 振动模式，格式同Vibrator.vibrate，省略时没有振动。
+     */
+    static Entry entry(int key, int soundResourceId, long... vibrationPattern) {
+        return new Entry(key, soundResourceId,
+                vibrationPattern.length == 0 ? null : vibrationPattern.clone());
+    }
+
+    /**
+     * 从条目表生成查找表，接收所有应用的事件，使用默认的通知间隔。
+     *
+     * @throws IllegalArgumentException key不是单个二进制位或重复时抛出。
+     */
+    static FeedbackProfile of(Entry... entries) {
+        return new FeedbackProfile(null, DEFAULT_MIN_NOTIFICATION_TIMEOUT_MILLIS,
+                DEFAULT_NOTIFICATION_TIMEOUT_MILLIS, DEFAULT_MAX_NOTIFICATION_TIMEOUT_MILLIS,
+                entries);
+    }
+
+    /**
+     * 从条目表生成查找表。
+     *
+     * @param packageNames 只接收这些应用的事件，为null时接收所有应用的事件。
+     * @param minNotificationTimeoutMillis 通知间隔的下限。
+     * @param notificationTimeoutMillis 初始的通知间隔。
+     * @param maxNotificationTimeoutMillis 通知间隔的上限。
+     * @throws IllegalArgumentException key不是单个二进制位或重复，或者通知间隔不合理时抛出。
+     */
+    static FeedbackProfile of(String[] packageNames, int minNotificationTimeoutMillis,
+                              int notificationTimeoutMillis, int maxNotificationTimeoutMillis,
+                              Entry... entries) {
+        return new FeedbackProfile(packageNames, minNotificationTimeoutMillis,
+                notificationTimeoutMillis, maxNotificationTimeoutMillis, entries);
+    }
+
+    /**
+     * @param key 事件类型或设备状态的key。
+     * @return key对应的槽，key不是单个二进制位时返回-1。
+     */
+    static int slotOf(int key) {
+        int slot = Integer.numberOfTrailingZeros(key);
+        // key为0时slot为32，1 << 32等于1，同样返回-1。
+        return key == 1 << slot ? slot : -1;
+    }
+
+    /**
+     * @return key对应的提示音raw资源ID，没有时返回0。
+     */
+    int getSoundResourceId(int key) {
+        int slot = Integer.numberOfTrailingZeros(key);
+        return key == 1 << slot ? mSoundResourceIds[slot] : 0;
+    }
+
+    /**
+     * @return key对应的振动模式，没有时返回null。返回的数组是共享的，不要修改。
+     */
+    long[] getVibrationPattern(int key) {
+        int slot = Integer.numberOfTrailingZeros(key);
+        return key == 1 << slot ? mVibrationPatterns[slot] : null;
+    }
+
+    /** 有提示音的key，返回副本. */
+    int[] getSoundKeys() {
+        return mSoundKeys.clone();
+    }
+
+    /** 有振动模式的key，返回副本. */
+    int[] getVibrationKeys() {
+        return mVibrationKeys.clone();
+    }
+
+    /** 只接收这些应用的事件，为null时接收所有应用的事件. 返回的数组是共享的，不要修改. */
+    String[] getPackageNames() {
+        return mPackageNames;
+    }
+
+    /** 通知间隔的下限. */
+    int getMinNotificationTimeoutMillis() {
+        return mMinNotificationTimeoutMillis;
+    }
+
+    /** 初始的通知间隔. */
+    int getNotificationTimeoutMillis() {
+        return mNotificationTimeoutMillis;
+    }
+
+    /** 通知间隔的上限. */
+    int getMaxNotificationTimeoutMillis() {
+        return mMaxNotificationTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "FeedbackProfile{packages=" + Arrays.toString(mPackageNames)
+                + ", notificationTimeout=" + mMinNotificationTimeoutMillis + ".."
+                + mNotificationTimeoutMillis + ".." + mMaxNotificationTimeoutMillis
+                + "ms, sounds=" + mSoundKeys.length + ", vibrations=" + mVibrationKeys.length + "}";
+    }
+}
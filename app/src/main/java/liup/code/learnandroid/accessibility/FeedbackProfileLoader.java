@@ -0,0 +1,196 @@
+package liup.code.learnandroid.accessibility;
+
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.view.accessibility.AccessibilityEvent;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @title 从res/xml加载反馈配置
+ * @desc .  配置的格式：
+ *          <pre>{@code
+ *          <feedback-profile minNotificationTimeout="40" notificationTimeout="80"
+ *                  maxNotificationTimeout="320">
+ *              <package name="com.android.deskclock" />
+ *              <feedback key="typeViewClicked" sound="@raw/sound_view_clicked" vibration="0,100" />
+ *              <feedback key="screenOn" sound="@raw/sound_screen_on" />
+ *          </feedback-profile>
+ *          }</pre>
+ *          key是事件类型（与android:accessibilityEventTypes的写法相同）或设备状态的名字，
+ *          两者的值互不重叠，可以在同一个配置里任意组合。
+ *          sound和vibration都可以省略，没有package时接收所有应用的事件。
+ *
+ *          解析比较慢，不要在主线程上调用{@link #load}。解析结果按资源ID缓存在进程里，
+ *          服务重新绑定时直接使用，不再解析。
+ */
+final class FeedbackProfileLoader {
+
+    private static final String TAG_PROFILE = "feedback-profile";
+
+    private static final String TAG_PACKAGE = "package";
+
+    private static final String TAG_FEEDBACK = "feedback";
+
+    /** 配置中key的名字. */
+    private static final String[] KEY_NAMES = {
+            "typeViewClicked", "typeViewLongClicked", "typeViewSelected", "typeViewFocused",
+            "typeViewTextChanged", "typeWindowStateChanged", "typeNotificationStateChanged",
+            "typeViewHoverEnter", "typeWindowContentChanged", "typeViewScrolled",
+            "typeAnnouncement",
+            "screenOn", "screenOff", "ringerNormal", "ringerVibrate", "ringerSilent"
+    };
+
+    /** 与{@link #KEY_NAMES}一一对应的key. */
+    private static final int[] KEYS = {
+            AccessibilityEvent.TYPE_VIEW_CLICKED, AccessibilityEvent.TYPE_VIEW_LONG_CLICKED,
+            AccessibilityEvent.TYPE_VIEW_SELECTED, AccessibilityEvent.TYPE_VIEW_FOCUSED,
+            AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED, AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED,
+            AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED,
+            AccessibilityEvent.TYPE_VIEW_HOVER_ENTER, AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED,
+            AccessibilityEvent.TYPE_VIEW_SCROLLED,
+            AccessibilityEvent.TYPE_ANNOUNCEMENT,
+            FeedbackProfile.INDEX_SCREEN_ON, FeedbackProfile.INDEX_SCREEN_OFF,
+            FeedbackProfile.INDEX_RINGER_NORMAL, FeedbackProfile.INDEX_RINGER_VIBRATE,
+            FeedbackProfile.INDEX_RINGER_SILENT
+    };
+
+    /** 最近加载的配置及其资源ID，由类锁保护. */
+    private static FeedbackProfile sCachedProfile;
+
+    private static int sCachedResourceId;
+
+    private FeedbackProfileLoader() {
+    }
+
+    /**
+     * @param resourceId 配置的xml资源ID。
+     * @return 已经加载过的配置，还没有加载时返回null。
+     */
+    static synchronized FeedbackProfile getCached(int resourceId) {
+        return resourceId == sCachedResourceId ? sCachedProfile : null;
+    }
+
+    /**
+     * 加载配置，已经加载过时直接返回缓存的配置。在后台线程上调用。
+     *
+     * @param resources 读取配置和其中引用的资源。
+     * @param resourceId 配置的xml资源ID。
+     * @throws XmlPullParserException 配置格式不对时抛出。
+     */
+    static FeedbackProfile load(Resources resources, int resourceId)
+            throws IOException, XmlPullParserException {
+        FeedbackProfile profile = getCached(resourceId);
+        if (profile != null) {
+            return profile;
+        }
+        XmlResourceParser parser = resources.getXml(resourceId);
+        try {
+            profile = parse(parser);
+        } finally {
+            parser.close();
+        }
+        synchronized (FeedbackProfileLoader.class) {
+            sCachedProfile = profile;
+            sCachedResourceId = resourceId;
+        }
+        return profile;
+    }
+
+    private static FeedbackProfile parse(XmlResourceParser parser)
+            throws IOException, XmlPullParserException {
+        int type;
+        while ((type = parser.next()) != XmlPullParser.START_TAG
+                && type != XmlPullParser.END_DOCUMENT) {
+            // 跳到根元素。
+        }
+        if (type != XmlPullParser.START_TAG || !TAG_PROFILE.equals(parser.getName())) {
+            throw new XmlPullParserException("Expected <" + TAG_PROFILE + ">", parser, null);
+        }
+        int minTimeout = parser.getAttributeIntValue(null, "minNotificationTimeout",
+                FeedbackProfile.DEFAULT_MIN_NOTIFICATION_TIMEOUT_MILLIS);
+        int timeout = parser.getAttributeIntValue(null, "notificationTimeout",
+                FeedbackProfile.DEFAULT_NOTIFICATION_TIMEOUT_MILLIS);
+        int maxTimeout = parser.getAttributeIntValue(null, "maxNotificationTimeout",
+                FeedbackProfile.DEFAULT_MAX_NOTIFICATION_TIMEOUT_MILLIS);
+
+        List<String> packageNames = new ArrayList<String>();
+        List<FeedbackProfile.Entry> entries = new ArrayList<FeedbackProfile.Entry>();
+        int depth = parser.getDepth();
+        while ((type = parser.next()) != XmlPullParser.END_DOCUMENT
+                && (type != XmlPullParser.END_TAG || parser.getDepth() > depth)) {
+            if (type != XmlPullParser.START_TAG) {
+                continue;
+            }
+            String name = parser.getName();
+            if (TAG_PACKAGE.equals(name)) {
+                packageNames.add(requireAttribute(parser, "name"));
+            } else if (TAG_FEEDBACK.equals(name)) {
+                try {
+                    int key = keyOf(requireAttribute(parser, "key"));
+                    int soundResourceId = parser.getAttributeResourceValue(null, "sound", 0);
+                    String vibration = parser.getAttributeValue(null, "vibration");
+                    entries.add(FeedbackProfile.entry(key, soundResourceId,
+                            vibration != null ? parsePattern(vibration) : new long[0]));
+                } catch (IllegalArgumentException e) {
+                    throw new XmlPullParserException(e.getMessage(), parser, e);
+                }
+            } else {
+                throw new XmlPullParserException("Unknown element <" + name + ">", parser, null);
+            }
+        }
+        try {
+            return FeedbackProfile.of(
+                    packageNames.isEmpty() ? null : packageNames.toArray(new String[0]),
+                    minTimeout, timeout, maxTimeout,
+                    entries.toArray(new FeedbackProfile.Entry[entries.size()]));
+        } catch (IllegalArgumentException e) {
+            throw new XmlPullParserException(e.getMessage(), parser, e);
+        }
+    }
+
+    private static String requireAttribute(XmlPullParser parser, String name)
+            throws XmlPullParserException {
+        String value = parser.getAttributeValue(null, name);
+        if (value == null) {
+            throw new XmlPullParserException("Missing attribute " + name, parser, null);
+        }
+        return value;
+    }
+
+    /**
+     * @param name 事件类型或设备状态的名字。
+     * @return 对应的key。
+     * @throws IllegalArgumentException 未知的名字。
+     */
+    static int keyOf(String name) {
+        for (int i = 0; i < KEY_NAMES.length; i++) {
+            if (KEY_NAMES[i].equals(name)) {
+                return KEYS[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown feedback key " + name);
+    }
+
+    /**
+     * @param pattern 逗号分隔的毫秒数，格式同Vibrator.vibrate：先等待，再交替振动和停止。
+     * @return 振动模式。
+     * @throws IllegalArgumentException 格式不对或有负数。
+     */
+    static long[] parsePattern(String pattern) {
+        String[] parts = pattern.split(",");
+        long[] timings = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            timings[i] = Long.parseLong(parts[i].trim());
+            if (timings[i] < 0) {
+                throw new IllegalArgumentException("Negative timing in pattern " + pattern);
+            }
+        }
+        return timings;
+    }
+}
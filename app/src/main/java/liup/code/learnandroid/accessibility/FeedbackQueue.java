@@ -0,0 +1,276 @@
+package liup.code.learnandroid.accessibility;
+
+/**
+ * @title 反馈合并队列
+ * @desc .  放在反馈Handler前面的有界队列。同一种反馈（语音、耳机、振动）同一来源（事件类型或设备状态）
+ *          尚未执行时，新的反馈直接替换旧的，因为旧的反馈马上就会被新的以打断模式取消；
+ *          队列满时丢弃优先级最低的反馈中最旧的一条。
+ *
+ *          每条反馈带有优先级和截止时间。取出时先丢弃已经过期的反馈，再取优先级最高的，
+ *          同优先级按加入的顺序；优先级低于调用方给出的下限时留在队列里等待。
+ *
+ *          队列中的请求对象和话语缓冲区预先分配并循环使用，入队和出队时只复制字符，
+ *          缓冲区容量稳定后不再分配内存。
+ */
+class FeedbackQueue {
+
+    /** 话语缓冲区的初始容量，足够容纳时钟应用的绝大多数话语. */
+    private static final int INITIAL_TEXT_CAPACITY = 128;
+
+    /** 一条待执行的反馈. */
+    static final class Request {
+        /** 反馈种类，即Handler的消息类型. */
+        int what;
+
+        /** 反馈来源：事件类型或设备状态的key. */
+        int key;
+
+        /** 要说的话，没有时为空. */
+        final StringBuilder text = new StringBuilder(INITIAL_TEXT_CAPACITY);
+
+        /** 加入队列的时间（System.nanoTime），用于统计反馈延迟. */
+        long enqueueTimeNanos;
+
+        /** 优先级，数值越大越优先. */
+        int priority;
+
+        /** 过了这个时间还没执行就丢弃. */
+        long deadlineNanos = Long.MAX_VALUE;
+
+        void set(int what, int key, CharSequence text, long enqueueTimeNanos) {
+            set(what, key, text, enqueueTimeNanos, 0, Long.MAX_VALUE);
+        }
+
+        void set(int what, int key, CharSequence text, long enqueueTimeNanos, int priority,
+                 long deadlineNanos) {
+            this.what = what;
+            this.key = key;
+            this.enqueueTimeNanos = enqueueTimeNanos;
+            this.priority = priority;
+            this.deadlineNanos = deadlineNanos;
+            this.text.setLength(0);
+            if (text != null) {
+                this.text.append(text);
+            }
+        }
+    }
+
+    /** 等待执行的反馈，按加入的顺序排在前mSize个位置，移除时后面的前移. */
+    private final Request[] mRequests;
+
+    private int mSize;
+
+    /** 是否已经通知反馈线程来取反馈. */
+    private boolean mDrainScheduled;
+
+    private long mOfferedCount;
+
+    private long mCoalescedCount;
+
+    private long mOverflowCount;
+
+    private long mClearedCount;
+
+    private long mExpiredCount;
+
+    private long mDeliveredCount;
+
+    /** 队列深度的最高值. */
+    private int mMaxSize;
+
+    /** 加入反馈后队列深度的分布，下标为深度. */
+    private final long[] mDepthCounts;
+
+    /**
+     * @param capacity 最多同时等待执行的反馈数量。
+     */
+    FeedbackQueue(int capacity) {
+        mRequests = new Request[capacity];
+        mDepthCounts = new long[capacity + 1];
+        for (int i = 0; i < capacity; i++) {
+            mRequests[i] = new Request();
+        }
+    }
+
+    /**
+     * 加入一条反馈，优先级为0，不会过期。
+     *
+     * @param what 反馈种类。
+     * @param key 反馈来源。
+     * @param text 要说的话，会被复制；没有时为null。
+     * @return 需要通知反馈线程来取反馈时返回true。
+     */
+    boolean offer(int what, int key, CharSequence text) {
+        return offer(what, key, text, 0, System.nanoTime(), Long.MAX_VALUE);
+    }
+
+    /**
+     * 加入一条反馈。
+     *
+     * @param what 反馈种类。
+     * @param key 反馈来源。
+     * @param text 要说的话，会被复制；没有时为null。
+     * @param priority 优先级，数值越大越优先。
+     * @param nowNanos 加入的时间。
+     * @param deadlineNanos 过了这个时间还没执行就丢弃。
+     * @return 需要通知反馈线程来取反馈时返回true。
+     */
+    synchronized boolean offer(int what, int key, CharSequence text, int priority, long nowNanos,
+                               long deadlineNanos) {
+        mOfferedCount++;
+
+        // 同种同来源的反馈还在等待：用新的替换，保留原来的位置。
+        for (int i = 0; i < mSize; i++) {
+            Request request = mRequests[i];
+            if (request.what == what && request.key == key) {
+                request.set(what, key, text, nowNanos, priority, deadlineNanos);
+                mCoalescedCount++;
+                return false;
+            }
+        }
+
+        if (mSize == mRequests.length) {
+            // 队列已满，丢弃优先级最低的反馈中最旧的一条；新的反馈优先级更低时丢弃新的。
+            int victim = 0;
+            for (int i = 1; i < mSize; i++) {
+                if (mRequests[i].priority < mRequests[victim].priority) {
+                    victim = i;
+                }
+            }
+            mOverflowCount++;
+            if (mRequests[victim].priority > priority) {
+                return false;
+            }
+            remove(victim);
+        }
+        mRequests[mSize].set(what, key, text, nowNanos, priority, deadlineNanos);
+        mSize++;
+        mDepthCounts[mSize]++;
+        if (mSize > mMaxSize) {
+            mMaxSize = mSize;
+        }
+
+        if (mDrainScheduled) {
+            return false;
+        }
+        mDrainScheduled = true;
+        return true;
+    }
+
+    /**
+     * 取出最旧的一条反馈。在反馈线程上调用，直到返回false。
+     *
+     * @param out 用于接收反馈内容。
+     * @return 队列为空时返回false，之后的offer会重新通知反馈线程。
+     */
+    boolean poll(Request out) {
+        return poll(out, System.nanoTime(), Integer.MIN_VALUE);
+    }
+
+    /**
+     * 丢弃过期的反馈，取出优先级最高的一条。在反馈线程上调用，直到返回false。
+     *
+     * @param out 用于接收反馈内容。
+     * @param nowNanos 当前时间。
+     * @param minPriority 只取优先级不低于它的反馈，其余的留在队列里。
+     * @return 没有可取的反馈时返回false，之后的offer会重新通知反馈线程。
+     */
+    synchronized boolean poll(Request out, long nowNanos, int minPriority) {
+        for (int i = mSize - 1; i >= 0; i--) {
+            if (mRequests[i].deadlineNanos < nowNanos) {
+                remove(i);
+                mExpiredCount++;
+            }
+        }
+        int best = -1;
+        for (int i = 0; i < mSize; i++) {
+            if (best < 0 || mRequests[i].priority > mRequests[best].priority) {
+                best = i;
+            }
+        }
+        if (best < 0 || mRequests[best].priority < minPriority) {
+            mDrainScheduled = false;
+            return false;
+        }
+        Request request = mRequests[best];
+        out.set(request.what, request.key, request.text, request.enqueueTimeNanos,
+                request.priority, request.deadlineNanos);
+        remove(best);
+        mDeliveredCount++;
+        return true;
+    }
+
+    /** 移除第index条，后面的前移，移除的对象放到末尾复用. */
+    private void remove(int index) {
+        Request removed = mRequests[index];
+        System.arraycopy(mRequests, index + 1, mRequests, index, mSize - index - 1);
+        mSize--;
+        mRequests[mSize] = removed;
+    }
+
+    /** 丢弃所有等待执行的反馈，例如反馈被打断时. */
+    synchronized void clear() {
+        mClearedCount += mSize;
+        mSize = 0;
+    }
+
+    /** 当前等待执行的反馈数量. */
+    synchronized int size() {
+        return mSize;
+    }
+
+    /** 队列深度的最高值. */
+    synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /** 每次加入新反馈后的队列深度分布，形如"[1:20, 2:3]". */
+    synchronized String getDepthHistogram() {
+        StringBuilder histogram = new StringBuilder("[");
+        for (int depth = 1; depth < mDepthCounts.length; depth++) {
+            if (mDepthCounts[depth] != 0) {
+                if (histogram.length() > 1) {
+                    histogram.append(", ");
+                }
+                histogram.append(depth).append(':').append(mDepthCounts[depth]);
+            }
+        }
+        return histogram.append(']').toString();
+    }
+
+    /** 因被打断而丢弃的反馈数量. */
+    synchronized long getClearedCount() {
+        return mClearedCount;
+    }
+
+    /** 加入过的反馈数量. */
+    synchronized long getOfferedCount() {
+        return mOfferedCount;
+    }
+
+    /** 交给反馈线程执行的反馈数量. */
+    synchronized long getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    /** 过了截止时间还没执行而丢弃的反馈数量. */
+    synchronized long getExpiredCount() {
+        return mExpiredCount;
+    }
+
+    /** 被更新的同类反馈替换、因队列满、过期或被打断而丢弃的反馈数量. */
+    synchronized long getDroppedCount() {
+        return mCoalescedCount + mOverflowCount + mExpiredCount + mClearedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FeedbackQueue{offered=" + mOfferedCount
+                + ", delivered=" + mDeliveredCount
+                + ", coalesced=" + mCoalescedCount
+                + ", overflow=" + mOverflowCount
+                + ", expired=" + mExpiredCount
+                + ", cleared=" + mClearedCount
+                + ", pending=" + mSize + "}";
+    }
+}
@@ -0,0 +1,203 @@
+package liup.code.learnandroid.accessibility;
+
+import android.view.accessibility.AccessibilityEvent;
+
+/**
+ * @title 按优先级安排反馈
+ * @desc .  以前每条语音和提示音都用打断模式，一次无关紧要的悬停就能打断窗口切换的播报或铃声模式提示。
+ *          这里把反馈按来源分成三个优先级，每级有自己的截止时间：
+ *          <ul>
+ *          <li>高：窗口切换、通知、公告，以及屏幕和铃声模式等设备状态；</li>
+ *          <li>中：点击、长按、选中、文字变化；</li>
+ *          <li>低：焦点和悬停，这类反馈很快就过时了。</li>
+ *          </ul>
+ *          正在播放的反馈只能被更高优先级的反馈打断；同一优先级的新反馈可以替换旧的，
+ *          但高优先级的播报之间不互相打断，后来的等前一条播完。等待中过了截止时间的反馈直接丢弃，
+ *          不会再说出来。
+ *
+ *          Renderer开始一段需要时间的播放（语音、振动）时调用{@link #startPlayback}，
+ *          播放结束时调用{@link #onPlaybackDone}。不调用的反馈（例如提示音）不占用输出。
+ *          播放结束的回调来自TTS的线程，所以方法都加了锁。
+ */
+final class FeedbackScheduler {
+
+    static final int PRIORITY_LOW = 0;
+
+    static final int PRIORITY_NORMAL = 1;
+
+    static final int PRIORITY_HIGH = 2;
+
+    static final int PRIORITY_COUNT = 3;
+
+    /** 各优先级的反馈等待执行的最长时间，按优先级索引. */
+    static final long[] DEADLINE_MILLIS = {300, 1500, 5000};
+
+    private static final String[] PRIORITY_NAMES = {"low", "normal", "high"};
+
+    /** 高优先级的事件类型，设备状态的key另外判断. */
+    private static final int HIGH_PRIORITY_EVENT_TYPES =
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
+            | AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED
+            | AccessibilityEvent.TYPE_ANNOUNCEMENT;
+
+    /** 中优先级的事件类型，其余都是低优先级. */
+    private static final int NORMAL_PRIORITY_EVENT_TYPES = AccessibilityEvent.TYPE_VIEW_CLICKED
+            | AccessibilityEvent.TYPE_VIEW_LONG_CLICKED
+            | AccessibilityEvent.TYPE_VIEW_SELECTED
+            | AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED;
+
+    /** 为false时所有反馈同一优先级、不过期、随时可以打断，即以前的行为，用于对比. */
+    private final boolean mPrioritized;
+
+    /** Renderer正在执行的反馈的优先级. */
+    private int mRenderingPriority;
+
+    private boolean mPlaying;
+
+    private int mPlayingPriority;
+
+    private long mPlaybackEndNanos;
+
+    /** 每次开始播放加一，用于忽略过期的播放结束回调. */
+    private long mPlaybackToken;
+
+    /** 按被打断的播放的优先级计数. */
+    private final long[] mPreemptedCounts = new long[PRIORITY_COUNT];
+
+    /** 按播放完的优先级计数. */
+    private final long[] mCompletedCounts = new long[PRIORITY_COUNT];
+
+    private FeedbackScheduler(boolean prioritized) {
+        mPrioritized = prioritized;
+    }
+
+    /** 按优先级安排反馈. */
+    static FeedbackScheduler prioritized() {
+        return new FeedbackScheduler(true);
+    }
+
+    /** 每条反馈都打断正在播放的反馈，没有截止时间. */
+    static FeedbackScheduler interruptAll() {
+        return new FeedbackScheduler(false);
+    }
+
+    /**
+     * @param key 事件类型或设备状态的key。
+     * @return key的优先级。
+     */
+    static int classify(int key) {
+        // 设备状态的key在事件类型用不到的高位上，先按自己的命名空间判断。
+        if ((FeedbackProfile.DEVICE_STATE_KEYS & key) != 0) {
+            return PRIORITY_HIGH;
+        }
+        if ((HIGH_PRIORITY_EVENT_TYPES & key) != 0) {
+            return PRIORITY_HIGH;
+        }
+        if ((NORMAL_PRIORITY_EVENT_TYPES & key) != 0) {
+            return PRIORITY_NORMAL;
+        }
+        return PRIORITY_LOW;
+    }
+
+    /** 这个调度器给key的优先级. */
+    int priorityOf(int key) {
+        return mPrioritized ? classify(key) : PRIORITY_NORMAL;
+    }
+
+    /**
+     * @param priority 反馈的优先级。
+     * @param enqueueTimeNanos 反馈加入队列的时间。
+     * @return 反馈的截止时间。
+     */
+    long deadlineOf(int priority, long enqueueTimeNanos) {
+        return mPrioritized ? enqueueTimeNanos + DEADLINE_MILLIS[priority] * 1000000L
+                : Long.MAX_VALUE;
+    }
+
+    /**
+     * @param nowNanos 当前时间。
+     * @return 现在可以开始的反馈的最低优先级，大于{@link #PRIORITY_HIGH}时都要等待。
+     */
+    synchronized int getMinPriority(long nowNanos) {
+        if (!mPrioritized || !isPlaying(nowNanos)) {
+            return PRIORITY_LOW;
+        }
+        return mPlayingPriority == PRIORITY_HIGH ? PRIORITY_COUNT : mPlayingPriority;
+    }
+
+    /**
+     * @param nowNanos 当前时间。
+     * @return 正在播放的反馈预计还要多久结束，没有在播放时返回0。
+     */
+    synchronized long getRemainingNanos(long nowNanos) {
+        return isPlaying(nowNanos) ? mPlaybackEndNanos - nowNanos : 0;
+    }
+
+    /** 流水线把一条反馈交给Renderer之前调用. */
+    synchronized void onRender(int priority) {
+        mRenderingPriority = priority;
+    }
+
+    /**
+     * 正在执行的反馈开始播放，会打断之前的播放。
+     *
+     * @param nowNanos 当前时间。
+     * @param maxDurationNanos 播放最长的时间，过了这个时间即使没有收到结束回调也认为已经结束。
+     * @return 这次播放的标识，传给{@link #onPlaybackDone}。
+     */
+    synchronized long startPlayback(long nowNanos, long maxDurationNanos) {
+        if (isPlaying(nowNanos)) {
+            mPreemptedCounts[mPlayingPriority]++;
+        }
+        mPlaying = true;
+        mPlayingPriority = mRenderingPriority;
+        mPlaybackEndNanos = nowNanos + maxDurationNanos;
+        return ++mPlaybackToken;
+    }
+
+    /**
+     * 播放结束。
+     *
+     * @param token {@link #startPlayback}返回的标识。
+     * @return 是当前的播放，等待的反馈现在可以开始时返回true；过期的回调返回false。
+     */
+    synchronized boolean onPlaybackDone(long token) {
+        if (!mPlaying || token != mPlaybackToken) {
+            return false;
+        }
+        mPlaying = false;
+        mCompletedCounts[mPlayingPriority]++;
+        return true;
+    }
+
+    /** 反馈被打断，输出已经停止. */
+    synchronized void reset() {
+        mPlaying = false;
+    }
+
+    /** 被打断的播放数量. */
+    synchronized long getPreemptedCount(int priority) {
+        return mPreemptedCounts[priority];
+    }
+
+    /** 播放完的数量. */
+    synchronized long getCompletedCount(int priority) {
+        return mCompletedCounts[priority];
+    }
+
+    private boolean isPlaying(long nowNanos) {
+        return mPlaying && nowNanos < mPlaybackEndNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("FeedbackScheduler{prioritized=")
+                .append(mPrioritized);
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            builder.append(", ").append(PRIORITY_NAMES[i]).append("=")
+                    .append(mCompletedCounts[i]).append(" completed/")
+                    .append(mPreemptedCounts[i]).append(" preempted");
+        }
+        return builder.append('}').toString();
+    }
+}
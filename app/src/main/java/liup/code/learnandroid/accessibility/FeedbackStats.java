@@ -0,0 +1,120 @@
+package liup.code.learnandroid.accessibility;
+
+import java.io.PrintWriter;
+
+/**
+ * @title 反馈统计
+ * @desc .  记录每条反馈从加入队列到真正调用TTS、MediaPlayer、SoundPool或振动器的延迟，按反馈来源（事件类型或设备状态）
+ *          和反馈种类（通道）分别统计成{@link LatencyHistogram}，另外统计被打断的次数。
+ *          延迟由执行反馈的一方在调用这些接口时记录：语音可能要等引擎就绪，振动要等合并窗口结束。
+ *          来源和种类都只有几十个，用线性查找的数组保存，记录时不分配内存（每个来源第一次出现时除外）。
+ */
+class FeedbackStats {
+
+    /** 反馈来源或种类的显示名称，dump时使用. */
+    interface Names {
+        String feedbackName(int what);
+
+        String keyName(int key);
+    }
+
+    /** 按int键保存直方图的小表. */
+    private static final class HistogramTable {
+
+        private int[] mKeys = new int[8];
+
+        private LatencyHistogram[] mHistograms = new LatencyHistogram[8];
+
+        private int mSize;
+
+        synchronized LatencyHistogram get(int key) {
+            for (int i = 0; i < mSize; i++) {
+                if (mKeys[i] == key) {
+                    return mHistograms[i];
+                }
+            }
+            if (mSize == mKeys.length) {
+                int[] keys = new int[mSize * 2];
+                LatencyHistogram[] histograms = new LatencyHistogram[mSize * 2];
+                System.arraycopy(mKeys, 0, keys, 0, mSize);
+                System.arraycopy(mHistograms, 0, histograms, 0, mSize);
+                mKeys = keys;
+                mHistograms = histograms;
+            }
+            mKeys[mSize] = key;
+            mHistograms[mSize] = new LatencyHistogram();
+            return mHistograms[mSize++];
+        }
+
+        synchronized void dump(PrintWriter writer, String prefix, boolean byFeedback,
+                               Names names) {
+            for (int i = 0; i < mSize; i++) {
+                String name = byFeedback ? names.feedbackName(mKeys[i]) : names.keyName(mKeys[i]);
+                writer.println(prefix + name + ": " + mHistograms[i]);
+            }
+        }
+    }
+
+    private final HistogramTable mByFeedback = new HistogramTable();
+
+    private final HistogramTable mByKey = new HistogramTable();
+
+    private final long mStartTimeNanos = System.nanoTime();
+
+    private long mInterruptCount;
+
+    /**
+     * 记录一条已交给输出接口的反馈，在反馈线程上调用。
+     *
+     * @param what 反馈种类。
+     * @param key 反馈来源。
+     * @param latencyNanos 从加入队列到调用输出接口的时间。
+     */
+    void record(int what, int key, long latencyNanos) {
+        mByFeedback.get(what).record(latencyNanos);
+        mByKey.get(key).record(latencyNanos);
+    }
+
+    /** 记录一次onInterrupt. */
+    synchronized void recordInterrupt() {
+        mInterruptCount++;
+    }
+
+    synchronized long getInterruptCount() {
+        return mInterruptCount;
+    }
+
+    /** 某种反馈的延迟直方图. */
+    LatencyHistogram getFeedbackLatency(int what) {
+        return mByFeedback.get(what);
+    }
+
+    /** 某个来源的延迟直方图. */
+    LatencyHistogram getKeyLatency(int key) {
+        return mByKey.get(key);
+    }
+
+    /**
+     * 输出所有统计。
+     *
+     * @param writer 输出。
+     * @param queue 反馈合并队列，输出它的深度和丢弃数量。
+     * @param names 反馈种类和来源的显示名称。
+     */
+    void dump(PrintWriter writer, FeedbackQueue queue, Names names) {
+        long elapsedMillis = Math.max(1, (System.nanoTime() - mStartTimeNanos) / 1000000);
+        long delivered = queue.getDeliveredCount();
+        writer.println("Feedback queue: " + queue);
+        writer.println("  depth: current=" + queue.size()
+                + " max=" + queue.getMaxSize()
+                + " histogram=" + queue.getDepthHistogram());
+        writer.println("  throughput: " + (delivered * 1000 / elapsedMillis) + "/s over "
+                + elapsedMillis + "ms");
+        writer.println("Interrupts: " + getInterruptCount()
+                + " (discarded " + queue.getClearedCount() + " pending)");
+        writer.println("Latency by feedback:");
+        mByFeedback.dump(writer, "  ", true, names);
+        writer.println("Latency by source:");
+        mByKey.dump(writer, "  ", false, names);
+    }
+}
@@ -0,0 +1,53 @@
+package liup.code.learnandroid.accessibility;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.support.annotation.Nullable;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import liup.code.learnandroid.R;
+
+/**
+ * @title ClockBack反馈统计的调试界面
+ * @desc . 显示{@link ClockBackService}的队列深度、吞吐量、打断次数和各类反馈的延迟分布，
+ *         内容与dumpsys的输出相同。
+ */
+public class FeedbackStatsActivity extends Activity {
+
+    private TextView mStatsView;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.feedback_stats);
+
+        mStatsView = (TextView) findViewById(R.id.stats);
+        Button refresh = (Button) findViewById(R.id.refresh);
+        refresh.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showStats();
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showStats();
+    }
+
+    private void showStats() {
+        StringWriter stats = new StringWriter();
+        if (ClockBackService.dumpConnectedService(new PrintWriter(stats))) {
+            mStatsView.setText(stats.toString());
+        } else {
+            mStatsView.setText(R.string.feedback_stats_not_connected);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package liup.code.learnandroid.accessibility;
+
+/**
+ * @title 合并振动模式
+ * @desc .  每次Vibrator.vibrate都会取消正在进行的振动，连续的事件让振动断断续续，还多了跨进程调用。
+ *          这里把一个短时间窗口内到达的振动模式按各自到达的时间叠加成一个波形：
+ *          任何一个模式在振动的时刻就振动，最后只调用一次vibrate。
+ *
+ *          振动段保存为有序、互不重叠的区间，加入时就地合并，只在区间数超过容量时扩容。
+ *          窗口内每个模式的来源和加入反馈队列的时间也记下来，真正调用vibrate时才记录它们的延迟。
+ *          在反馈线程上加入和取出，计数可以在任何线程上读取。
+ */
+final class HapticBatcher {
+
+    private final long mWindowMillis;
+
+    /** 振动段的开始和结束时间，相对窗口开始，单位毫秒，按开始时间排序. */
+    private long[] mStarts = new long[8];
+
+    private long[] mEnds = new long[8];
+
+    private int mIntervalCount;
+
+    /** 当前窗口内加入的模式数量. */
+    private int mPendingCount;
+
+    /** 当前窗口内每个模式的来源和加入反馈队列的时间. */
+    private int[] mPendingKeys = new int[4];
+
+    private long[] mPendingEnqueueNanos = new long[4];
+
+    private long mWindowStartNanos;
+
+    private long mRequestedCount;
+
+    private long mMergedCount;
+
+    private long mIssuedCount;
+
+    /**
+     * @param windowMillis 窗口长度，第一个模式到达后这么久调用{@link #flush}。
+     */
+    HapticBatcher(long windowMillis) {
+        mWindowMillis = windowMillis;
+    }
+
+    long getWindowMillis() {
+        return mWindowMillis;
+    }
+
+    /**
+     * 加入一个振动模式。
+     *
+     * @param pattern 格式同Vibrator.vibrate：先等待，再交替振动和停止。
+     * @param nowNanos 当前时间，决定这个模式在合并波形中的位置。
+     * @return 是窗口内的第一个模式，调用方应在{@link #getWindowMillis}后调用{@link #flush}时返回true。
+     */
+    boolean add(long[] pattern, long nowNanos) {
+        return add(pattern, 0, nowNanos, nowNanos);
+    }
+
+    /**
+     * 加入一个振动模式。
+     *
+     * @param pattern 格式同Vibrator.vibrate：先等待，再交替振动和停止。
+     * @param key 反馈来源，记录延迟时使用。
+     * @param enqueueTimeNanos 反馈加入队列的时间，记录延迟时使用。
+     * @param nowNanos 当前时间，决定这个模式在合并波形中的位置。
+     * @return 是窗口内的第一个模式，调用方应在{@link #getWindowMillis}后调用{@link #flush}时返回true。
+     */
+    synchronized boolean add(long[] pattern, int key, long enqueueTimeNanos, long nowNanos) {
+        if (mPendingCount == 0) {
+            mWindowStartNanos = nowNanos;
+        }
+        long time = (nowNanos - mWindowStartNanos) / 1000000;
+        for (int i = 0; i < pattern.length; i++) {
+            if ((i & 1) == 1 && pattern[i] > 0) {
+                addInterval(time, time + pattern[i]);
+            }
+            time += pattern[i];
+        }
+        if (mPendingCount == mPendingKeys.length) {
+            int[] keys = new int[mPendingCount * 2];
+            long[] enqueueNanos = new long[mPendingCount * 2];
+            System.arraycopy(mPendingKeys, 0, keys, 0, mPendingCount);
+            System.arraycopy(mPendingEnqueueNanos, 0, enqueueNanos, 0, mPendingCount);
+            mPendingKeys = keys;
+            mPendingEnqueueNanos = enqueueNanos;
+        }
+        mPendingKeys[mPendingCount] = key;
+        mPendingEnqueueNanos[mPendingCount] = enqueueTimeNanos;
+        mRequestedCount++;
+        mPendingCount++;
+        return mPendingCount == 1;
+    }
+
+    /**
+     * 取出合并后的波形，开始下一个窗口。
+     *
+     * @return 交给Vibrator.vibrate的模式；窗口内没有任何振动段时返回null。
+     */
+    long[] flush() {
+        return flush(null, 0, 0);
+    }
+
+    /**
+     * 取出合并后的波形，开始下一个窗口。有波形时，窗口内每个模式从加入反馈队列到现在的时间
+     * 记入统计，调用方应紧接着调用vibrate。
+     *
+     * @param stats 记录延迟，为null时不记录。
+     * @param what 反馈种类。
+     * @param nowNanos 当前时间。
+     * @return 交给Vibrator.vibrate的模式；窗口内没有任何振动段时返回null。
+     */
+    synchronized long[] flush(FeedbackStats stats, int what, long nowNanos) {
+        if (mPendingCount == 0) {
+            return null;
+        }
+        mMergedCount += mPendingCount - 1;
+        long[] pattern = null;
+        if (mIntervalCount > 0) {
+            pattern = new long[mIntervalCount * 2];
+            long time = 0;
+            for (int i = 0; i < mIntervalCount; i++) {
+                pattern[i * 2] = mStarts[i] - time;
+                pattern[i * 2 + 1] = mEnds[i] - mStarts[i];
+                time = mEnds[i];
+            }
+            mIssuedCount++;
+            if (stats != null) {
+                for (int i = 0; i < mPendingCount; i++) {
+                    stats.record(what, mPendingKeys[i], nowNanos - mPendingEnqueueNanos[i]);
+                }
+            }
+        }
+        mIntervalCount = 0;
+        mPendingCount = 0;
+        return pattern;
+    }
+
+    /** 振动被打断：丢弃窗口内还没发出的模式. */
+    synchronized void clear() {
+        mIntervalCount = 0;
+        mPendingCount = 0;
+    }
+
+    /** 合并成一个区间，吸收所有与它重叠或相接的区间. */
+    private void addInterval(long start, long end) {
+        int first = 0;
+        while (first < mIntervalCount && mEnds[first] < start) {
+            first++;
+        }
+        int last = first;
+        while (last < mIntervalCount && mStarts[last] <= end) {
+            start = Math.min(start, mStarts[last]);
+            end = Math.max(end, mEnds[last]);
+            last++;
+        }
+        int removed = last - first;
+        if (removed == 0 && mIntervalCount == mStarts.length) {
+            long[] starts = new long[mStarts.length * 2];
+            long[] ends = new long[mEnds.length * 2];
+            System.arraycopy(mStarts, 0, starts, 0, mIntervalCount);
+            System.arraycopy(mEnds, 0, ends, 0, mIntervalCount);
+            mStarts = starts;
+            mEnds = ends;
+        }
+        // 被吸收的区间换成一个新区间，后面的区间跟着移动。
+        int tail = mIntervalCount - last;
+        int target = first + 1;
+        System.arraycopy(mStarts, last, mStarts, target, tail);
+        System.arraycopy(mEnds, last, mEnds, target, tail);
+        mStarts[first] = start;
+        mEnds[first] = end;
+        mIntervalCount = target + tail;
+    }
+
+    /** 加入的振动模式数量. */
+    synchronized long getRequestedCount() {
+        return mRequestedCount;
+    }
+
+    /** 并入其它模式、没有单独调用振动器的模式数量. */
+    synchronized long getMergedCount() {
+        return mMergedCount;
+    }
+
+    /** 实际调用振动器的次数. */
+    synchronized long getIssuedCount() {
+        return mIssuedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "HapticBatcher{window=" + mWindowMillis + "ms, requested=" + mRequestedCount
+                + ", merged=" + mMergedCount + ", issued=" + mIssuedCount + "}";
+    }
+}
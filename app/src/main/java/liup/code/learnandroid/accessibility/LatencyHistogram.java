@@ -0,0 +1,104 @@
+package liup.code.learnandroid.accessibility;
+
+/**
+ * @title 延迟直方图
+ * @desc .  仿HdrHistogram的对数-线性分桶：以微秒为单位，每个2的幂区间再等分成16个桶，
+ *          相对误差不超过1/16，最大可记录约12天。桶数组预先分配，记录时不分配内存。
+ *          线程安全：反馈线程记录，dump线程读取。
+ */
+class LatencyHistogram {
+
+    /** 每个2的幂区间等分的桶数的位数. */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** 最大可记录的值的位数（微秒）. */
+    private static final int MAX_VALUE_BITS = 40;
+
+    private static final long MAX_VALUE_MICROS = (1L << MAX_VALUE_BITS) - 1;
+
+    private final long[] mCounts = new long[(MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT];
+
+    private long mTotalCount;
+
+    private long mTotalMicros;
+
+    private long mMaxMicros;
+
+    /**
+     * 记录一个延迟，负值按0记录。
+     *
+     * @param latencyNanos 延迟，单位纳秒。
+     */
+    synchronized void record(long latencyNanos) {
+        long micros = Math.min(Math.max(latencyNanos / 1000, 0), MAX_VALUE_MICROS);
+        mCounts[bucketIndex(micros)]++;
+        mTotalCount++;
+        mTotalMicros += micros;
+        if (micros > mMaxMicros) {
+            mMaxMicros = micros;
+        }
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (micros >> shift) - SUB_BUCKET_COUNT;
+    }
+
+    /** 桶中最大的值（微秒）. */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    synchronized long getCount() {
+        return mTotalCount;
+    }
+
+    /** 平均延迟，单位微秒. */
+    synchronized long getMeanMicros() {
+        return mTotalCount == 0 ? 0 : mTotalMicros / mTotalCount;
+    }
+
+    /** 最大延迟，单位微秒. */
+    synchronized long getMaxMicros() {
+        return mMaxMicros;
+    }
+
+    /**
+     * @param percentile 百分位，0到100。
+     * @return 不小于该百分位延迟的桶上界，单位微秒；没有记录时返回0。
+     */
+    synchronized long getValueAtPercentile(double percentile) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * mTotalCount));
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), mMaxMicros);
+            }
+        }
+        return mMaxMicros;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "count=" + mTotalCount
+                + " mean=" + getMeanMicros() + "us"
+                + " p50=" + getValueAtPercentile(50) + "us"
+                + " p90=" + getValueAtPercentile(90) + "us"
+                + " p99=" + getValueAtPercentile(99) + "us"
+                + " max=" + mMaxMicros + "us";
+    }
+}
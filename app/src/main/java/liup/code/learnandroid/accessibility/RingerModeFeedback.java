@@ -0,0 +1,98 @@
+package liup.code.learnandroid.accessibility;
+
+import android.accessibilityservice.AccessibilityServiceInfo;
+import android.media.AudioManager;
+import android.view.accessibility.AccessibilityEvent;
+
+/**
+ * @title 振铃模式到反馈通道的映射
+ * @desc .  铃声正常时说话，振动时播放耳机，静音时振动。每种模式选定一个{@link FeedbackChannel}，
+ *          并决定向系统声明接管哪些反馈类型；订阅的事件类型就是选中通道的事件类型，
+ *          这样系统不再把我们不会处理的事件跨进程发送过来。
+ */
+final class RingerModeFeedback {
+
+    /**
+     * 语音通道说出来的事件类型：用户的操作、窗口和通知的变化以及应用主动的通知。
+     * 内容变化、滚动、悬停离开等事件没有需要朗读的新信息，不订阅。
+     */
+    static final int SPOKEN_EVENT_TYPES = AccessibilityEvent.TYPE_VIEW_CLICKED
+            | AccessibilityEvent.TYPE_VIEW_LONG_CLICKED
+            | AccessibilityEvent.TYPE_VIEW_SELECTED
+            | AccessibilityEvent.TYPE_VIEW_FOCUSED
+            | AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED
+            | AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
+            | AccessibilityEvent.TYPE_NOTIFICATION_STATE_CHANGED
+            | AccessibilityEvent.TYPE_VIEW_HOVER_ENTER
+            | AccessibilityEvent.TYPE_ANNOUNCEMENT;
+
+    private final FeedbackChannel mSpokenChannel;
+
+    private final FeedbackChannel mAudibleChannel;
+
+    private final FeedbackChannel mHapticChannel;
+
+    RingerModeFeedback(FeedbackChannel spokenChannel, FeedbackChannel audibleChannel,
+                       FeedbackChannel hapticChannel) {
+        mSpokenChannel = spokenChannel;
+        mAudibleChannel = audibleChannel;
+        mHapticChannel = hapticChannel;
+    }
+
+    /**
+     * 从反馈表的key中取出事件类型。
+     *
+     * @param keys 反馈表的key，混有事件类型和设备状态的key。
+     * @param deviceStateKeys 所有设备状态key的按位或，这些值不算作事件类型。
+     * @return 事件类型的按位或。
+     */
+    static int eventTypesOf(int[] keys, int deviceStateKeys) {
+        int eventTypes = 0;
+        for (int key : keys) {
+            if ((key & deviceStateKeys) == 0) {
+                eventTypes |= key;
+            }
+        }
+        return eventTypes;
+    }
+
+    /**
+     * @param ringerMode AudioManager.RINGER_MODE_*。
+     * @return 这个模式下提供反馈的通道，未知的模式返回null。
+     */
+    FeedbackChannel channelFor(int ringerMode) {
+        switch (ringerMode) {
+            case AudioManager.RINGER_MODE_SILENT:
+                return mHapticChannel;
+            case AudioManager.RINGER_MODE_VIBRATE:
+                return mAudibleChannel;
+            case AudioManager.RINGER_MODE_NORMAL:
+                return mSpokenChannel;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 这个模式下向系统声明的反馈类型：包括自己提供的，以及要接管但不提供的，
+     * 声明后系统不再调用提供这些反馈的默认服务。
+     *
+     * @param ringerMode AudioManager.RINGER_MODE_*。
+     */
+    static int takeOverFeedbackTypes(int ringerMode) {
+        switch (ringerMode) {
+            case AudioManager.RINGER_MODE_SILENT:
+                // 只提供触觉反馈，接管口头和声音反馈，因此不提供此类反馈。
+                return AccessibilityServiceInfo.FEEDBACK_HAPTIC
+                        | AccessibilityServiceInfo.FEEDBACK_SPOKEN
+                        | AccessibilityServiceInfo.FEEDBACK_AUDIBLE;
+            case AudioManager.RINGER_MODE_VIBRATE:
+                // 只提供听觉反馈，接管口头反馈，以免提供口头反馈。
+                return AccessibilityServiceInfo.FEEDBACK_AUDIBLE
+                        | AccessibilityServiceInfo.FEEDBACK_SPOKEN;
+            default:
+                // 提供覆盖默认语音反馈的语音反馈。
+                return AccessibilityServiceInfo.FEEDBACK_SPOKEN;
+        }
+    }
+}
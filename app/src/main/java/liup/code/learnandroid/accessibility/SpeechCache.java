@@ -0,0 +1,264 @@
+package liup.code.learnandroid.accessibility;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @title 合成语音的磁盘缓存
+ * @desc .  时钟应用的话语（屏幕开关提示、闹钟标签、数字）反复出现，每次都重新合成很浪费。
+ *          这里把合成好的音频按(话语, 语言, 语速)保存成cache目录下的文件，命中时直接播放文件。
+ *
+ *          文件名是key的64位散列，按最近使用顺序淘汰，总大小不超过上限。
+ *          散列直接在复用的缓冲区上计算，最近用过的key字符串按散列保存在一个小数组里，
+ *          反复出现的话语查询缓存时不分配内存。
+ *          同一个key第二次未命中才合成，只出现一次的话语（例如当前时间）不占用缓存。
+ *          所有方法都是线程安全的：反馈线程查询和开始写入，TTS回调线程完成写入。
+ */
+class SpeechCache {
+
+    /** 正在写入的临时文件的后缀. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** 记住多少个只未命中过一次的key. */
+    private static final int MAX_SEEN_KEYS = 64;
+
+    /** 按散列保存的key字符串的槽数，必须是2的幂. */
+    private static final int KEY_SLOTS = 64;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File mDirectory;
+
+    private final long mMaxBytes;
+
+    /** key到缓存文件，按最近使用顺序排列，最久未用的在前. */
+    private final LinkedHashMap<String, File> mFiles = new LinkedHashMap<String, File>(16, 0.75f, true);
+
+    /** 只未命中过一次的key. */
+    private final LinkedHashMap<String, Boolean> mSeenKeys = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_SEEN_KEYS;
+        }
+    };
+
+    /** 正在合成的key. */
+    private final Set<String> mPendingKeys = new HashSet<String>();
+
+    /** 最近计算过的key的散列和字符串，按散列的低位直接映射. */
+    private final long[] mKeyHashes = new long[KEY_SLOTS];
+
+    private final String[] mKeys = new String[KEY_SLOTS];
+
+    private long mSizeBytes;
+
+    private long mHitCount;
+
+    private long mMissCount;
+
+    private long mEvictionCount;
+
+    /**
+     * 打开缓存目录，已有的缓存文件按最后修改时间恢复使用顺序，残留的临时文件被删除。
+     *
+     * @param directory 缓存目录，不存在时创建。
+     * @param maxBytes 缓存文件的总大小上限。
+     */
+    SpeechCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+        mDirectory.mkdirs();
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                return Long.compare(file1.lastModified(), file2.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            } else {
+                mFiles.put(file.getName(), file);
+                mSizeBytes += file.length();
+            }
+        }
+        trimToSize();
+    }
+
+    /**
+     * 计算缓存key，同时也用作文件名和TTS的utteranceId。
+     * 只读取text的字符，不复制；同一个key第二次计算时返回同一个字符串，不分配内存。
+     *
+     * @param text 话语，可以是复用的缓冲区。
+     * @param locale 合成语言。
+     * @param speechRate 语速。
+     * @return key的散列，16位十六进制。
+     */
+    synchronized String keyOf(CharSequence text, Locale locale, int speechRate) {
+        long hash = hashOf(text, locale, speechRate);
+        int slot = (int) hash & (KEY_SLOTS - 1);
+        String key = mKeys[slot];
+        if (key == null || mKeyHashes[slot] != hash) {
+            char[] digits = new char[16];
+            for (int i = digits.length - 1; i >= 0; i--) {
+                digits[i] = HEX_DIGITS[(int) (hash >>> ((15 - i) * 4)) & 0xf];
+            }
+            key = new String(digits);
+            mKeyHashes[slot] = hash;
+            mKeys[slot] = key;
+        }
+        return key;
+    }
+
+    /** (话语, 语言, 语速)的64位FNV-1a散列，再打散一遍让低位也均匀. */
+    static long hashOf(CharSequence text, Locale locale, int speechRate) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = hashChars(hash, text);
+        hash = hashChars(hash, locale.getLanguage());
+        hash = hashChars(hash, locale.getScript());
+        hash = hashChars(hash, locale.getCountry());
+        hash = hashChars(hash, locale.getVariant());
+        hash = (hash ^ speechRate) * FNV_PRIME;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /** 依次散列每个字符，最后散列长度，这样各段之间不会互相混淆. */
+    private static long hashChars(long hash, CharSequence chars) {
+        int length = chars.length();
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ chars.charAt(i)) * FNV_PRIME;
+        }
+        return (hash ^ length) * FNV_PRIME;
+    }
+
+    /**
+     * 查询缓存的音频。
+     *
+     * @param key {@link #keyOf}的返回值。
+     * @return 缓存文件，未命中时返回null。
+     */
+    synchronized File get(String key) {
+        File file = mFiles.get(key);
+        if (file == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        return file;
+    }
+
+    /**
+     * 未命中后决定是否合成这段话语。
+     *
+     * @param key {@link #keyOf}的返回值。
+     * @return 需要合成时返回写入用的临时文件，合成结束后调用{@link #commit}或{@link #abort}；
+     *         第一次未命中、已经缓存或正在合成时返回null。
+     */
+    synchronized File beginWrite(String key) {
+        if (mFiles.containsKey(key) || mPendingKeys.contains(key)) {
+            return null;
+        }
+        if (mSeenKeys.remove(key) == null) {
+            mSeenKeys.put(key, Boolean.TRUE);
+            return null;
+        }
+        mPendingKeys.add(key);
+        return tempFile(key);
+    }
+
+    /**
+     * 合成成功，把临时文件加入缓存并淘汰超出上限的文件。
+     */
+    synchronized void commit(String key) {
+        if (!mPendingKeys.remove(key)) {
+            return;
+        }
+        File temp = tempFile(key);
+        File file = new File(mDirectory, key);
+        if (temp.length() == 0 || !temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+        mFiles.put(key, file);
+        mSizeBytes += file.length();
+        trimToSize();
+    }
+
+    /**
+     * 合成失败或被打断，丢弃临时文件。
+     */
+    synchronized void abort(String key) {
+        if (mPendingKeys.remove(key)) {
+            tempFile(key).delete();
+        }
+    }
+
+    private File tempFile(String key) {
+        return new File(mDirectory, key + TEMP_SUFFIX);
+    }
+
+    private void trimToSize() {
+        Iterator<File> iterator = mFiles.values().iterator();
+        while (mSizeBytes > mMaxBytes && iterator.hasNext()) {
+            File file = iterator.next();
+            mSizeBytes -= file.length();
+            file.delete();
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    /** 缓存的话语数量. */
+    synchronized int size() {
+        return mFiles.size();
+    }
+
+    /** 缓存文件占用的字节数. */
+    synchronized long getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /** 按最近使用顺序返回缓存的key，最久未用的在前. */
+    synchronized List<String> getKeys() {
+        return new ArrayList<String>(mFiles.keySet());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SpeechCache{entries=" + mFiles.size()
+                + ", bytes=" + mSizeBytes + "/" + mMaxBytes
+                + ", hits=" + mHitCount
+                + ", misses=" + mMissCount
+                + ", evictions=" + mEvictionCount
+                + ", pending=" + mPendingKeys.size() + "}";
+    }
+}
@@ -0,0 +1,302 @@
+package liup.code.learnandroid.accessibility;
+
+/**
+ * @title 语音引擎的生命周期
+ * @desc .  TextToSpeech的创建是异步的，onInit之前不能说话。这个类记录引擎所处的阶段，
+ *          只决定什么时候创建、什么时候关闭、请求是立即执行还是先缓冲，不直接操作引擎，
+ *          因此可以在本地单元测试里驱动。
+ *
+ *          STOPPED --start--> STARTING --onReady--> READY --release--> STANDBY --宽限期--> STOPPED
+ *
+ *          启动期间的语音请求放进有界的缓冲区，超出时丢弃最旧的，引擎就绪后按顺序取出执行。
+ *          解绑后引擎先保持一段宽限期，这期间重新绑定直接使用，不再等待初始化。
+ *          同时记录初始化耗时和从启动到第一句话的耗时。所有方法都可以在任何线程上调用。
+ */
+final class SpeechEngineLifecycle {
+
+    /** 没有引擎. */
+    static final int STATE_STOPPED = 0;
+
+    /** 引擎已经创建，等待初始化完成. */
+    static final int STATE_STARTING = 1;
+
+    /** 引擎可以说话. */
+    static final int STATE_READY = 2;
+
+    /** 服务已经解绑，引擎在宽限期内保持，等待重新绑定. */
+    static final int STATE_STANDBY = 3;
+
+    private static final String[] STATE_NAMES = {"stopped", "starting", "ready", "standby"};
+
+    private final long mGraceNanos;
+
+    private int mState = STATE_STOPPED;
+
+    /** 引擎已经初始化完成，待机时用于决定重新绑定后是否可以立即说话. */
+    private boolean mInitialized;
+
+    /** 启动期间缓冲的请求，循环使用. */
+    private final int[] mPendingWhat;
+
+    private final int[] mPendingKeys;
+
+    private final String[] mPendingTexts;
+
+    private final long[] mPendingEnqueueTimes;
+
+    private int mPendingHead;
+
+    private int mPendingCount;
+
+    /** 最近一次启动或重新绑定的时间. */
+    private long mStartNanos;
+
+    /** 进入待机的时间. */
+    private long mStandbySinceNanos;
+
+    /** 启动后还没有说过话. */
+    private boolean mAwaitingFirstUtterance;
+
+    private long mColdStarts;
+
+    private long mWarmStarts;
+
+    private long mBufferedCount;
+
+    private long mDroppedCount;
+
+    private long mLastInitNanos = -1;
+
+    private long mLastTimeToFirstUtteranceNanos = -1;
+
+    /**
+     * @param capacity 启动期间最多缓冲的请求数。
+     * @param graceMillis 解绑后保持引擎的时间。
+     */
+    SpeechEngineLifecycle(int capacity, long graceMillis) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mPendingWhat = new int[capacity];
+        mPendingKeys = new int[capacity];
+        mPendingTexts = new String[capacity];
+        mPendingEnqueueTimes = new long[capacity];
+        mGraceNanos = graceMillis * 1000000L;
+    }
+
+    /**
+     * 服务连接时调用。
+     *
+     * @param nowNanos 当前时间，System.nanoTime()。
+     * @return 需要创建新的引擎时返回true；已有引擎（包括待机中的）时返回false。
+     */
+    synchronized boolean start(long nowNanos) {
+        mStartNanos = nowNanos;
+        mAwaitingFirstUtterance = true;
+        switch (mState) {
+            case STATE_STOPPED:
+                mState = STATE_STARTING;
+                mInitialized = false;
+                mColdStarts++;
+                return true;
+            case STATE_STANDBY:
+                mState = mInitialized ? STATE_READY : STATE_STARTING;
+                mWarmStarts++;
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 引擎初始化完成时调用。
+     *
+     * @param success 初始化是否成功。失败时回到STOPPED，缓冲的请求被丢弃，调用方应关闭引擎。
+     * @param nowNanos 当前时间。
+     * @return 有缓冲的请求需要{@link #flush}时返回true。
+     */
+    synchronized boolean onReady(boolean success, long nowNanos) {
+        if (mState != STATE_STARTING && mState != STATE_STANDBY || mInitialized) {
+            return false;
+        }
+        if (!success) {
+            mState = STATE_STOPPED;
+            dropPending();
+            return false;
+        }
+        mInitialized = true;
+        mLastInitNanos = nowNanos - mStartNanos;
+        if (mState == STATE_STARTING) {
+            mState = STATE_READY;
+        }
+        return mState == STATE_READY && mPendingCount > 0;
+    }
+
+    /**
+     * 提交一个语音请求。
+     *
+     * @param text 要说的话，缓冲时会被复制。
+     * @param nowNanos 当前时间。
+     * @return 引擎就绪、调用方应立即执行时返回true；请求被缓冲或丢弃时返回false。
+     */
+    synchronized boolean offer(int what, int key, CharSequence text, long enqueueTimeNanos,
+                               long nowNanos) {
+        if (mState == STATE_READY) {
+            noteUtterance(nowNanos);
+            return true;
+        }
+        if (mState != STATE_STARTING) {
+            mDroppedCount++;
+            return false;
+        }
+        if (mPendingCount == mPendingWhat.length) {
+            // 丢弃最旧的，新的请求更能反映当前界面。
+            mPendingTexts[mPendingHead] = null;
+            mPendingHead = (mPendingHead + 1) % mPendingWhat.length;
+            mPendingCount--;
+            mDroppedCount++;
+        }
+        int slot = (mPendingHead + mPendingCount) % mPendingWhat.length;
+        mPendingWhat[slot] = what;
+        mPendingKeys[slot] = key;
+        mPendingTexts[slot] = text != null ? text.toString() : null;
+        mPendingEnqueueTimes[slot] = enqueueTimeNanos;
+        mPendingCount++;
+        mBufferedCount++;
+        return false;
+    }
+
+    /**
+     * 引擎就绪后按顺序执行缓冲的请求。在执行反馈的线程上调用。
+     *
+     * @param renderer 执行请求。
+     * @param nowNanos 当前时间。
+     * @return 执行的请求数。
+     */
+    int flush(FeedbackPipeline.Renderer renderer, long nowNanos) {
+        int count;
+        int[] what;
+        int[] keys;
+        String[] texts;
+        long[] enqueueTimes;
+        synchronized (this) {
+            if (mState != STATE_READY || mPendingCount == 0) {
+                return 0;
+            }
+            // 复制出来再执行，执行时不持有锁。
+            count = mPendingCount;
+            what = new int[count];
+            keys = new int[count];
+            texts = new String[count];
+            enqueueTimes = new long[count];
+            for (int i = 0; i < count; i++) {
+                int slot = (mPendingHead + i) % mPendingWhat.length;
+                what[i] = mPendingWhat[slot];
+                keys[i] = mPendingKeys[slot];
+                texts[i] = mPendingTexts[slot];
+                enqueueTimes[i] = mPendingEnqueueTimes[slot];
+                mPendingTexts[slot] = null;
+            }
+            mPendingHead = 0;
+            mPendingCount = 0;
+            noteUtterance(nowNanos);
+        }
+        for (int i = 0; i < count; i++) {
+            renderer.render(what[i], keys[i], texts[i], enqueueTimes[i]);
+        }
+        return count;
+    }
+
+    /** 打断时丢弃缓冲的请求，它们已经过时了. */
+    synchronized void clearPending() {
+        dropPending();
+    }
+
+    /**
+     * 服务解绑时调用，引擎进入待机。
+     *
+     * @param nowNanos 当前时间。
+     * @return 进入了待机，调用方应在宽限期后调用{@link #onGraceExpired}时返回true。
+     */
+    synchronized boolean release(long nowNanos) {
+        if (mState != STATE_READY && mState != STATE_STARTING) {
+            return false;
+        }
+        mState = STATE_STANDBY;
+        mStandbySinceNanos = nowNanos;
+        mAwaitingFirstUtterance = false;
+        dropPending();
+        return true;
+    }
+
+    /**
+     * 宽限期检查。过期的检查（期间重新绑定又解绑过）不会提前关闭引擎。
+     *
+     * @param nowNanos 当前时间。
+     * @return 宽限期已过、调用方应关闭引擎时返回true。
+     */
+    synchronized boolean onGraceExpired(long nowNanos) {
+        if (mState != STATE_STANDBY || nowNanos - mStandbySinceNanos < mGraceNanos) {
+            return false;
+        }
+        mState = STATE_STOPPED;
+        mInitialized = false;
+        return true;
+    }
+
+    /** 引擎可以立即说话. */
+    synchronized boolean isReady() {
+        return mState == STATE_READY;
+    }
+
+    synchronized int getState() {
+        return mState;
+    }
+
+    synchronized int getPendingCount() {
+        return mPendingCount;
+    }
+
+    synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /** 最近一次从启动到第一句话的时间，还没有说过话时为-1. */
+    synchronized long getLastTimeToFirstUtteranceNanos() {
+        return mLastTimeToFirstUtteranceNanos;
+    }
+
+    /** 最近一次引擎初始化的耗时，还没有初始化过时为-1. */
+    synchronized long getLastInitNanos() {
+        return mLastInitNanos;
+    }
+
+    private void noteUtterance(long nowNanos) {
+        if (mAwaitingFirstUtterance) {
+            mAwaitingFirstUtterance = false;
+            mLastTimeToFirstUtteranceNanos = nowNanos - mStartNanos;
+        }
+    }
+
+    private void dropPending() {
+        for (int i = 0; i < mPendingCount; i++) {
+            mPendingTexts[(mPendingHead + i) % mPendingWhat.length] = null;
+        }
+        mDroppedCount += mPendingCount;
+        mPendingHead = 0;
+        mPendingCount = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SpeechEngine{state=" + STATE_NAMES[mState] + ", coldStarts=" + mColdStarts
+                + ", warmStarts=" + mWarmStarts + ", buffered=" + mBufferedCount
+                + ", pending=" + mPendingCount + ", dropped=" + mDroppedCount
+                + ", lastInit=" + toMillis(mLastInitNanos)
+                + ", lastTimeToFirstUtterance=" + toMillis(mLastTimeToFirstUtteranceNanos) + "}";
+    }
+
+    private static String toMillis(long nanos) {
+        return nanos < 0 ? "-" : nanos / 1000000 + "ms";
+    }
+}
@@ -0,0 +1,120 @@
+package liup.code.learnandroid.accessibility;
+
+/**
+ * @title 开关网格的空间索引
+ * @desc .  网格中的格子大小相同、按行排列，格子之间有间隔。坐标到格子的查找只需两次除法，
+ *          格子的位置也直接算出来，不为每个格子保存矩形，几千个格子也不占内存。
+ *          格子的编号从0开始按行递增，同时用作虚拟视图的ID。
+ */
+final class ToggleGridIndex {
+
+    /** 坐标不在任何格子上. */
+    static final int NO_CELL = -1;
+
+    private final int mRows;
+
+    private final int mColumns;
+
+    private final int mCellWidth;
+
+    private final int mCellHeight;
+
+    private final int mSpacing;
+
+    private final int mLeft;
+
+    private final int mTop;
+
+    /**
+     * @param rows 行数。
+     * @param columns 列数。
+     * @param cellWidth 格子的宽度。
+     * @param cellHeight 格子的高度。
+     * @param spacing 相邻格子之间的间隔。
+     * @param left 第一列的左边。
+     * @param top 第一行的上边。
+     */
+    ToggleGridIndex(int rows, int columns, int cellWidth, int cellHeight, int spacing, int left,
+                    int top) {
+        if (rows < 0 || columns < 0 || cellWidth <= 0 || cellHeight <= 0 || spacing < 0) {
+            throw new IllegalArgumentException("Bad grid " + rows + "x" + columns + " of "
+                    + cellWidth + "x" + cellHeight + " spaced " + spacing);
+        }
+        mRows = rows;
+        mColumns = columns;
+        mCellWidth = cellWidth;
+        mCellHeight = cellHeight;
+        mSpacing = spacing;
+        mLeft = left;
+        mTop = top;
+    }
+
+    int getCellCount() {
+        return mRows * mColumns;
+    }
+
+    int getRows() {
+        return mRows;
+    }
+
+    int getColumns() {
+        return mColumns;
+    }
+
+    int getCellWidth() {
+        return mCellWidth;
+    }
+
+    int getCellHeight() {
+        return mCellHeight;
+    }
+
+    /** 所有格子占的宽度. */
+    int getWidth() {
+        return mColumns == 0 ? 0 : mColumns * (mCellWidth + mSpacing) - mSpacing;
+    }
+
+    /** 所有格子占的高度. */
+    int getHeight() {
+        return mRows == 0 ? 0 : mRows * (mCellHeight + mSpacing) - mSpacing;
+    }
+
+    /**
+     * @param x 视图坐标。
+     * @param y 视图坐标。
+     * @return 坐标所在的格子，落在格子之间的间隔或网格外时返回{@link #NO_CELL}。
+     */
+    int cellAt(float x, float y) {
+        float dx = x - mLeft;
+        float dy = y - mTop;
+        if (dx < 0 || dy < 0) {
+            return NO_CELL;
+        }
+        int column = (int) (dx / (mCellWidth + mSpacing));
+        int row = (int) (dy / (mCellHeight + mSpacing));
+        if (column >= mColumns || row >= mRows
+                || dx - column * (mCellWidth + mSpacing) >= mCellWidth
+                || dy - row * (mCellHeight + mSpacing) >= mCellHeight) {
+            return NO_CELL;
+        }
+        return row * mColumns + column;
+    }
+
+    int rowOf(int cell) {
+        return cell / mColumns;
+    }
+
+    int columnOf(int cell) {
+        return cell % mColumns;
+    }
+
+    /** 格子的左边，视图坐标. */
+    int getLeft(int cell) {
+        return mLeft + columnOf(cell) * (mCellWidth + mSpacing);
+    }
+
+    /** 格子的上边，视图坐标. */
+    int getTop(int cell) {
+        return mTop + rowOf(cell) * (mCellHeight + mSpacing);
+    }
+}
@@ -0,0 +1,53 @@
+package liup.code.learnandroid.accessibility;
+
+import java.util.List;
+
+/**
+ * @title 话语格式化
+ * @desc .  把事件的文本或内容描述追加到调用方复用的{@link StringBuilder}中。
+ *          只按下标遍历、按区间追加，不创建迭代器、子串或中间字符串，稳定状态下每个事件零分配。
+ */
+final class UtteranceFormatter {
+
+    /** 空格字符. */
+    private static final char SPACE = ' ';
+
+    private UtteranceFormatter() {
+    }
+
+    /**
+     * 格式化话语。
+     *
+     * @param eventText 事件的文本，可能为空列表。
+     * @param contentDescription 事件的内容描述，没有时为null。
+     * @param utterance 接收话语的StringBuilder，会先被清空。
+     * @return utterance本身。
+     */
+    static StringBuilder format(List<CharSequence> eventText, CharSequence contentDescription,
+                                StringBuilder utterance) {
+        // 在追加格式化文本之前清除话语。
+        utterance.setLength(0);
+
+        // 我们尝试获取事件文本，如果这样的话。
+        int count = eventText.size();
+        if (count > 0) {
+            for (int i = 0; i < count; i++) {
+                CharSequence subText = eventText.get(i);
+                if (subText == null) {
+                    continue;
+                }
+                // 使01发音为1
+                int start = subText.length() > 0 && subText.charAt(0) == '0' ? 1 : 0;
+                utterance.append(subText, start, subText.length());
+                utterance.append(SPACE);
+            }
+            return utterance;
+        }
+
+        // 没有事件文本，但我们尝试获取内容描述，这是描述视图（通常与ImageView一起使用）的可选属性。
+        if (contentDescription != null) {
+            utterance.append(contentDescription);
+        }
+        return utterance;
+    }
+}
@@ -0,0 +1,74 @@
+package liup.code.learnandroid;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SampleCatalogCache}的本地单元测试。
+ */
+public class SampleCatalogCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws Exception {
+        SampleCatalog catalog = new SampleCatalog();
+        catalog.add("Accessibility/Accessibility Service", "liup.code.learnandroid", "ClockBack");
+        catalog.add("Accessibility/Custom View", "liup.code.learnandroid", "CustomView");
+        catalog.add("动画/默认布局动画", "liup.code.learnandroid", "LayoutAnimations");
+
+        SampleCatalogCache cache = new SampleCatalogCache(mFolder.newFile(), 3, 1522222222L);
+        cache.write(catalog.getEntries());
+
+        SampleCatalog restored = cache.read();
+        assertNotNull(restored);
+        List<SampleCatalog.Entry> entries = restored.getEntries();
+        assertEquals(3, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            SampleCatalog.Entry expected = catalog.getEntries().get(i);
+            assertEquals(expected.label, entries.get(i).label);
+            assertEquals(expected.packageName, entries.get(i).packageName);
+            assertEquals(expected.className, entries.get(i).className);
+        }
+        assertEquals(2, restored.getItems("Accessibility").size());
+    }
+
+    @Test
+    public void staleKeyIsIgnored() throws Exception {
+        SampleCatalog catalog = new SampleCatalog();
+        catalog.add("Animation/Default Layout Animations", "pkg", "Layout");
+
+        File file = mFolder.newFile();
+        new SampleCatalogCache(file, 1, 100L).write(catalog.getEntries());
+
+        assertNull(new SampleCatalogCache(file, 2, 100L).read());
+        assertNull(new SampleCatalogCache(file, 1, 101L).read());
+        assertNotNull(new SampleCatalogCache(file, 1, 100L).read());
+        assertNull(new SampleCatalogCache(new File(mFolder.getRoot(), "missing"), 1, 100L).read());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFileFails() throws Exception {
+        SampleCatalog catalog = new SampleCatalog();
+        catalog.add("Animation/Default Layout Animations", "pkg", "Layout");
+
+        File file = mFolder.newFile();
+        SampleCatalogCache cache = new SampleCatalogCache(file, 1, 100L);
+        cache.write(catalog.getEntries());
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 4);
+        raf.close();
+
+        cache.read();
+    }
+}
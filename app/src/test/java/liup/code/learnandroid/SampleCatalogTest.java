@@ -0,0 +1,164 @@
+package liup.code.learnandroid;
+
+import org.junit.Test;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SampleCatalog}的本地单元测试：与原先逐级扫描的getData结果逐项比较。
+ */
+public class SampleCatalogTest {
+
+    private static final int CATALOG_SIZE = 10000;
+
+    private static final String[] SEGMENTS = {
+            "Accessibility", "Animation", "App", "Content", "Graphics", "Media",
+            "Os", "Text", "Views", "Lists", "Custom View", "Default", "Alarm"
+    };
+
+    private final Collator mCollator = Collator.getInstance();
+
+    private final Comparator<String[]> mTitleComparator = new Comparator<String[]>() {
+        public int compare(String[] row1, String[] row2) {
+            return mCollator.compare(row1[0], row2[0]);
+        }
+    };
+
+    @Test
+    public void catalogMatchesLegacyScan() throws Exception {
+        Random random = new Random(20180402L);
+        List<String[]> samples = new ArrayList<String[]>();
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            int depth = 1 + random.nextInt(4);
+            StringBuilder label = new StringBuilder();
+            for (int j = 0; j < depth; j++) {
+                if (j > 0) {
+                    label.append('/');
+                }
+                label.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+            }
+            samples.add(new String[]{label.toString(), "pkg" + random.nextInt(5), "Sample" + i});
+        }
+
+        SampleCatalog catalog = new SampleCatalog();
+        for (String[] sample : samples) {
+            catalog.add(sample[0], sample[1], sample[2]);
+        }
+        assertEquals(CATALOG_SIZE, catalog.size());
+
+        // 从根目录开始，沿着所有浏览项逐级比较。
+        List<String> prefixes = new ArrayList<String>();
+        prefixes.add("");
+        int checked = 0;
+        while (!prefixes.isEmpty()) {
+            String prefix = prefixes.remove(prefixes.size() - 1);
+            List<String[]> expected = legacyGetData(samples, prefix);
+            List<String[]> actual = catalogGetData(catalog, prefix);
+
+            assertEquals(prefix, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(prefix, expected.get(i), actual.get(i));
+                if (actual.get(i)[1].equals("browse")) {
+                    prefixes.add(actual.get(i)[2]);
+                }
+            }
+            checked++;
+        }
+        assertTrue(checked > SEGMENTS.length);
+    }
+
+    @Test
+    public void unknownPrefixIsEmpty() throws Exception {
+        SampleCatalog catalog = new SampleCatalog();
+        catalog.add("Accessibility/Custom View", "pkg", "Custom");
+        assertTrue(catalog.getItems("Animation").isEmpty());
+        assertTrue(catalog.getItems("Accessibility/Custom View").isEmpty());
+        assertEquals(1, catalog.getItems("Accessibility").size());
+    }
+
+    @Test
+    public void replacePackagePatchesOnlyThatPackage() throws Exception {
+        SampleCatalog catalog = new SampleCatalog();
+        catalog.add("Accessibility/Custom View", "app", "Custom");
+        catalog.add("Plugin/Deep/One", "plugin", "One");
+        catalog.add("Plugin/Two", "plugin", "Two");
+        int version = catalog.getVersion();
+
+        // 卸载：插件的目录全部消失，其它示例不受影响。
+        catalog.replacePackage("plugin", new ArrayList<SampleCatalog.Entry>());
+        assertEquals(1, catalog.size());
+        assertEquals(1, catalog.getItems("").size());
+        assertTrue(catalog.getItems("Plugin").isEmpty());
+        assertTrue(catalog.getVersion() != version);
+
+        // 重新安装新版本。
+        List<SampleCatalog.Entry> entries = new ArrayList<SampleCatalog.Entry>();
+        entries.add(new SampleCatalog.Entry("Plugin/Three", "plugin", "Three"));
+        entries.add(new SampleCatalog.Entry("Accessibility/Plugin View", "plugin", "View"));
+        catalog.replacePackage("plugin", entries);
+        assertEquals(3, catalog.size());
+        assertEquals(2, catalog.getItems("").size());
+        assertEquals(2, catalog.getItems("Accessibility").size());
+        assertEquals("Three", catalog.getItems("Plugin").get(0).title);
+    }
+
+    private List<String[]> catalogGetData(SampleCatalog catalog, String prefix) {
+        List<String[]> data = new ArrayList<String[]>();
+        for (SampleCatalog.Item item : catalog.getItems(prefix)) {
+            if (item.isBrowse()) {
+                data.add(new String[]{item.title, "browse", item.path});
+            } else {
+                data.add(new String[]{item.title, item.packageName, item.className});
+            }
+        }
+        Collections.sort(data, mTitleComparator);
+        return data;
+    }
+
+    /** 原先ApiDemosLearn.getData的算法，把ResolveInfo换成(label, package, class). */
+    private List<String[]> legacyGetData(List<String[]> samples, String prefix) {
+        List<String[]> data = new ArrayList<String[]>();
+
+        String[] prefixPath;
+        String prefixWithSlash = prefix;
+
+        if (prefix.equals("")) {
+            prefixPath = null;
+        } else {
+            prefixPath = prefix.split("/");
+            prefixWithSlash = prefix + "/";
+        }
+
+        Map<String, Boolean> entries = new HashMap<String, Boolean>();
+
+        for (String[] sample : samples) {
+            String label = sample[0];
+            if (prefixWithSlash.length() == 0 || label.startsWith(prefixWithSlash)) {
+                String[] labelPath = label.split("/");
+                String nextLabel = prefixPath == null ? labelPath[0] : labelPath[prefixPath.length];
+
+                if ((prefixPath != null ? prefixPath.length : 0) == labelPath.length - 1) {
+                    data.add(new String[]{nextLabel, sample[1], sample[2]});
+                } else {
+                    if (entries.get(nextLabel) == null) {
+                        data.add(new String[]{nextLabel, "browse",
+                                prefix.equals("") ? nextLabel : prefix + "/" + nextLabel});
+                        entries.put(nextLabel, true);
+                    }
+                }
+            }
+        }
+
+        Collections.sort(data, mTitleComparator);
+        return data;
+    }
+}
@@ -0,0 +1,96 @@
+package liup.code.learnandroid;
+
+import org.junit.Test;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SampleFilterEngine}的本地单元测试。
+ */
+public class SampleFilterEngineTest {
+
+    private static SampleCatalog sampleCatalog() {
+        SampleCatalog catalog = new SampleCatalog();
+        catalog.add("Accessibility/Accessibility Service", "pkg", "ClockBack");
+        catalog.add("Accessibility/Custom View", "pkg", "CustomView");
+        catalog.add("Animation/Default Layout Animations", "pkg", "Layout");
+        catalog.add("Views/Custom", "pkg", "Custom");
+        return catalog;
+    }
+
+    private static List<String> titles(List<SampleRow> rows) {
+        List<String> titles = new ArrayList<String>();
+        for (SampleRow row : rows) {
+            titles.add(row.getTitle());
+        }
+        return titles;
+    }
+
+    @Test
+    public void substringSearchesWholeCatalog() throws Exception {
+        SampleFilterEngine engine = new SampleFilterEngine(sampleCatalog().getEntries(),
+                Collator.getInstance());
+
+        List<String> titles = titles(engine.filter("CUSTOM"));
+        assertEquals(2, titles.size());
+        assertTrue(titles.contains("Accessibility/Custom View"));
+        assertTrue(titles.contains("Views/Custom"));
+
+        assertNull(engine.filter(""));
+    }
+
+    @Test
+    public void pathSegmentMatching() throws Exception {
+        SampleFilterEngine engine = new SampleFilterEngine(sampleCatalog().getEntries(),
+                Collator.getInstance());
+
+        List<String> titles = titles(engine.filter("acc/cus"));
+        assertEquals(1, titles.size());
+        assertEquals("Accessibility/Custom View", titles.get(0));
+
+        assertEquals(1, engine.filter("anim/def").size());
+        assertEquals(0, engine.filter("anim/cus").size());
+    }
+
+    @Test
+    public void appendedCharactersNarrowPreviousResult() throws Exception {
+        SampleFilterEngine engine = new SampleFilterEngine(sampleCatalog().getEntries(),
+                Collator.getInstance());
+
+        assertEquals(3, engine.filter("a").size());
+        assertEquals(4, engine.getLastScanCount());
+
+        assertEquals(2, engine.filter("ac").size());
+        assertEquals(3, engine.getLastScanCount());
+
+        // 删除字符后需要重新扫描。
+        assertEquals(3, engine.filter("a").size());
+        assertEquals(4, engine.getLastScanCount());
+    }
+
+    @Test
+    public void incrementalMatchesFullScan() throws Exception {
+        String[] segments = {"Accessibility", "Animation", "App", "Custom View", "Views", "Alarm"};
+        Random random = new Random(6L);
+        SampleCatalog catalog = new SampleCatalog();
+        for (int i = 0; i < 2000; i++) {
+            catalog.add(segments[random.nextInt(segments.length)] + "/"
+                    + segments[random.nextInt(segments.length)] + " " + i, "pkg", "Sample" + i);
+        }
+
+        SampleFilterEngine incremental = new SampleFilterEngine(catalog.getEntries(),
+                Collator.getInstance());
+        String[] queries = {"a", "acc", "acc/", "acc/c", "acc/cus", "v", "vi", "views/a", "1", "12"};
+        for (String query : queries) {
+            // 每次都用新的引擎全量扫描作为对照。
+            SampleFilterEngine fresh = new SampleFilterEngine(catalog.getEntries(),
+                    Collator.getInstance());
+            assertEquals(query, titles(fresh.filter(query)), titles(incremental.filter(query)));
+        }
+    }
+}
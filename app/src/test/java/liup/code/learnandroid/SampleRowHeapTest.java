@@ -0,0 +1,164 @@
+package liup.code.learnandroid;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 比较两种列表模型10000行的内存占用：原先每行一个HashMap并保存构建好的Intent，
+ * 与{@link SampleRow}只引用目录中的列表项。通过HotSpot的线程分配计数统计建行时分配的字节数，
+ * 不依赖GC时机。
+ *
+ * 本地单元测试中无法构造真正的Intent，这里用与API 23中Intent、ComponentName
+ * 实例字段相同的对象代替，只会低估原先模型的占用。
+ */
+public class SampleRowHeapTest {
+
+    private static final int ROWS = 10000;
+
+    @Test
+    public void rowsShareCatalogItems() throws Exception {
+        List<SampleCatalog.Item> items = newItems();
+        List<SampleRow> compact = new ArrayList<SampleRow>(ROWS);
+        buildCompactRows(Collator.getInstance(), items, compact);
+
+        assertEquals(ROWS, compact.size());
+        for (int i = 0; i < ROWS; i++) {
+            // 行不复制标题，也不保存Intent，只引用目录中的列表项。
+            assertSame(items.get(i), compact.get(i).item);
+            assertSame(items.get(i).title, compact.get(i).getTitle());
+        }
+    }
+
+    @Test
+    public void compactRowsAllocateFarLess() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        List<SampleCatalog.Item> items = newItems();
+        Collator collator = new PrecomputedCollator(items);
+        List<Map<String, Object>> maps = new ArrayList<Map<String, Object>>(ROWS);
+        List<SampleRow> compact = new ArrayList<SampleRow>(ROWS);
+        // 预热，测量时两段代码都已经加载和编译。
+        buildMapRows(items, new ArrayList<Map<String, Object>>(ROWS));
+        buildCompactRows(collator, items, new ArrayList<SampleRow>(ROWS));
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        buildMapRows(items, maps);
+        long middle = threadBean.getThreadAllocatedBytes(threadId);
+        buildCompactRows(collator, items, compact);
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+
+        long mapBytes = middle - before;
+        long compactBytes = after - middle;
+        assertEquals(ROWS, maps.size());
+        assertEquals(ROWS, compact.size());
+        assertTrue("HashMap rows " + mapBytes + " bytes, SampleRow rows " + compactBytes
+                + " bytes", compactBytes * 4 < mapBytes);
+    }
+
+    private static List<SampleCatalog.Item> newItems() {
+        List<SampleCatalog.Item> items = new ArrayList<SampleCatalog.Item>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            items.add(new SampleCatalog.Item("Sample " + i, "liup.code.learnandroid",
+                    "liup.code.learnandroid.Sample" + i, null));
+        }
+        return items;
+    }
+
+    /** 原先的模型：每行一个HashMap，并保存构建好的Intent. */
+    private static void buildMapRows(List<SampleCatalog.Item> items,
+                                     List<Map<String, Object>> data) {
+        for (SampleCatalog.Item item : items) {
+            Map<String, Object> temp = new HashMap<String, Object>();
+            temp.put("title", item.title);
+            temp.put("intent", new IntentFootprint(item.packageName, item.className));
+            data.add(temp);
+        }
+    }
+
+    private static void buildCompactRows(Collator collator, List<SampleCatalog.Item> items,
+                                         List<SampleRow> data) {
+        for (SampleCatalog.Item item : items) {
+            data.add(new SampleRow(collator, item));
+        }
+    }
+
+    /**
+     * 返回预先计算好的排序key。原先的模型每次比较都调用Collator.compare，
+     * 同样要按语言规则处理标题，这里只比较每行保存的数据，不计生成key的临时分配。
+     */
+    private static final class PrecomputedCollator extends Collator {
+
+        private final Collator mCollator = Collator.getInstance();
+
+        private final Map<String, CollationKey> mKeys = new HashMap<String, CollationKey>();
+
+        PrecomputedCollator(List<SampleCatalog.Item> items) {
+            for (SampleCatalog.Item item : items) {
+                mKeys.put(item.title, mCollator.getCollationKey(item.title));
+            }
+        }
+
+        @Override
+        public int compare(String source, String target) {
+            return mCollator.compare(source, target);
+        }
+
+        @Override
+        public CollationKey getCollationKey(String source) {
+            return mKeys.get(source);
+        }
+
+        @Override
+        public int hashCode() {
+            return mCollator.hashCode();
+        }
+    }
+
+    /** 与android.content.Intent的实例字段相同. */
+    @SuppressWarnings("unused")
+    private static final class IntentFootprint {
+        String mAction;
+        Object mData;
+        String mType;
+        String mPackage;
+        ComponentFootprint mComponent;
+        int mFlags;
+        Object mCategories;
+        Object mExtras;
+        Object mSourceBounds;
+        Object mSelector;
+        Object mClipData;
+        int mContentUserHint;
+
+        IntentFootprint(String packageName, String className) {
+            mComponent = new ComponentFootprint(packageName, className);
+        }
+    }
+
+    /** 与android.content.ComponentName的实例字段相同. */
+    @SuppressWarnings("unused")
+    private static final class ComponentFootprint {
+        final String mPackage;
+        final String mClass;
+
+        ComponentFootprint(String packageName, String className) {
+            mPackage = packageName;
+            mClass = className;
+        }
+    }
+}
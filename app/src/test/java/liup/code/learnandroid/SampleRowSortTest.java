@@ -0,0 +1,80 @@
+package liup.code.learnandroid;
+
+import org.junit.Test;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SampleRow}预先计算CollationKey后按字节比较，排出的顺序必须与原先
+ * 每行一个HashMap、每次比较都调用Collator.compare的顺序一致。
+ */
+public class SampleRowSortTest {
+
+    private static final int[] SIZES = {1000, 10000, 50000};
+
+    @Test
+    public void sortsLikeCollatorCompare() throws Exception {
+        for (int size : SIZES) {
+            List<String> titles = randomTitles(size);
+            List<Map<String, Object>> maps = sortMaps(titles);
+            List<SampleRow> rows = sortRows(titles);
+
+            assertEquals(size, rows.size());
+            for (int i = 0; i < size; i++) {
+                assertEquals(maps.get(i).get("title"), rows.get(i).getTitle());
+            }
+        }
+    }
+
+    private static List<Map<String, Object>> sortMaps(List<String> titles) {
+        final Collator collator = Collator.getInstance();
+        List<Map<String, Object>> data = new ArrayList<Map<String, Object>>(titles.size());
+        for (String title : titles) {
+            Map<String, Object> temp = new HashMap<String, Object>();
+            temp.put("title", title);
+            temp.put("intent", null);
+            data.add(temp);
+        }
+        Collections.sort(data, new Comparator<Map<String, Object>>() {
+            public int compare(Map<String, Object> map1, Map<String, Object> map2) {
+                return collator.compare(map1.get("title"), map2.get("title"));
+            }
+        });
+        return data;
+    }
+
+    private static List<SampleRow> sortRows(List<String> titles) {
+        Collator collator = Collator.getInstance();
+        List<SampleRow> data = new ArrayList<SampleRow>(titles.size());
+        for (String title : titles) {
+            data.add(new SampleRow(collator, new SampleCatalog.Item(title, null, null, null)));
+        }
+        Collections.sort(data, new Comparator<SampleRow>() {
+            public int compare(SampleRow row1, SampleRow row2) {
+                return row1.sortKey.compareTo(row2.sortKey);
+            }
+        });
+        return data;
+    }
+
+    private static List<String> randomTitles(int size) {
+        Random random = new Random(size);
+        String[] words = {"Accessibility", "Animation", "Custom", "View", "Layout", "Default",
+                "Service", "Clock", "Alarm", "List", "Graphics", "Media", "Text", "Toggle"};
+        List<String> titles = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            titles.add(words[random.nextInt(words.length)] + " "
+                    + words[random.nextInt(words.length)] + " " + random.nextInt(1000));
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,42 @@
+package liup.code.learnandroid.accessibility;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DeviceState}的本地单元测试。
+ */
+public class DeviceStateTest {
+
+    @Test
+    public void volumeRoundsToTens() throws Exception {
+        assertEquals(100, DeviceState.volumePercentOf(7, 7));
+        // 3/7是42%，取整到40。
+        assertEquals(40, DeviceState.volumePercentOf(3, 7));
+        // 4/7是57%，取整到60。
+        assertEquals(60, DeviceState.volumePercentOf(4, 7));
+        // 正好逢五不变。
+        assertEquals(25, DeviceState.volumePercentOf(1, 4));
+        assertEquals(0, DeviceState.volumePercentOf(0, 15));
+        assertEquals(0, DeviceState.volumePercentOf(3, 0));
+    }
+
+    @Test
+    public void updatesCopyOnlyWhenChanged() throws Exception {
+        DeviceState state = DeviceState.DEFAULT;
+        assertSame(state, state.withScreenOn(true));
+        assertSame(state, state.withRingerMode(DeviceState.RINGER_MODE_NORMAL));
+
+        DeviceState off = state.withScreenOn(false);
+        assertNotSame(state, off);
+        assertTrue(state.isScreenOn());
+        assertFalse(off.isScreenOn());
+
+        DeviceState louder = off.withVolumePercent(80).withRingerMode(1);
+        assertEquals(80, louder.getVolumePercent());
+        assertEquals(1, louder.getRingerMode());
+        assertFalse(louder.isScreenOn());
+        assertEquals(0, off.getVolumePercent());
+    }
+}
@@ -0,0 +1,87 @@
+package liup.code.learnandroid.accessibility;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link EventGate}的本地单元测试。
+ */
+public class EventGateTest {
+
+    private static final String CLOCK_PACKAGE = "com.android.deskclock";
+
+    private final EventGate mGate = new EventGate();
+
+    @Before
+    public void setUp() throws Exception {
+        mGate.setPackageNames(new String[]{
+                "com.android.alarmclock", "com.google.android.deskclock", CLOCK_PACKAGE});
+        mGate.setEventTypes(RingerModeFeedback.SPOKEN_EVENT_TYPES);
+        mGate.setFeedbackEnabled(true);
+    }
+
+    @Test
+    public void acceptsInterestingEvents() throws Exception {
+        assertEquals(EventGate.ACCEPTED,
+                mGate.check(AccessibilityEvent.TYPE_VIEW_CLICKED, CLOCK_PACKAGE, true));
+        // 不是常量池中的实例，也不是String。
+        assertEquals(EventGate.ACCEPTED, mGate.check(AccessibilityEvent.TYPE_VIEW_FOCUSED,
+                new StringBuilder("com.android.").append("alarmclock"), true));
+        assertEquals(2, mGate.getCount(EventGate.ACCEPTED));
+    }
+
+    @Test
+    public void rejectsOtherPackages() throws Exception {
+        assertEquals(EventGate.REJECTED_PACKAGE, mGate.check(
+                AccessibilityEvent.TYPE_VIEW_CLICKED, "com.android.systemui", true));
+        assertEquals(EventGate.REJECTED_PACKAGE,
+                mGate.check(AccessibilityEvent.TYPE_VIEW_CLICKED, null, true));
+        assertEquals(2, mGate.getCount(EventGate.REJECTED_PACKAGE));
+
+        // 没有设置包名时接收所有应用。
+        mGate.setPackageNames(null);
+        assertEquals(EventGate.ACCEPTED, mGate.check(
+                AccessibilityEvent.TYPE_VIEW_CLICKED, "com.android.systemui", true));
+    }
+
+    @Test
+    public void rejectsUnsubscribedTypes() throws Exception {
+        assertEquals(EventGate.REJECTED_EVENT_TYPE,
+                mGate.check(AccessibilityEvent.TYPE_VIEW_SCROLLED, CLOCK_PACKAGE, true));
+        assertEquals(1, mGate.getCount(EventGate.REJECTED_EVENT_TYPE));
+    }
+
+    @Test
+    public void statesTakePrecedence() throws Exception {
+        assertEquals(EventGate.REJECTED_SCREEN_OFF,
+                mGate.check(AccessibilityEvent.TYPE_VIEW_CLICKED, CLOCK_PACKAGE, false));
+        mGate.setFeedbackEnabled(false);
+        assertEquals(EventGate.REJECTED_DISABLED, mGate.check(
+                AccessibilityEvent.TYPE_VIEW_SCROLLED, "com.android.systemui", false));
+        mGate.setFeedbackEnabled(true);
+        assertEquals(EventGate.ACCEPTED,
+                mGate.check(AccessibilityEvent.TYPE_VIEW_CLICKED, CLOCK_PACKAGE, true));
+
+        assertEquals("EventGate{accepted=1, disabled=1, screenOff=1, eventType=0, package=0,"
+                + " enabled=true}", mGate.toString());
+    }
+
+    @Test
+    public void manyPackagesStillFound() throws Exception {
+        String[] packages = new String[100];
+        for (int i = 0; i < packages.length; i++) {
+            packages[i] = "com.example.app" + i;
+        }
+        mGate.setPackageNames(packages);
+        for (String packageName : packages) {
+            assertEquals(EventGate.ACCEPTED,
+                    mGate.check(AccessibilityEvent.TYPE_VIEW_CLICKED, packageName, true));
+        }
+        assertEquals(EventGate.REJECTED_PACKAGE,
+                mGate.check(AccessibilityEvent.TYPE_VIEW_CLICKED, "com.example.app100", true));
+    }
+}
@@ -0,0 +1,80 @@
+package liup.code.learnandroid.accessibility;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link EventRateThrottle}的本地单元测试。
+ */
+public class EventRateThrottleTest {
+
+    private static final int MIN = 40;
+
+    private static final int MAX = 320;
+
+    private final EventRateThrottle mThrottle = new EventRateThrottle(MIN, MAX, 80);
+
+    private long mTime = 100000;
+
+    @Test
+    public void burstWidensOneStepPerDwell() throws Exception {
+        // 每10ms一个事件，远超每个间隔一个事件。
+        int changes = feed(10, 3500);
+        assertEquals(MAX, mThrottle.getTimeoutMillis());
+        // 80 -> 160 -> 320，每次至少间隔MIN_DWELL_MILLIS。
+        assertEquals(2, changes);
+        assertEquals(2, mThrottle.getWidenCount());
+    }
+
+    @Test
+    public void slowEventsNarrowToMinimum() throws Exception {
+        feed(10, 3000);
+        assertEquals(MAX, mThrottle.getTimeoutMillis());
+
+        // 每800ms一个事件：负载低于NARROW_LOAD，逐档收紧。
+        feed(800, 10000);
+        assertEquals(MIN, mThrottle.getTimeoutMillis());
+        assertTrue(mThrottle.getNarrowCount() >= 1);
+    }
+
+    @Test
+    public void rateBetweenThresholdsDoesNotFlap() throws Exception {
+        feed(10, 3000);
+        int timeout = mThrottle.getTimeoutMillis();
+        // 负载在两个阈值之间（320/400=0.8）时保持不变。
+        assertEquals(0, feed(400, 60000));
+        assertEquals(timeout, mThrottle.getTimeoutMillis());
+    }
+
+    @Test
+    public void idleCheckNarrowsImmediately() throws Exception {
+        feed(10, 3000);
+        assertTrue(mThrottle.needsIdleCheck());
+        assertFalse(mThrottle.onIdleCheck(mTime + EventRateThrottle.IDLE_MILLIS - 1));
+        assertTrue(mThrottle.onIdleCheck(mTime + EventRateThrottle.IDLE_MILLIS));
+        assertEquals(MIN, mThrottle.getTimeoutMillis());
+        assertFalse(mThrottle.needsIdleCheck());
+    }
+
+    @Test
+    public void firstEventAfterIdleUsesMinimum() throws Exception {
+        feed(10, 3000);
+        mTime += 5000;
+        assertTrue(mThrottle.onEvent(mTime));
+        assertEquals(MIN, mThrottle.getTimeoutMillis());
+        assertTrue(mThrottle.toString().contains(":" + MIN));
+    }
+
+    /** 以固定间隔送入事件，返回间隔变化的次数. */
+    private int feed(long intervalMillis, long durationMillis) {
+        int changes = 0;
+        for (long elapsed = 0; elapsed < durationMillis; elapsed += intervalMillis) {
+            mTime += intervalMillis;
+            if (mThrottle.onEvent(mTime)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+}
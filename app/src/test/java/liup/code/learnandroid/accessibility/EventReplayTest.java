@@ -0,0 +1,281 @@
+package liup.code.learnandroid.accessibility;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 事件轨迹的读写，以及用{@link ReplayHarness}重放一场事件风暴。
+ */
+public class EventReplayTest {
+
+    private static final String CLOCK_PACKAGE = "com.android.deskclock";
+
+    private static final int STORM_EVENTS = 20000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void traceRoundTrip() throws Exception {
+        File file = mFolder.newFile();
+        EventTrace.Writer writer = new EventTrace.Writer(new FileOutputStream(file));
+        writer.write(1000, 1003, AccessibilityEvent.TYPE_VIEW_CLICKED, CLOCK_PACKAGE,
+                Arrays.<CharSequence>asList("07", "30", "AM"), "闹钟");
+        writer.write(990, 1010, AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED, "com.android.systemui",
+                Collections.<CharSequence>emptyList(), null);
+        writer.write(1500, 1500, AccessibilityEvent.TYPE_VIEW_HOVER_ENTER, CLOCK_PACKAGE,
+                Arrays.<CharSequence>asList((CharSequence) null), null);
+        writer.write(1600, 1601, AccessibilityEvent.TYPE_VIEW_FOCUSED, null,
+                Collections.<CharSequence>emptyList(), "");
+        writer.close();
+        assertEquals(4, writer.getCount());
+
+        EventTrace.Reader reader = new EventTrace.Reader(new FileInputStream(file));
+        EventTrace.Record record = new EventTrace.Record();
+
+        assertTrue(reader.next(record));
+        assertEquals(1000, record.eventTime);
+        assertEquals(1003, record.receiveTime);
+        assertEquals(AccessibilityEvent.TYPE_VIEW_CLICKED, record.eventType);
+        assertEquals(CLOCK_PACKAGE, record.packageName);
+        assertEquals(Arrays.<CharSequence>asList("07", "30", "AM"), record.text);
+        assertEquals("闹钟", record.contentDescription);
+
+        assertTrue(reader.next(record));
+        assertEquals(990, record.eventTime);
+        assertEquals(1010, record.receiveTime);
+        assertEquals("com.android.systemui", record.packageName);
+        assertTrue(record.text.isEmpty());
+        assertNull(record.contentDescription);
+
+        assertTrue(reader.next(record));
+        assertEquals(CLOCK_PACKAGE, record.packageName);
+        assertEquals(Collections.singletonList(null), record.text);
+
+        assertTrue(reader.next(record));
+        assertNull(record.packageName);
+        assertEquals("", record.contentDescription);
+
+        assertFalse(reader.next(record));
+        reader.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception {
+        File file = mFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{'P', 'K', 3, 4, 0, 0, 0, 0});
+        out.close();
+        new EventTrace.Reader(new FileInputStream(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOversizedTextCount() throws Exception {
+        // 时间差0、0，类型1，没有包名，文本条数2^35。
+        readCorruptRecord(new byte[]{0, 0, 1, 0, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+                (byte) 0x80, (byte) 0x80, 1});
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedLongString() throws Exception {
+        // 一条文本，声称有2^31-2个字节，实际只有3个字节。
+        readCorruptRecord(new byte[]{0, 0, 1, 0, 1, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+                (byte) 0xff, 0x07, 'a', 'b', 'c'});
+    }
+
+    /** 在合法的文件头后写入一条损坏的记录并读出来. */
+    private void readCorruptRecord(byte[] record) throws IOException {
+        File file = mFolder.newFile();
+        new EventTrace.Writer(new FileOutputStream(file)).close();
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(record);
+        out.close();
+        EventTrace.Reader reader = new EventTrace.Reader(new FileInputStream(file));
+        try {
+            reader.next(new EventTrace.Record());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void replaySpokenStorm() throws Exception {
+        File trace = writeStorm(mFolder.newFile());
+        // 假的TTS说一句话占用反馈线程40ms。
+        ReplayHarness harness = new ReplayHarness(40, 2, 5);
+        ReplayHarness.Result result = replay(trace, harness, harness.spokenChannel());
+
+        assertEquals(STORM_EVENTS, result.events);
+        // 悬停离开事件没有订阅，系统不会发送过来。
+        assertTrue(result.filtered > 0);
+        assertEquals(STORM_EVENTS - result.filtered, result.offered);
+        // 每条反馈要么执行了，要么被合并或丢弃，没有遗漏。
+        assertEquals(result.offered, result.delivered + result.dropped);
+        assertEquals(result.delivered, result.spoken);
+        assertTrue(result.toString(), result.maxDepth <= ReplayHarness.CAPACITY);
+        // 风暴中说不完的反馈被合并掉，而不是越积越多。
+        assertTrue(result.toString(), result.dropped > 0);
+        assertEquals(0, result.earcons);
+        assertEquals(0, result.vibrations);
+        assertTrue(result.toString(), result.eventsPerSecond() > 1000);
+    }
+
+    @Test
+    public void replayHapticStorm() throws Exception {
+        File trace = writeStorm(mFolder.newFile());
+        ReplayHarness harness = new ReplayHarness(40, 2, 5);
+        ReplayHarness.Result result = replay(trace, harness, harness.hapticChannel());
+
+        // 振动通道按配置只订阅有振动模式的事件类型，悬停离开不在其中。
+        int hapticTypes = harness.hapticChannel().getEventTypes();
+        assertTrue((hapticTypes & AccessibilityEvent.TYPE_VIEW_CLICKED) != 0);
+        assertTrue((hapticTypes & AccessibilityEvent.TYPE_VIEW_HOVER_ENTER) != 0);
+        assertEquals(0, hapticTypes & AccessibilityEvent.TYPE_VIEW_HOVER_EXIT);
+        assertTrue(result.filtered > 0);
+        assertEquals(STORM_EVENTS - result.filtered, result.offered);
+
+        assertEquals(result.offered, result.delivered + result.dropped);
+        assertEquals(result.delivered, result.vibrations);
+        assertEquals(0, result.spoken);
+        assertEquals(0, result.earcons);
+        assertTrue(result.toString(), result.maxDepth <= ReplayHarness.CAPACITY);
+    }
+
+    @Test
+    public void priorityKeepsImportantFeedbackAudible() throws Exception {
+        File trace = writeBurst(mFolder.newFile());
+        ReplayHarness.Result before = replayBurst(trace, FeedbackScheduler.interruptAll());
+        ReplayHarness.Result after = replayBurst(trace, FeedbackScheduler.prioritized());
+
+        // 以前悬停几乎总会打断窗口切换的播报。
+        assertTrue(before.toString(),
+                before.completionRatio(FeedbackScheduler.PRIORITY_HIGH) < 0.5);
+        assertTrue(before.preempted[FeedbackScheduler.PRIORITY_HIGH] > 0);
+        // 现在窗口切换的播报都能说完，没有被打断的。
+        assertTrue(after.toString(),
+                after.completionRatio(FeedbackScheduler.PRIORITY_HIGH) >= 0.95);
+        assertEquals(0, after.preempted[FeedbackScheduler.PRIORITY_HIGH]);
+        // 点击的反馈也更多地说完了。
+        assertTrue(after.completed[FeedbackScheduler.PRIORITY_NORMAL]
+                > before.completed[FeedbackScheduler.PRIORITY_NORMAL]);
+        // 过时的悬停反馈被丢弃，没有说出来。
+        assertTrue(after.expired > 0);
+        assertEquals(after.offered, after.delivered + after.dropped);
+        assertEquals(after.delivered, after.spoken);
+    }
+
+    private static ReplayHarness.Result replayBurst(File trace, FeedbackScheduler scheduler)
+            throws IOException {
+        // TTS的speak很快返回，一句话要播放600ms。
+        ReplayHarness harness = new ReplayHarness(2, 2, 5, scheduler);
+        harness.setSpeechPlaybackMillis(600);
+        return replay(trace, harness, harness.spokenChannel());
+    }
+
+    private static ReplayHarness.Result replay(File trace, ReplayHarness harness,
+                                               FeedbackChannel channel) throws IOException {
+        EventTrace.Reader reader = new EventTrace.Reader(new FileInputStream(trace));
+        try {
+            return harness.replay(reader, channel);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * 生成一段阵发的负载：每两秒切换一次窗口，用户不时点一下，
+     * 其余时间手指不停划过列表，每隔几毫秒就有一个悬停或焦点事件。
+     */
+    private static File writeBurst(File file) throws IOException {
+        Random random = new Random(20181016L);
+        List<CharSequence> noText = Collections.emptyList();
+        EventTrace.Writer writer = new EventTrace.Writer(new FileOutputStream(file));
+        long time = 100000;
+        long nextWindow = time;
+        long nextClick = time + 300;
+        for (long end = time + 60000; time < end; time += 5 + random.nextInt(20)) {
+            int eventType;
+            List<CharSequence> text;
+            CharSequence description = null;
+            if (time >= nextWindow) {
+                eventType = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED;
+                text = Collections.<CharSequence>singletonList("Alarm " + random.nextInt(5));
+                nextWindow += 2000;
+            } else if (time >= nextClick) {
+                eventType = AccessibilityEvent.TYPE_VIEW_CLICKED;
+                text = Collections.<CharSequence>singletonList("Item " + random.nextInt(20));
+                nextClick += 400 + random.nextInt(800);
+            } else if (random.nextBoolean()) {
+                eventType = AccessibilityEvent.TYPE_VIEW_FOCUSED;
+                text = Collections.<CharSequence>singletonList("Item " + random.nextInt(20));
+            } else {
+                eventType = AccessibilityEvent.TYPE_VIEW_HOVER_ENTER;
+                text = noText;
+                description = "Alarm on";
+            }
+            writer.write(time, time + random.nextInt(3), eventType, CLOCK_PACKAGE, text,
+                    description);
+        }
+        writer.close();
+        return file;
+    }
+
+    /**
+     * 生成一场事件风暴：用户每隔几百毫秒点一次闹钟，其间手指划过时钟界面，
+     * 每隔几毫秒就有一对悬停事件和焦点事件。
+     */
+    private static File writeStorm(File file) throws IOException {
+        Random random = new Random(20180328L);
+        List<CharSequence> noText = Collections.emptyList();
+        EventTrace.Writer writer = new EventTrace.Writer(new FileOutputStream(file));
+        long time = 100000;
+        for (int i = 0; i < STORM_EVENTS; i++) {
+            time += random.nextInt(4) == 0 ? 100 + random.nextInt(400) : random.nextInt(8);
+            int eventType;
+            List<CharSequence> text = noText;
+            switch (random.nextInt(10)) {
+                case 0:
+                    eventType = AccessibilityEvent.TYPE_VIEW_CLICKED;
+                    text = Arrays.<CharSequence>asList(
+                            String.format("%02d", random.nextInt(24)),
+                            String.format("%02d", random.nextInt(60)));
+                    break;
+                case 1:
+                    eventType = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED;
+                    text = Collections.<CharSequence>singletonList("Alarm");
+                    break;
+                case 2:
+                case 3:
+                    eventType = AccessibilityEvent.TYPE_VIEW_FOCUSED;
+                    text = Collections.<CharSequence>singletonList("Item " + random.nextInt(20));
+                    break;
+                case 4:
+                case 5:
+                case 6:
+                    eventType = AccessibilityEvent.TYPE_VIEW_HOVER_ENTER;
+                    break;
+                default:
+                    eventType = AccessibilityEvent.TYPE_VIEW_HOVER_EXIT;
+                    break;
+            }
+            writer.write(time, time + random.nextInt(3), eventType, CLOCK_PACKAGE, text,
+                    eventType == AccessibilityEvent.TYPE_VIEW_HOVER_ENTER ? "Alarm on" : null);
+        }
+        writer.close();
+        return file;
+    }
+}
@@ -0,0 +1,124 @@
+package liup.code.learnandroid.accessibility;
+
+import android.accessibilityservice.AccessibilityServiceInfo;
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FeedbackChannel}的本地单元测试。
+ */
+public class FeedbackChannelTest {
+
+    private static final int SPEAK = 1;
+
+    private static final int STOP_SPEAK = 2;
+
+    private static final int PLAY_EARCON = 5;
+
+    private static final int STOP_PLAY_EARCON = 6;
+
+    private static final int VIBRATE = 7;
+
+    private static final int STOP_VIBRATE = 8;
+
+    private static final int INDEX_SCREEN_ON = FeedbackProfile.INDEX_SCREEN_ON;
+
+    /** 把收到的反馈记录成字符串. */
+    private static class RecordingSink implements FeedbackChannel.Sink {
+
+        final List<String> mFeedback = new ArrayList<String>();
+
+        int mUtteranceRequests;
+
+        @Override
+        public void enqueueFeedback(int what, int key, CharSequence text) {
+            mFeedback.add(what + ":" + key + (text != null ? ":" + text : ""));
+        }
+
+        @Override
+        public void stopFeedback(int stopWhat) {
+            mFeedback.add("stop:" + stopWhat);
+        }
+
+        @Override
+        public CharSequence getDeviceStateUtterance(int index) {
+            mUtteranceRequests++;
+            return "Screen on";
+        }
+    }
+
+    private final RecordingSink mSink = new RecordingSink();
+
+    private final List<CharSequence> mText = Arrays.<CharSequence>asList("07", "30");
+
+    @Test
+    public void spokenChannelFormatsUtterance() throws Exception {
+        FeedbackChannel channel = FeedbackChannel.spoken(AccessibilityServiceInfo.FEEDBACK_SPOKEN,
+                RingerModeFeedback.SPOKEN_EVENT_TYPES, mSink, SPEAK, STOP_SPEAK);
+        channel.onEvent(AccessibilityEvent.TYPE_VIEW_CLICKED, mText, null);
+        channel.onDeviceStateChanged(INDEX_SCREEN_ON);
+        channel.onInterrupt();
+
+        assertEquals(Arrays.asList(
+                SPEAK + ":" + AccessibilityEvent.TYPE_VIEW_CLICKED + ":7 30 ",
+                SPEAK + ":" + INDEX_SCREEN_ON + ":Screen on",
+                "stop:" + STOP_SPEAK), mSink.mFeedback);
+        assertEquals(1, mSink.mUtteranceRequests);
+    }
+
+    @Test
+    public void keyedChannelNeverBuildsUtterance() throws Exception {
+        FeedbackChannel channel = FeedbackChannel.keyed(AccessibilityServiceInfo.FEEDBACK_HAPTIC,
+                AccessibilityEvent.TYPE_VIEW_CLICKED, mSink, VIBRATE, STOP_VIBRATE);
+        channel.onEvent(AccessibilityEvent.TYPE_VIEW_CLICKED, mText, "Alarm");
+        channel.onDeviceStateChanged(INDEX_SCREEN_ON);
+
+        assertEquals(Arrays.asList(
+                VIBRATE + ":" + AccessibilityEvent.TYPE_VIEW_CLICKED,
+                VIBRATE + ":" + INDEX_SCREEN_ON), mSink.mFeedback);
+        assertEquals(0, mSink.mUtteranceRequests);
+        assertEquals(AccessibilityServiceInfo.FEEDBACK_HAPTIC, channel.getFeedbackType());
+    }
+
+    @Test
+    public void compositeFansOutToSubscribedChannels() throws Exception {
+        FeedbackChannel channel = FeedbackChannel.of(
+                FeedbackChannel.keyed(AccessibilityServiceInfo.FEEDBACK_AUDIBLE,
+                        AccessibilityEvent.TYPE_VIEW_FOCUSED | AccessibilityEvent.TYPE_VIEW_CLICKED,
+                        mSink, PLAY_EARCON, STOP_PLAY_EARCON),
+                FeedbackChannel.keyed(AccessibilityServiceInfo.FEEDBACK_HAPTIC,
+                        AccessibilityEvent.TYPE_VIEW_FOCUSED, mSink, VIBRATE, STOP_VIBRATE));
+        channel.onEvent(AccessibilityEvent.TYPE_VIEW_FOCUSED,
+                Collections.<CharSequence>emptyList(), null);
+        channel.onEvent(AccessibilityEvent.TYPE_VIEW_CLICKED,
+                Collections.<CharSequence>emptyList(), null);
+        channel.onInterrupt();
+
+        assertEquals(Arrays.asList(
+                PLAY_EARCON + ":" + AccessibilityEvent.TYPE_VIEW_FOCUSED,
+                VIBRATE + ":" + AccessibilityEvent.TYPE_VIEW_FOCUSED,
+                PLAY_EARCON + ":" + AccessibilityEvent.TYPE_VIEW_CLICKED,
+                "stop:" + STOP_PLAY_EARCON,
+                "stop:" + STOP_VIBRATE), mSink.mFeedback);
+        assertEquals(AccessibilityServiceInfo.FEEDBACK_AUDIBLE
+                | AccessibilityServiceInfo.FEEDBACK_HAPTIC, channel.getFeedbackType());
+        assertEquals(AccessibilityEvent.TYPE_VIEW_FOCUSED | AccessibilityEvent.TYPE_VIEW_CLICKED,
+                channel.getEventTypes());
+    }
+
+    @Test
+    public void noneChannelIgnoresEverything() throws Exception {
+        FeedbackChannel.NONE.onEvent(AccessibilityEvent.TYPE_VIEW_CLICKED, mText, null);
+        FeedbackChannel.NONE.onDeviceStateChanged(INDEX_SCREEN_ON);
+        FeedbackChannel.NONE.onInterrupt();
+        assertTrue(mSink.mFeedback.isEmpty());
+    }
+}
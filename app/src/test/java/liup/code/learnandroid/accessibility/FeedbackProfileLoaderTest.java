@@ -0,0 +1,78 @@
+package liup.code.learnandroid.accessibility;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FeedbackProfileLoader}中与Android框架无关部分的本地单元测试。
+ */
+public class FeedbackProfileLoaderTest {
+
+    @Test
+    public void resolvesKeyNames() throws Exception {
+        assertEquals(AccessibilityEvent.TYPE_VIEW_CLICKED,
+                FeedbackProfileLoader.keyOf("typeViewClicked"));
+        assertEquals(AccessibilityEvent.TYPE_VIEW_HOVER_ENTER,
+                FeedbackProfileLoader.keyOf("typeViewHoverEnter"));
+        assertEquals(FeedbackProfile.INDEX_SCREEN_OFF, FeedbackProfileLoader.keyOf("screenOff"));
+        assertEquals(FeedbackProfile.INDEX_RINGER_SILENT,
+                FeedbackProfileLoader.keyOf("ringerSilent"));
+    }
+
+    @Test
+    public void eventTypesDoNotCollideWithDeviceStates() throws Exception {
+        String[] eventNames = {
+                "typeViewClicked", "typeViewLongClicked", "typeViewSelected", "typeViewFocused",
+                "typeViewTextChanged", "typeWindowStateChanged", "typeNotificationStateChanged",
+                "typeViewHoverEnter", "typeWindowContentChanged", "typeViewScrolled",
+                "typeAnnouncement"
+        };
+        for (String name : eventNames) {
+            assertEquals(name, 0,
+                    FeedbackProfileLoader.keyOf(name) & FeedbackProfile.DEVICE_STATE_KEYS);
+        }
+    }
+
+    @Test
+    public void scrolledAndContentChangedCoexistWithRingerKeys() throws Exception {
+        // 以前这两个事件类型与振动和静音铃声模式的值相同，放在一起会被当作重复的key。
+        FeedbackProfile profile = FeedbackProfile.of(
+                FeedbackProfile.entry(FeedbackProfileLoader.keyOf("typeViewScrolled"), 1),
+                FeedbackProfile.entry(FeedbackProfileLoader.keyOf("typeWindowContentChanged"), 2),
+                FeedbackProfile.entry(FeedbackProfileLoader.keyOf("ringerVibrate"), 3),
+                FeedbackProfile.entry(FeedbackProfileLoader.keyOf("ringerSilent"), 4));
+
+        assertEquals(1, profile.getSoundResourceId(AccessibilityEvent.TYPE_VIEW_SCROLLED));
+        assertEquals(4, profile.getSoundResourceId(FeedbackProfile.INDEX_RINGER_SILENT));
+        // 两个事件类型都留在订阅中，铃声模式不算事件类型。
+        assertEquals(AccessibilityEvent.TYPE_VIEW_SCROLLED
+                        | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED,
+                RingerModeFeedback.eventTypesOf(profile.getSoundKeys(),
+                        FeedbackProfile.DEVICE_STATE_KEYS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownKey() throws Exception {
+        FeedbackProfileLoader.keyOf("TYPE_VIEW_CLICKED");
+    }
+
+    @Test
+    public void parsesPatterns() throws Exception {
+        assertArrayEquals(new long[]{0L, 100L}, FeedbackProfileLoader.parsePattern("0,100"));
+        assertArrayEquals(new long[]{0L, 25L, 50L, 25L},
+                FeedbackProfileLoader.parsePattern(" 0, 25 ,50,25"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeTiming() throws Exception {
+        FeedbackProfileLoader.parsePattern("0,-5");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsGarbage() throws Exception {
+        FeedbackProfileLoader.parsePattern("0,,100");
+    }
+}
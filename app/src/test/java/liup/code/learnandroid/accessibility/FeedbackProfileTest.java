@@ -0,0 +1,104 @@
+package liup.code.learnandroid.accessibility;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Test;
+
+import static liup.code.learnandroid.accessibility.FeedbackProfile.entry;
+import static liup.code.learnandroid.accessibility.FeedbackProfile.INDEX_RINGER_NORMAL;
+import static liup.code.learnandroid.accessibility.FeedbackProfile.INDEX_RINGER_SILENT;
+import static liup.code.learnandroid.accessibility.FeedbackProfile.INDEX_SCREEN_ON;
+import static org.junit.Assert.*;
+
+/**
+ * {@link FeedbackProfile}的本地单元测试。
+ */
+public class FeedbackProfileTest {
+
+    private static final int SOUND_CLICKED = 0x7f0b0001;
+
+    private static final int SOUND_SCREEN_ON = 0x7f0b0002;
+
+    private static final int SOUND_RINGER_SILENT = 0x7f0b0003;
+
+    private final FeedbackProfile mProfile = FeedbackProfile.of(
+            entry(AccessibilityEvent.TYPE_VIEW_CLICKED, SOUND_CLICKED, 0L, 100L),
+            entry(AccessibilityEvent.TYPE_VIEW_FOCUSED, 0, 0L, 15L, 10L, 15L),
+            entry(INDEX_SCREEN_ON, SOUND_SCREEN_ON, 0L, 10L),
+            entry(INDEX_RINGER_SILENT, SOUND_RINGER_SILENT));
+
+    @Test
+    public void looksUpSoundsAndPatterns() throws Exception {
+        assertEquals(SOUND_CLICKED,
+                mProfile.getSoundResourceId(AccessibilityEvent.TYPE_VIEW_CLICKED));
+        assertArrayEquals(new long[]{0L, 100L},
+                mProfile.getVibrationPattern(AccessibilityEvent.TYPE_VIEW_CLICKED));
+        assertEquals(0, mProfile.getSoundResourceId(AccessibilityEvent.TYPE_VIEW_FOCUSED));
+        assertNull(mProfile.getVibrationPattern(INDEX_RINGER_SILENT));
+        assertEquals(SOUND_RINGER_SILENT, mProfile.getSoundResourceId(INDEX_RINGER_SILENT));
+        assertEquals(SOUND_SCREEN_ON, mProfile.getSoundResourceId(INDEX_SCREEN_ON));
+        // 设备状态不占用事件类型的槽。
+        assertEquals(0, mProfile.getSoundResourceId(AccessibilityEvent.TYPE_VIEW_HOVER_EXIT));
+    }
+
+    @Test
+    public void missesReturnNothing() throws Exception {
+        int[] keys = {0, AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED, 0x3, INDEX_RINGER_NORMAL, -1};
+        for (int key : keys) {
+            assertEquals(0, mProfile.getSoundResourceId(key));
+            assertNull(mProfile.getVibrationPattern(key));
+        }
+        assertEquals(31, FeedbackProfile.slotOf(0x80000000));
+        assertEquals(-1, FeedbackProfile.slotOf(0));
+        assertEquals(-1, FeedbackProfile.slotOf(0x3));
+    }
+
+    @Test
+    public void keysFollowDeclarationOrder() throws Exception {
+        assertArrayEquals(new int[]{AccessibilityEvent.TYPE_VIEW_CLICKED, INDEX_SCREEN_ON,
+                INDEX_RINGER_SILENT}, mProfile.getSoundKeys());
+        assertArrayEquals(new int[]{AccessibilityEvent.TYPE_VIEW_CLICKED,
+                AccessibilityEvent.TYPE_VIEW_FOCUSED, INDEX_SCREEN_ON}, mProfile.getVibrationKeys());
+    }
+
+    @Test
+    public void patternsAreCopied() throws Exception {
+        long[] pattern = {0L, 50L};
+        FeedbackProfile profile = FeedbackProfile.of(
+                entry(AccessibilityEvent.TYPE_VIEW_CLICKED, 0, pattern));
+        pattern[1] = 500L;
+        assertEquals(50L, profile.getVibrationPattern(AccessibilityEvent.TYPE_VIEW_CLICKED)[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDuplicateKeys() throws Exception {
+        FeedbackProfile.of(entry(AccessibilityEvent.TYPE_VIEW_CLICKED, SOUND_CLICKED),
+                entry(AccessibilityEvent.TYPE_VIEW_CLICKED, SOUND_SCREEN_ON));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMultiBitKeys() throws Exception {
+        FeedbackProfile.of(entry(AccessibilityEvent.TYPE_VIEW_CLICKED
+                | AccessibilityEvent.TYPE_VIEW_FOCUSED, SOUND_CLICKED));
+    }
+
+    @Test
+    public void carriesServiceSettings() throws Exception {
+        String[] packages = {"com.android.deskclock"};
+        FeedbackProfile profile = FeedbackProfile.of(packages, 20, 50, 400,
+                entry(INDEX_SCREEN_ON, SOUND_SCREEN_ON));
+        packages[0] = "com.example";
+        assertArrayEquals(new String[]{"com.android.deskclock"}, profile.getPackageNames());
+        assertEquals(20, profile.getMinNotificationTimeoutMillis());
+        assertEquals(50, profile.getNotificationTimeoutMillis());
+        assertEquals(400, profile.getMaxNotificationTimeoutMillis());
+
+        assertNull(FeedbackProfile.EMPTY.getPackageNames());
+        assertEquals(0, FeedbackProfile.EMPTY.getSoundKeys().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTimeoutOutsideBounds() throws Exception {
+        FeedbackProfile.of(null, 40, 500, 320);
+    }
+}
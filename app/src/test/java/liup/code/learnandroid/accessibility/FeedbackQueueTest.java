@@ -0,0 +1,113 @@
+package liup.code.learnandroid.accessibility;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FeedbackQueue}的本地单元测试。
+ */
+public class FeedbackQueueTest {
+
+    private static final int SPEAK = 1;
+    private static final int EARCON = 5;
+
+    @Test
+    public void coalescesSameFeedbackAndSource() throws Exception {
+        FeedbackQueue queue = new FeedbackQueue(4);
+
+        assertTrue(queue.offer(SPEAK, 1, "one"));
+        assertFalse(queue.offer(SPEAK, 1, "two"));
+        assertFalse(queue.offer(EARCON, 1, null));
+        assertFalse(queue.offer(SPEAK, 8, "other"));
+        assertEquals(3, queue.size());
+
+        FeedbackQueue.Request request = new FeedbackQueue.Request();
+        assertTrue(queue.poll(request));
+        assertEquals(SPEAK, request.what);
+        assertEquals("two", request.text.toString());
+        assertTrue(queue.poll(request));
+        assertEquals(EARCON, request.what);
+        assertTrue(queue.poll(request));
+        assertEquals("other", request.text.toString());
+        assertFalse(queue.poll(request));
+
+        assertEquals(4, queue.getOfferedCount());
+        assertEquals(3, queue.getDeliveredCount());
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void dropsOldestWhenFull() throws Exception {
+        FeedbackQueue queue = new FeedbackQueue(2);
+        queue.offer(SPEAK, 1, "a");
+        queue.offer(SPEAK, 2, "b");
+        queue.offer(SPEAK, 4, "c");
+
+        FeedbackQueue.Request request = new FeedbackQueue.Request();
+        assertTrue(queue.poll(request));
+        assertEquals("b", request.text.toString());
+        assertTrue(queue.poll(request));
+        assertEquals("c", request.text.toString());
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void drainIsScheduledOncePerBurst() throws Exception {
+        FeedbackQueue queue = new FeedbackQueue(8);
+        assertTrue(queue.offer(SPEAK, 1, "a"));
+        assertFalse(queue.offer(EARCON, 1, null));
+
+        FeedbackQueue.Request request = new FeedbackQueue.Request();
+        while (queue.poll(request)) {
+            // 取空队列。
+        }
+        // 队列取空后，下一条反馈需要重新通知反馈线程。
+        assertTrue(queue.offer(SPEAK, 1, "b"));
+
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertEquals(1, queue.getDroppedCount());
+    }
+
+    @Test
+    public void pollsHighestPriorityAndDropsExpired() throws Exception {
+        FeedbackQueue queue = new FeedbackQueue(4);
+        queue.offer(SPEAK, 1, "low", 0, 0, 300);
+        queue.offer(SPEAK, 2, "high", 2, 0, 5000);
+        queue.offer(SPEAK, 4, "normal", 1, 0, 1500);
+
+        FeedbackQueue.Request request = new FeedbackQueue.Request();
+        // 高优先级在播放：低于下限的反馈留在队列里。
+        assertFalse(queue.poll(request, 100, 3));
+        assertEquals(3, queue.size());
+
+        assertTrue(queue.poll(request, 100, 0));
+        assertEquals("high", request.text.toString());
+        // 低优先级的反馈已经过期，不再执行。
+        assertTrue(queue.poll(request, 400, 0));
+        assertEquals("normal", request.text.toString());
+        assertFalse(queue.poll(request, 400, 0));
+        assertEquals(1, queue.getExpiredCount());
+        assertEquals(queue.getOfferedCount(),
+                queue.getDeliveredCount() + queue.getDroppedCount());
+    }
+
+    @Test
+    public void overflowEvictsLowestPriority() throws Exception {
+        FeedbackQueue queue = new FeedbackQueue(2);
+        queue.offer(SPEAK, 1, "high", 2, 0, Long.MAX_VALUE);
+        queue.offer(SPEAK, 2, "low", 0, 0, Long.MAX_VALUE);
+        queue.offer(SPEAK, 4, "normal", 1, 0, Long.MAX_VALUE);
+        // 比队列中所有反馈都低的新反馈直接丢弃。
+        queue.offer(SPEAK, 8, "lower", 0, 0, Long.MAX_VALUE);
+
+        FeedbackQueue.Request request = new FeedbackQueue.Request();
+        assertTrue(queue.poll(request));
+        assertEquals("high", request.text.toString());
+        assertTrue(queue.poll(request));
+        assertEquals("normal", request.text.toString());
+        assertFalse(queue.poll(request));
+        assertEquals(2, queue.getDroppedCount());
+    }
+}
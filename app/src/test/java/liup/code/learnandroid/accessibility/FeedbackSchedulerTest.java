@@ -0,0 +1,99 @@
+package liup.code.learnandroid.accessibility;
+
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Test;
+
+import static liup.code.learnandroid.accessibility.FeedbackScheduler.PRIORITY_COUNT;
+import static liup.code.learnandroid.accessibility.FeedbackScheduler.PRIORITY_HIGH;
+import static liup.code.learnandroid.accessibility.FeedbackScheduler.PRIORITY_LOW;
+import static liup.code.learnandroid.accessibility.FeedbackScheduler.PRIORITY_NORMAL;
+import static org.junit.Assert.*;
+
+/**
+ * {@link FeedbackScheduler}的本地单元测试。
+ */
+public class FeedbackSchedulerTest {
+
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void classifiesKeys() throws Exception {
+        assertEquals(PRIORITY_HIGH,
+                FeedbackScheduler.classify(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED));
+        assertEquals(PRIORITY_HIGH,
+                FeedbackScheduler.classify(FeedbackProfile.INDEX_RINGER_VIBRATE));
+        assertEquals(PRIORITY_NORMAL,
+                FeedbackScheduler.classify(AccessibilityEvent.TYPE_VIEW_CLICKED));
+        assertEquals(PRIORITY_LOW,
+                FeedbackScheduler.classify(AccessibilityEvent.TYPE_VIEW_HOVER_ENTER));
+        assertEquals(PRIORITY_LOW,
+                FeedbackScheduler.classify(AccessibilityEvent.TYPE_VIEW_FOCUSED));
+    }
+
+    @Test
+    public void deviceStatesAreHighButTrivialEventsAreLow() throws Exception {
+        int[] deviceStates = {FeedbackProfile.INDEX_SCREEN_ON, FeedbackProfile.INDEX_SCREEN_OFF,
+                FeedbackProfile.INDEX_RINGER_NORMAL, FeedbackProfile.INDEX_RINGER_VIBRATE,
+                FeedbackProfile.INDEX_RINGER_SILENT};
+        for (int key : deviceStates) {
+            assertEquals(PRIORITY_HIGH, FeedbackScheduler.classify(key));
+        }
+        // 这些事件的值以前与设备状态相同，不能因此打断窗口切换和铃声模式的播报。
+        int[] trivialEvents = {AccessibilityEvent.TYPE_VIEW_HOVER_EXIT,
+                AccessibilityEvent.TYPE_VIEW_SCROLLED,
+                AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED,
+                AccessibilityEvent.TYPE_TOUCH_EXPLORATION_GESTURE_START,
+                AccessibilityEvent.TYPE_TOUCH_EXPLORATION_GESTURE_END};
+        for (int key : trivialEvents) {
+            assertEquals(PRIORITY_LOW, FeedbackScheduler.classify(key));
+        }
+    }
+
+    @Test
+    public void onlyHigherPriorityPreempts() throws Exception {
+        FeedbackScheduler scheduler = FeedbackScheduler.prioritized();
+        assertEquals(PRIORITY_LOW, scheduler.getMinPriority(0));
+
+        scheduler.onRender(PRIORITY_NORMAL);
+        long normal = scheduler.startPlayback(0, 500 * MILLIS);
+        // 同一优先级的新反馈可以替换，低优先级的要等。
+        assertEquals(PRIORITY_NORMAL, scheduler.getMinPriority(100 * MILLIS));
+        assertEquals(400 * MILLIS, scheduler.getRemainingNanos(100 * MILLIS));
+
+        scheduler.onRender(PRIORITY_HIGH);
+        long high = scheduler.startPlayback(100 * MILLIS, 500 * MILLIS);
+        assertEquals(1, scheduler.getPreemptedCount(PRIORITY_NORMAL));
+        // 高优先级的播报谁也不能打断。
+        assertEquals(PRIORITY_COUNT, scheduler.getMinPriority(200 * MILLIS));
+
+        // 被打断的那句话的结束回调来得晚，不影响当前的播放。
+        assertFalse(scheduler.onPlaybackDone(normal));
+        assertEquals(PRIORITY_COUNT, scheduler.getMinPriority(200 * MILLIS));
+
+        assertTrue(scheduler.onPlaybackDone(high));
+        assertEquals(PRIORITY_LOW, scheduler.getMinPriority(200 * MILLIS));
+        assertEquals(1, scheduler.getCompletedCount(PRIORITY_HIGH));
+    }
+
+    @Test
+    public void playbackWithoutCallbackEndsAtMaxDuration() throws Exception {
+        FeedbackScheduler scheduler = FeedbackScheduler.prioritized();
+        scheduler.onRender(PRIORITY_HIGH);
+        scheduler.startPlayback(0, 100 * MILLIS);
+        assertEquals(PRIORITY_COUNT, scheduler.getMinPriority(99 * MILLIS));
+        assertEquals(PRIORITY_LOW, scheduler.getMinPriority(100 * MILLIS));
+        assertEquals(0, scheduler.getRemainingNanos(100 * MILLIS));
+    }
+
+    @Test
+    public void interruptAllNeverWaitsOrExpires() throws Exception {
+        FeedbackScheduler scheduler = FeedbackScheduler.interruptAll();
+        assertEquals(PRIORITY_NORMAL,
+                scheduler.priorityOf(AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED));
+        assertEquals(Long.MAX_VALUE, scheduler.deadlineOf(PRIORITY_NORMAL, 0));
+        scheduler.onRender(PRIORITY_HIGH);
+        scheduler.startPlayback(0, 500 * MILLIS);
+        assertEquals(PRIORITY_LOW, scheduler.getMinPriority(100 * MILLIS));
+    }
+}
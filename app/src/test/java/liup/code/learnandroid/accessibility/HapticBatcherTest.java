@@ -0,0 +1,95 @@
+package liup.code.learnandroid.accessibility;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link HapticBatcher}的本地单元测试。
+ */
+public class HapticBatcherTest {
+
+    private static final long MILLIS = 1000000L;
+
+    private static final int VIBRATE = 3;
+
+    @Test
+    public void singlePatternPassesThrough() throws Exception {
+        HapticBatcher batcher = new HapticBatcher(25);
+        assertTrue(batcher.add(new long[]{0, 100, 50, 100}, 0));
+        assertArrayEquals(new long[]{0, 100, 50, 100}, batcher.flush());
+        assertNull(batcher.flush());
+        assertEquals(1, batcher.getIssuedCount());
+        assertEquals(0, batcher.getMergedCount());
+    }
+
+    @Test
+    public void overlaysPatternsByArrivalTime() throws Exception {
+        HapticBatcher batcher = new HapticBatcher(25);
+        // 0..100ms和150..250ms振动。
+        assertTrue(batcher.add(new long[]{0, 100, 50, 100}, 1000 * MILLIS));
+        // 10ms后到达：20..60ms，落在第一段里；再300..340ms。
+        assertFalse(batcher.add(new long[]{10, 40, 240, 40}, 1010 * MILLIS));
+        // 20ms后到达：120..160ms，连接起两段之间的空隙。
+        assertFalse(batcher.add(new long[]{100, 40}, 1020 * MILLIS));
+
+        assertArrayEquals(new long[]{0, 100, 20, 130, 50, 40}, batcher.flush());
+        assertEquals(3, batcher.getRequestedCount());
+        assertEquals(2, batcher.getMergedCount());
+        assertEquals(1, batcher.getIssuedCount());
+
+        // 下一个窗口重新开始计时。
+        assertTrue(batcher.add(new long[]{0, 30}, 2000 * MILLIS));
+        assertArrayEquals(new long[]{0, 30}, batcher.flush());
+        assertEquals(2, batcher.getIssuedCount());
+    }
+
+    @Test
+    public void recordsLatencyWhenWaveformIsIssued() throws Exception {
+        HapticBatcher batcher = new HapticBatcher(25);
+        FeedbackStats stats = new FeedbackStats();
+        // 两个模式分别在1000ms和1005ms加入反馈队列，1010ms前后交给合并器。
+        batcher.add(new long[]{0, 100}, 1, 1000 * MILLIS, 1010 * MILLIS);
+        batcher.add(new long[]{0, 50}, 2, 1005 * MILLIS, 1012 * MILLIS);
+        for (int i = 0; i < 6; i++) {
+            batcher.add(new long[]{0, 50}, 2, 1005 * MILLIS, 1012 * MILLIS);
+        }
+        assertEquals(0, stats.getFeedbackLatency(VIBRATE).getCount());
+
+        // 窗口结束、真正调用振动器时才记录，延迟包括在窗口里等待的时间。
+        assertNotNull(batcher.flush(stats, VIBRATE, 1035 * MILLIS));
+        assertEquals(8, stats.getFeedbackLatency(VIBRATE).getCount());
+        assertEquals(35000, stats.getKeyLatency(1).getMaxMicros());
+        assertEquals(30000, stats.getKeyLatency(2).getMaxMicros());
+        assertEquals(7, stats.getKeyLatency(2).getCount());
+
+        // 被打断的模式没有发出，不记录。
+        batcher.add(new long[]{0, 100}, 1, 2000 * MILLIS, 2000 * MILLIS);
+        batcher.clear();
+        assertNull(batcher.flush(stats, VIBRATE, 2025 * MILLIS));
+        assertEquals(8, stats.getFeedbackLatency(VIBRATE).getCount());
+    }
+
+    @Test
+    public void growsForManySegments() throws Exception {
+        HapticBatcher batcher = new HapticBatcher(25);
+        long[] pattern = new long[40];
+        for (int i = 0; i < pattern.length; i++) {
+            pattern[i] = 10;
+        }
+        batcher.add(pattern, 0);
+        assertArrayEquals(pattern, batcher.flush());
+    }
+
+    @Test
+    public void clearDropsPendingPatterns() throws Exception {
+        HapticBatcher batcher = new HapticBatcher(25);
+        batcher.add(new long[]{0, 100}, 0);
+        batcher.clear();
+        assertNull(batcher.flush());
+        assertTrue(batcher.add(new long[]{0, 0}, 0));
+        // 没有振动段时不调用振动器。
+        assertNull(batcher.flush());
+        assertEquals(0, batcher.getIssuedCount());
+    }
+}
@@ -0,0 +1,58 @@
+package liup.code.learnandroid.accessibility;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link LatencyHistogram}的本地单元测试。
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsAreContiguousAndBounded() throws Exception {
+        int previous = -1;
+        for (long micros = 0; micros < 1 << 20; micros++) {
+            int index = LatencyHistogram.bucketIndex(micros);
+            assertTrue(index == previous || index == previous + 1);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue(micros <= upper);
+            // 相对误差不超过1/16。
+            assertTrue(upper - micros <= micros / 16);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void percentilesMatchSortedValues() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(20180328L);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 100 + random.nextInt(50000);
+            histogram.record(values[i] * 1000);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMaxMicros());
+        for (double percentile : new double[]{50, 90, 99}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + actual + " vs " + expected,
+                    actual >= expected && actual - expected <= expected / 16);
+        }
+    }
+
+    @Test
+    public void emptyAndNegative() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+    }
+}
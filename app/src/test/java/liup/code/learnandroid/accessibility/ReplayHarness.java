@@ -0,0 +1,347 @@
+package liup.code.learnandroid.accessibility;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * 在JVM上重放事件轨迹：反馈通道、合并队列和统计都是真实的，TTS、耳机和振动器换成假的。
+ *
+ * 用轨迹里的事件时间作为模拟时钟。假的后端执行每条反馈要占用反馈线程一段固定的模拟时间，
+ * 这期间到达的事件在队列里合并或被挤掉，与设备上的情况一致。
+ *
+ * 设置了{@link #setSpeechPlaybackMillis}时，说出的每句话还要播放一段模拟时间，
+ * 播放完才算听到了；播放期间开始的下一句话会打断它。用于比较不同的{@link FeedbackScheduler}。
+ *
+ * 耳机和振动通道订阅的事件类型与服务一样由res/xml/clockback_profile.xml生成的{@link FeedbackProfile}决定。
+ */
+class ReplayHarness implements FeedbackChannel.Sink, FeedbackPipeline.Renderer {
+
+    static final int SPEAK = 1;
+
+    static final int STOP_SPEAK = 2;
+
+    static final int PLAY_EARCON = 5;
+
+    static final int STOP_PLAY_EARCON = 6;
+
+    static final int VIBRATE = 7;
+
+    static final int STOP_VIBRATE = 8;
+
+    /** 与ClockBackService相同的队列容量. */
+    static final int CAPACITY = 8;
+
+    /** 服务使用的反馈配置；Gradle在模块目录下运行单元测试，也可以在仓库根目录下运行. */
+    private static final String[] PROFILE_PATHS = {
+            "src/main/res/xml/clockback_profile.xml",
+            "app/src/main/res/xml/clockback_profile.xml"
+    };
+
+    /** JVM上没有资源表，有提示音的条目用这个代替资源ID. */
+    private static final int FAKE_SOUND_RESOURCE_ID = 1;
+
+    /** 一次重放的结果. */
+    static class Result {
+        int events;
+
+        /** 不在通道订阅的事件类型中，系统不会发送过来的事件. */
+        int filtered;
+
+        int spoken;
+
+        int earcons;
+
+        int vibrations;
+
+        int stops;
+
+        long offered;
+
+        long delivered;
+
+        long dropped;
+
+        int maxDepth;
+
+        long expired;
+
+        /** 按{@link FeedbackScheduler#classify}的优先级计数：加入队列的反馈. */
+        final long[] offeredByPriority = new long[FeedbackScheduler.PRIORITY_COUNT];
+
+        /** 播放完的语音. */
+        final long[] completed = new long[FeedbackScheduler.PRIORITY_COUNT];
+
+        /** 被下一句话打断的语音. */
+        final long[] preempted = new long[FeedbackScheduler.PRIORITY_COUNT];
+
+        String depthHistogram;
+
+        long wallNanos;
+
+        long eventsPerSecond() {
+            return events * 1000000000L / Math.max(1, wallNanos);
+        }
+
+        /** 某个优先级的反馈中完整播放出来的比例. */
+        double completionRatio(int priority) {
+            return (double) completed[priority] / Math.max(1, offeredByPriority[priority]);
+        }
+
+        @Override
+        public String toString() {
+            return events + " events: filtered=" + filtered + " spoken=" + spoken
+                    + " earcons=" + earcons + " vibrations=" + vibrations + " offered=" + offered
+                    + " delivered=" + delivered + " dropped=" + dropped
+                    + " expired=" + expired + " maxDepth=" + maxDepth + " depth=" + depthHistogram
+                    + " offeredByPriority=" + Arrays.toString(offeredByPriority)
+                    + " completed=" + Arrays.toString(completed)
+                    + " preempted=" + Arrays.toString(preempted)
+                    + " throughput=" + eventsPerSecond() + "/s";
+        }
+    }
+
+    private final long mSpeakMillis;
+
+    private final long mEarconMillis;
+
+    private final long mVibrateMillis;
+
+    private final FeedbackPipeline mPipeline;
+
+    private final FeedbackProfile mProfile;
+
+    private final Result mResult = new Result();
+
+    /** 假的反馈线程空闲下来的模拟时间. */
+    private long mBusyUntil = Long.MIN_VALUE;
+
+    /** 当前事件的模拟时间. */
+    private long mEventTime;
+
+    /** 一句话播放的模拟时间，为0时不模拟播放. */
+    private long mSpeechPlaybackMillis;
+
+    private boolean mPlaying;
+
+    private long mPlaybackEnd;
+
+    private long mPlaybackToken;
+
+    private int mPlaybackPriority;
+
+    /**
+     * @param speakMillis 假的TTS说一句话占用反馈线程的时间。
+     * @param earconMillis 假的SoundPool播放耳机占用的时间。
+     * @param vibrateMillis 假的振动器占用的时间。
+     */
+    ReplayHarness(long speakMillis, long earconMillis, long vibrateMillis) throws IOException {
+        this(speakMillis, earconMillis, vibrateMillis, FeedbackScheduler.prioritized());
+    }
+
+    /**
+     * @param speakMillis 假的TTS说一句话占用反馈线程的时间。
+     * @param earconMillis 假的SoundPool播放耳机占用的时间。
+     * @param vibrateMillis 假的振动器占用的时间。
+     * @param scheduler 流水线使用的调度器。
+     */
+    ReplayHarness(long speakMillis, long earconMillis, long vibrateMillis,
+                  FeedbackScheduler scheduler) throws IOException {
+        mProfile = loadProfile();
+        mSpeakMillis = speakMillis;
+        mEarconMillis = earconMillis;
+        mVibrateMillis = vibrateMillis;
+        mPipeline = new FeedbackPipeline(CAPACITY, this, scheduler);
+    }
+
+    /** 说出的每句话播放的模拟时间. */
+    void setSpeechPlaybackMillis(long speechPlaybackMillis) {
+        mSpeechPlaybackMillis = speechPlaybackMillis;
+    }
+
+    FeedbackChannel spokenChannel() {
+        return FeedbackChannel.spoken(0, RingerModeFeedback.SPOKEN_EVENT_TYPES, this,
+                SPEAK, STOP_SPEAK);
+    }
+
+    FeedbackChannel earconChannel() {
+        return FeedbackChannel.keyed(0, RingerModeFeedback.eventTypesOf(mProfile.getSoundKeys(),
+                FeedbackProfile.DEVICE_STATE_KEYS), this, PLAY_EARCON, STOP_PLAY_EARCON);
+    }
+
+    FeedbackChannel hapticChannel() {
+        return FeedbackChannel.keyed(0,
+                RingerModeFeedback.eventTypesOf(mProfile.getVibrationKeys(),
+                        FeedbackProfile.DEVICE_STATE_KEYS), this, VIBRATE, STOP_VIBRATE);
+    }
+
+    FeedbackProfile getProfile() {
+        return mProfile;
+    }
+
+    /**
+     * 读取服务使用的配置文件。JVM上没有XmlResourceParser，用DOM读取属性，
+     * key的名字和振动模式仍由{@link FeedbackProfileLoader}解析。
+     */
+    static FeedbackProfile loadProfile() throws IOException {
+        File file = null;
+        for (String path : PROFILE_PATHS) {
+            if (new File(path).isFile()) {
+                file = new File(path);
+                break;
+            }
+        }
+        if (file == null) {
+            throw new IOException("Cannot find " + Arrays.toString(PROFILE_PATHS) + " from "
+                    + new File("").getAbsolutePath());
+        }
+        NodeList feedback;
+        try {
+            feedback = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file)
+                    .getElementsByTagName("feedback");
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        } catch (SAXException e) {
+            throw new IOException(e);
+        }
+        List<FeedbackProfile.Entry> entries = new ArrayList<FeedbackProfile.Entry>();
+        for (int i = 0; i < feedback.getLength(); i++) {
+            Element element = (Element) feedback.item(i);
+            int key = FeedbackProfileLoader.keyOf(element.getAttribute("key"));
+            String vibration = element.getAttribute("vibration");
+            entries.add(FeedbackProfile.entry(key,
+                    element.hasAttribute("sound") ? FAKE_SOUND_RESOURCE_ID : 0,
+                    vibration.isEmpty() ? new long[0]
+                            : FeedbackProfileLoader.parsePattern(vibration)));
+        }
+        return FeedbackProfile.of(entries.toArray(new FeedbackProfile.Entry[entries.size()]));
+    }
+
+    FeedbackPipeline getPipeline() {
+        return mPipeline;
+    }
+
+    /**
+     * 把轨迹中的事件依次交给反馈通道，直到轨迹结束，最后执行完所有等待的反馈。
+     * 与系统一样，通道没有订阅的事件类型不交给通道。
+     */
+    Result replay(EventTrace.Reader reader, FeedbackChannel channel) throws IOException {
+        EventTrace.Record record = new EventTrace.Record();
+        long start = System.nanoTime();
+        while (reader.next(record)) {
+            mResult.events++;
+            if ((channel.getEventTypes() & record.eventType) == 0) {
+                mResult.filtered++;
+                continue;
+            }
+            runFeedbackUntil(record.eventTime);
+            if (mBusyUntil < record.eventTime) {
+                mBusyUntil = record.eventTime;
+            }
+            mEventTime = record.eventTime;
+            channel.onEvent(record.eventType, record.text, record.contentDescription);
+        }
+        runFeedbackUntil(Long.MAX_VALUE);
+        mResult.wallNanos = System.nanoTime() - start;
+
+        FeedbackQueue queue = mPipeline.getQueue();
+        mResult.offered = queue.getOfferedCount();
+        mResult.delivered = queue.getDeliveredCount();
+        mResult.dropped = queue.getDroppedCount();
+        mResult.expired = queue.getExpiredCount();
+        mResult.maxDepth = queue.getMaxSize();
+        mResult.depthHistogram = queue.getDepthHistogram();
+        return mResult;
+    }
+
+    /** 假的反馈线程在模拟时间time之前能开始执行的反馈都执行掉，期间结束的播放通知调度器. */
+    private void runFeedbackUntil(long time) {
+        while (true) {
+            if (mPlaying && mPlaybackEnd <= Math.min(time, mBusyUntil)) {
+                // 播放在反馈线程下次取反馈之前结束。
+                mPlaying = false;
+                mResult.completed[mPlaybackPriority]++;
+                mPipeline.getScheduler().onPlaybackDone(mPlaybackToken);
+                continue;
+            }
+            if (mBusyUntil > time) {
+                return;
+            }
+            if (mPipeline.renderNext(toNanos(mBusyUntil))) {
+                // render推进了mBusyUntil。
+                continue;
+            }
+            if (mPlaying && mPlaybackEnd <= time) {
+                // 剩下的反馈在等播放结束。
+                mBusyUntil = mPlaybackEnd;
+                continue;
+            }
+            return;
+        }
+    }
+
+    private static long toNanos(long millis) {
+        return millis * 1000000L;
+    }
+
+    @Override
+    public void enqueueFeedback(int what, int key, CharSequence text) {
+        // 假的反馈线程总是在运行，不需要另外通知。
+        mResult.offeredByPriority[FeedbackScheduler.classify(key)]++;
+        mPipeline.offer(what, key, text, toNanos(mEventTime));
+    }
+
+    @Override
+    public void stopFeedback(int stopWhat) {
+        mResult.stops++;
+    }
+
+    @Override
+    public CharSequence getDeviceStateUtterance(int index) {
+        return "Screen on. Volume 50 percent.";
+    }
+
+    @Override
+    public void render(int what, int key, CharSequence text, long enqueueTimeNanos) {
+        switch (what) {
+            case SPEAK:
+                mResult.spoken++;
+                if (mSpeechPlaybackMillis > 0) {
+                    startPlayback(key);
+                }
+                mBusyUntil += mSpeakMillis;
+                return;
+            case PLAY_EARCON:
+                mResult.earcons++;
+                mBusyUntil += mEarconMillis;
+                return;
+            case VIBRATE:
+                mResult.vibrations++;
+                mBusyUntil += mVibrateMillis;
+                return;
+            default:
+                throw new IllegalArgumentException("Unexpected feedback " + what);
+        }
+    }
+
+    /** 在反馈线程的当前时间开始播放一句话，打断正在播放的. */
+    private void startPlayback(int key) {
+        if (mPlaying && mPlaybackEnd > mBusyUntil) {
+            mResult.preempted[mPlaybackPriority]++;
+        }
+        mPlaying = true;
+        mPlaybackEnd = mBusyUntil + mSpeechPlaybackMillis;
+        mPlaybackPriority = FeedbackScheduler.classify(key);
+        mPlaybackToken = mPipeline.getScheduler().startPlayback(toNanos(mBusyUntil),
+                toNanos(mSpeechPlaybackMillis));
+    }
+}
@@ -0,0 +1,123 @@
+package liup.code.learnandroid.accessibility;
+
+import android.accessibilityservice.AccessibilityServiceInfo;
+import android.media.AudioManager;
+import android.view.accessibility.AccessibilityEvent;
+
+import org.junit.Test;
+
+
+import static liup.code.learnandroid.accessibility.FeedbackProfile.DEVICE_STATE_KEYS;
+import static liup.code.learnandroid.accessibility.FeedbackProfile.INDEX_RINGER_NORMAL;
+import static liup.code.learnandroid.accessibility.FeedbackProfile.INDEX_RINGER_SILENT;
+import static liup.code.learnandroid.accessibility.FeedbackProfile.INDEX_RINGER_VIBRATE;
+import static liup.code.learnandroid.accessibility.FeedbackProfile.INDEX_SCREEN_OFF;
+import static liup.code.learnandroid.accessibility.FeedbackProfile.INDEX_SCREEN_ON;
+import static org.junit.Assert.*;
+
+/**
+ * {@link RingerModeFeedback}的本地单元测试：每种振铃模式订阅的事件类型。
+ */
+public class RingerModeFeedbackTest {
+
+    /** 与res/xml/clockback_profile.xml中有振动模式的key相同. */
+    private static final int[] VIBRATION_KEYS = {
+            AccessibilityEvent.TYPE_VIEW_CLICKED,
+            AccessibilityEvent.TYPE_VIEW_LONG_CLICKED,
+            AccessibilityEvent.TYPE_VIEW_SELECTED,
+            AccessibilityEvent.TYPE_VIEW_FOCUSED,
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED,
+            AccessibilityEvent.TYPE_VIEW_HOVER_ENTER,
+            INDEX_SCREEN_ON,
+            INDEX_SCREEN_OFF
+    };
+
+    /** 与res/xml/clockback_profile.xml中有提示音的key相同. */
+    private static final int[] SOUND_KEYS = {
+            AccessibilityEvent.TYPE_VIEW_CLICKED,
+            AccessibilityEvent.TYPE_VIEW_LONG_CLICKED,
+            AccessibilityEvent.TYPE_VIEW_SELECTED,
+            AccessibilityEvent.TYPE_VIEW_FOCUSED,
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED,
+            AccessibilityEvent.TYPE_VIEW_HOVER_ENTER,
+            INDEX_SCREEN_ON,
+            INDEX_SCREEN_OFF,
+            INDEX_RINGER_SILENT,
+            INDEX_RINGER_VIBRATE,
+            INDEX_RINGER_NORMAL
+    };
+
+    private static final int INTERACTION_TYPES = AccessibilityEvent.TYPE_VIEW_CLICKED
+            | AccessibilityEvent.TYPE_VIEW_LONG_CLICKED
+            | AccessibilityEvent.TYPE_VIEW_SELECTED
+            | AccessibilityEvent.TYPE_VIEW_FOCUSED
+            | AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
+            | AccessibilityEvent.TYPE_VIEW_HOVER_ENTER;
+
+    private static final FeedbackChannel.Sink NO_SINK = new FeedbackChannel.Sink() {
+        @Override
+        public void enqueueFeedback(int what, int key, CharSequence text) {
+        }
+
+        @Override
+        public void stopFeedback(int stopWhat) {
+        }
+
+        @Override
+        public CharSequence getDeviceStateUtterance(int index) {
+            return null;
+        }
+    };
+
+    private final RingerModeFeedback mModes = new RingerModeFeedback(
+            FeedbackChannel.spoken(AccessibilityServiceInfo.FEEDBACK_SPOKEN,
+                    RingerModeFeedback.SPOKEN_EVENT_TYPES, NO_SINK, 1, 2),
+            FeedbackChannel.keyed(AccessibilityServiceInfo.FEEDBACK_AUDIBLE,
+                    RingerModeFeedback.eventTypesOf(SOUND_KEYS, DEVICE_STATE_KEYS), NO_SINK, 5, 6),
+            FeedbackChannel.keyed(AccessibilityServiceInfo.FEEDBACK_HAPTIC,
+                    RingerModeFeedback.eventTypesOf(VIBRATION_KEYS, DEVICE_STATE_KEYS), NO_SINK, 7, 8));
+
+    @Test
+    public void silentSubscribesOnlyToVibratedTypes() throws Exception {
+        FeedbackChannel channel = mModes.channelFor(AudioManager.RINGER_MODE_SILENT);
+        assertEquals(AccessibilityServiceInfo.FEEDBACK_HAPTIC, channel.getFeedbackType());
+        // 屏幕开关是设备状态，不是事件类型，不订阅。
+        assertEquals(INTERACTION_TYPES, channel.getEventTypes());
+        assertEquals(0, channel.getEventTypes() & AccessibilityEvent.TYPE_VIEW_HOVER_EXIT);
+        assertEquals(AccessibilityServiceInfo.FEEDBACK_HAPTIC
+                        | AccessibilityServiceInfo.FEEDBACK_SPOKEN
+                        | AccessibilityServiceInfo.FEEDBACK_AUDIBLE,
+                RingerModeFeedback.takeOverFeedbackTypes(AudioManager.RINGER_MODE_SILENT));
+    }
+
+    @Test
+    public void vibrateSubscribesOnlyToEarconTypes() throws Exception {
+        FeedbackChannel channel = mModes.channelFor(AudioManager.RINGER_MODE_VIBRATE);
+        assertEquals(AccessibilityServiceInfo.FEEDBACK_AUDIBLE, channel.getFeedbackType());
+        assertEquals(INTERACTION_TYPES, channel.getEventTypes());
+        // 铃声模式的key也不订阅。
+        assertEquals(0, channel.getEventTypes() & DEVICE_STATE_KEYS);
+        assertEquals(AccessibilityServiceInfo.FEEDBACK_AUDIBLE
+                        | AccessibilityServiceInfo.FEEDBACK_SPOKEN,
+                RingerModeFeedback.takeOverFeedbackTypes(AudioManager.RINGER_MODE_VIBRATE));
+    }
+
+    @Test
+    public void normalSubscribesToSpokenTypes() throws Exception {
+        FeedbackChannel channel = mModes.channelFor(AudioManager.RINGER_MODE_NORMAL);
+        assertEquals(AccessibilityServiceInfo.FEEDBACK_SPOKEN, channel.getFeedbackType());
+        assertEquals(RingerModeFeedback.SPOKEN_EVENT_TYPES, channel.getEventTypes());
+        assertEquals(INTERACTION_TYPES, channel.getEventTypes() & INTERACTION_TYPES);
+        assertTrue(channel.getEventTypes() != AccessibilityEvent.TYPES_ALL_MASK);
+        assertEquals(0, channel.getEventTypes() & (AccessibilityEvent.TYPE_VIEW_SCROLLED
+                | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED
+                | AccessibilityEvent.TYPE_VIEW_HOVER_EXIT));
+        assertEquals(AccessibilityServiceInfo.FEEDBACK_SPOKEN,
+                RingerModeFeedback.takeOverFeedbackTypes(AudioManager.RINGER_MODE_NORMAL));
+    }
+
+    @Test
+    public void unknownModeKeepsCurrentChannel() throws Exception {
+        assertNull(mModes.channelFor(42));
+    }
+}
@@ -0,0 +1,131 @@
+package liup.code.learnandroid.accessibility;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SpeechCache}的本地单元测试。
+ */
+public class SpeechCacheTest {
+
+    private static final int ENTRY_BYTES = 100;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void keyDependsOnTextLocaleAndRate() throws Exception {
+        SpeechCache cache = new SpeechCache(mFolder.newFolder(), 10 * ENTRY_BYTES);
+        String key = cache.keyOf("Screen on", Locale.US, 100);
+        assertEquals(16, key.length());
+        assertEquals(key, cache.keyOf(new StringBuilder("Screen on"), Locale.US, 100));
+        assertFalse(key.equals(cache.keyOf("Screen off", Locale.US, 100)));
+        assertFalse(key.equals(cache.keyOf("Screen on", Locale.UK, 100)));
+        assertFalse(key.equals(cache.keyOf("Screen on", Locale.US, 150)));
+        // 各段之间不会互相混淆。
+        assertFalse(SpeechCache.hashOf("a", new Locale("bc"), 100)
+                == SpeechCache.hashOf("ab", new Locale("c"), 100));
+    }
+
+    @Test
+    public void reusesKeyStringForRecurringText() throws Exception {
+        SpeechCache cache = new SpeechCache(mFolder.newFolder(), 10 * ENTRY_BYTES);
+        StringBuilder buffer = new StringBuilder("Alarm on");
+        String key = cache.keyOf(buffer, Locale.US, 100);
+        assertSame(key, cache.keyOf(buffer, Locale.US, 100));
+
+        // 缓冲区内容变了，key也跟着变；换回来时与另一个缓存实例算出的key相同。
+        buffer.setLength(0);
+        buffer.append("Alarm off");
+        assertFalse(key.equals(cache.keyOf(buffer, Locale.US, 100)));
+        assertEquals(key, new SpeechCache(mFolder.newFolder(), ENTRY_BYTES)
+                .keyOf("Alarm on", Locale.US, 100));
+    }
+
+    @Test
+    public void synthesizesOnSecondMissAndCountsHits() throws Exception {
+        SpeechCache cache = new SpeechCache(mFolder.newFolder(), 10 * ENTRY_BYTES);
+        String key = cache.keyOf("Screen on", Locale.US, 100);
+
+        assertNull(cache.get(key));
+        assertNull(cache.beginWrite(key));
+        assertNull(cache.get(key));
+        File target = cache.beginWrite(key);
+        assertNotNull(target);
+        // 正在合成时不重复合成。
+        assertNull(cache.beginWrite(key));
+
+        write(target, ENTRY_BYTES);
+        cache.commit(key);
+        assertNotNull(cache.get(key));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(ENTRY_BYTES, cache.getSizeBytes());
+    }
+
+    @Test
+    public void abortDiscardsTempFile() throws Exception {
+        SpeechCache cache = new SpeechCache(mFolder.newFolder(), 10 * ENTRY_BYTES);
+        String key = cache.keyOf("Alarm", Locale.US, 100);
+        cache.beginWrite(key);
+        File target = cache.beginWrite(key);
+        write(target, ENTRY_BYTES);
+        cache.abort(key);
+
+        assertFalse(target.exists());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedAndSurvivesRestart() throws Exception {
+        File directory = mFolder.newFolder();
+        SpeechCache cache = new SpeechCache(directory, 3 * ENTRY_BYTES);
+        String[] keys = new String[4];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = cache.keyOf("Utterance " + i, Locale.US, 100);
+        }
+        put(cache, keys[0]);
+        put(cache, keys[1]);
+        put(cache, keys[2]);
+        // 使用keys[0]后，最久未用的是keys[1]。
+        assertNotNull(cache.get(keys[0]));
+        put(cache, keys[3]);
+
+        assertEquals(Arrays.asList(keys[2], keys[0], keys[3]), cache.getKeys());
+        assertEquals(3 * ENTRY_BYTES, cache.getSizeBytes());
+        assertFalse(new File(directory, keys[1]).exists());
+
+        // 重新打开时恢复已缓存的文件，并清掉残留的临时文件。
+        write(new File(directory, keys[1] + ".tmp"), ENTRY_BYTES);
+        SpeechCache reopened = new SpeechCache(directory, 3 * ENTRY_BYTES);
+        assertEquals(3, reopened.size());
+        assertEquals(3 * ENTRY_BYTES, reopened.getSizeBytes());
+        assertNotNull(reopened.get(keys[3]));
+        assertFalse(new File(directory, keys[1] + ".tmp").exists());
+    }
+
+    private static void put(SpeechCache cache, String key) throws IOException {
+        cache.beginWrite(key);
+        write(cache.beginWrite(key), ENTRY_BYTES);
+        cache.commit(key);
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package liup.code.learnandroid.accessibility;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link SpeechEngineLifecycle}的本地单元测试。
+ */
+public class SpeechEngineLifecycleTest {
+
+    private static final int SPEAK = 1;
+
+    private static final long MILLIS = 1000000L;
+
+    private static final long GRACE_MILLIS = 10000;
+
+    private final SpeechEngineLifecycle mLifecycle = new SpeechEngineLifecycle(3, GRACE_MILLIS);
+
+    private final List<String> mRendered = new ArrayList<String>();
+
+    private final FeedbackPipeline.Renderer mRenderer = new FeedbackPipeline.Renderer() {
+        @Override
+        public void render(int what, int key, CharSequence text, long enqueueTimeNanos) {
+            mRendered.add(text + "@" + enqueueTimeNanos);
+        }
+    };
+
+    @Test
+    public void buffersUntilReadyThenFlushesInOrder() throws Exception {
+        assertTrue(mLifecycle.start(0));
+        StringBuilder reused = new StringBuilder("Alarm");
+        assertFalse(mLifecycle.offer(SPEAK, 1, reused, 10, 10));
+        // 缓冲时复制了文本，之后修改复用的缓冲区不影响。
+        reused.setLength(0);
+        reused.append("7 30");
+        assertFalse(mLifecycle.offer(SPEAK, 1, reused, 20, 20));
+        assertEquals(2, mLifecycle.getPendingCount());
+        assertEquals(0, mLifecycle.flush(mRenderer, 30));
+
+        assertTrue(mLifecycle.onReady(true, 300 * MILLIS));
+        assertEquals(300 * MILLIS, mLifecycle.getLastInitNanos());
+        assertEquals(2, mLifecycle.flush(mRenderer, 305 * MILLIS));
+        assertEquals(Arrays.asList("Alarm@10", "7 30@20"), mRendered);
+        assertEquals(305 * MILLIS, mLifecycle.getLastTimeToFirstUtteranceNanos());
+
+        // 就绪后直接执行。
+        assertTrue(mLifecycle.offer(SPEAK, 1, "Snooze", 400 * MILLIS, 400 * MILLIS));
+        assertEquals(305 * MILLIS, mLifecycle.getLastTimeToFirstUtteranceNanos());
+    }
+
+    @Test
+    public void boundedBufferDropsOldest() throws Exception {
+        mLifecycle.start(0);
+        for (int i = 0; i < 5; i++) {
+            mLifecycle.offer(SPEAK, 1, "u" + i, i, i);
+        }
+        assertEquals(3, mLifecycle.getPendingCount());
+        assertEquals(2, mLifecycle.getDroppedCount());
+        mLifecycle.onReady(true, 10);
+        mLifecycle.flush(mRenderer, 10);
+        assertEquals(Arrays.asList("u2@2", "u3@3", "u4@4"), mRendered);
+    }
+
+    @Test
+    public void interruptClearsBuffer() throws Exception {
+        mLifecycle.start(0);
+        mLifecycle.offer(SPEAK, 1, "stale", 1, 1);
+        mLifecycle.clearPending();
+        assertFalse(mLifecycle.onReady(true, 10));
+        assertEquals(0, mLifecycle.flush(mRenderer, 10));
+        assertEquals(1, mLifecycle.getDroppedCount());
+    }
+
+    @Test
+    public void warmRebindWithinGracePeriod() throws Exception {
+        mLifecycle.start(0);
+        mLifecycle.onReady(true, 100 * MILLIS);
+        assertTrue(mLifecycle.release(1000 * MILLIS));
+        assertEquals(SpeechEngineLifecycle.STATE_STANDBY, mLifecycle.getState());
+        // 待机时不说话。
+        assertFalse(mLifecycle.offer(SPEAK, 1, "late", 0, 1001 * MILLIS));
+
+        // 宽限期内重新绑定：不需要创建引擎，立即可以说话。
+        assertFalse(mLifecycle.start(5000 * MILLIS));
+        assertTrue(mLifecycle.isReady());
+        assertTrue(mLifecycle.offer(SPEAK, 1, "hi", 0, 5002 * MILLIS));
+        assertEquals(2 * MILLIS, mLifecycle.getLastTimeToFirstUtteranceNanos());
+
+        // 之前安排的宽限期检查已经过时。
+        assertFalse(mLifecycle.onGraceExpired((1000 + GRACE_MILLIS) * MILLIS));
+        assertTrue(mLifecycle.isReady());
+        assertTrue(mLifecycle.toString().contains("coldStarts=1, warmStarts=1"));
+    }
+
+    @Test
+    public void shutsDownAfterGracePeriod() throws Exception {
+        mLifecycle.start(0);
+        mLifecycle.onReady(true, 1);
+        mLifecycle.release(1000 * MILLIS);
+        assertFalse(mLifecycle.onGraceExpired((1000 + GRACE_MILLIS - 1) * MILLIS));
+        assertTrue(mLifecycle.onGraceExpired((1000 + GRACE_MILLIS) * MILLIS));
+        assertEquals(SpeechEngineLifecycle.STATE_STOPPED, mLifecycle.getState());
+        assertTrue(mLifecycle.start(20000 * MILLIS));
+    }
+
+    @Test
+    public void releaseBeforeInitKeepsStarting() throws Exception {
+        mLifecycle.start(0);
+        mLifecycle.release(10);
+        // 解绑后引擎才初始化完成：仍在待机，没有缓冲的语音需要执行。
+        assertFalse(mLifecycle.onReady(true, 20));
+        assertEquals(SpeechEngineLifecycle.STATE_STANDBY, mLifecycle.getState());
+        assertFalse(mLifecycle.start(30));
+        assertTrue(mLifecycle.isReady());
+    }
+
+    @Test
+    public void failedInitDropsBufferAndStops() throws Exception {
+        mLifecycle.start(0);
+        mLifecycle.offer(SPEAK, 1, "lost", 1, 1);
+        assertFalse(mLifecycle.onReady(false, 10));
+        assertEquals(SpeechEngineLifecycle.STATE_STOPPED, mLifecycle.getState());
+        assertEquals(1, mLifecycle.getDroppedCount());
+        assertTrue(mLifecycle.start(20));
+    }
+}
@@ -0,0 +1,54 @@
+package liup.code.learnandroid.accessibility;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ToggleGridIndex}的本地单元测试。
+ */
+public class ToggleGridIndexTest {
+
+    /** 3行4列，格子20x10，间隔2，从(5, 7)开始. */
+    private final ToggleGridIndex mIndex = new ToggleGridIndex(3, 4, 20, 10, 2, 5, 7);
+
+    @Test
+    public void measuresGrid() throws Exception {
+        assertEquals(12, mIndex.getCellCount());
+        assertEquals(4 * 22 - 2, mIndex.getWidth());
+        assertEquals(3 * 12 - 2, mIndex.getHeight());
+        assertEquals(0, new ToggleGridIndex(0, 0, 1, 1, 2, 0, 0).getWidth());
+    }
+
+    @Test
+    public void findsCellsAndGaps() throws Exception {
+        assertEquals(0, mIndex.cellAt(5, 7));
+        assertEquals(0, mIndex.cellAt(24.9f, 16.9f));
+        // 第一列和第二列之间的间隔。
+        assertEquals(ToggleGridIndex.NO_CELL, mIndex.cellAt(25, 8));
+        assertEquals(1, mIndex.cellAt(27, 8));
+        // 第二行第三列。
+        assertEquals(6, mIndex.cellAt(5 + 2 * 22 + 1, 7 + 12 + 1));
+        // 网格外。
+        assertEquals(ToggleGridIndex.NO_CELL, mIndex.cellAt(4, 8));
+        assertEquals(ToggleGridIndex.NO_CELL, mIndex.cellAt(5 + 4 * 22, 8));
+        assertEquals(ToggleGridIndex.NO_CELL, mIndex.cellAt(6, 7 + 3 * 12));
+    }
+
+    @Test
+    public void boundsRoundTrip() throws Exception {
+        ToggleGridIndex index = new ToggleGridIndex(32, 32, 48, 48, 4, 10, 10);
+        for (int cell = 0; cell < index.getCellCount(); cell++) {
+            int left = index.getLeft(cell);
+            int top = index.getTop(cell);
+            assertEquals(cell, index.cellAt(left, top));
+            assertEquals(cell, index.cellAt(left + 47, top + 47));
+            assertEquals(cell, index.rowOf(cell) * 32 + index.columnOf(cell));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCells() throws Exception {
+        new ToggleGridIndex(2, 2, 0, 10, 0, 0, 0);
+    }
+}
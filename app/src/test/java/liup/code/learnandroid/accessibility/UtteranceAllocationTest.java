@@ -0,0 +1,91 @@
+package liup.code.learnandroid.accessibility;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * 验证话语的热路径（格式化、加入合并队列、反馈线程取出、计算缓存key并查询语音缓存）
+ * 在稳定状态下不分配内存。通过HotSpot的线程分配计数统计当前线程分配的字节数。
+ */
+public class UtteranceAllocationTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static final int WARM_UP_EVENTS = 20000;
+
+    private static final int MEASURED_EVENTS = 100000;
+
+    private static final int SPEAK = 1;
+
+    @Test
+    public void formatAndQueueDoNotAllocate() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        List<CharSequence> clickText = new ArrayList<CharSequence>();
+        clickText.add("07");
+        clickText.add("30");
+        clickText.add("AM");
+        List<CharSequence> noText = Collections.emptyList();
+        CharSequence description = "Alarm on";
+
+        StringBuilder utterance = new StringBuilder();
+        FeedbackQueue queue = new FeedbackQueue(8);
+        FeedbackQueue.Request drained = new FeedbackQueue.Request();
+        SpeechCache cache = new SpeechCache(mFolder.newFolder(), 1024 * 1024);
+
+        runEvents(WARM_UP_EVENTS, clickText, noText, description, utterance, queue, drained,
+                cache);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        int spoken = runEvents(MEASURED_EVENTS, clickText, noText, description, utterance,
+                queue, drained, cache);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(MEASURED_EVENTS, spoken);
+        assertEquals("Alarm on", drained.text.toString());
+        assertEquals(MEASURED_EVENTS + WARM_UP_EVENTS, cache.getMissCount());
+        // 允许计数接口本身的少量分配，但远小于每个事件一个字节。
+        assertTrue("allocated " + allocated + " bytes for " + MEASURED_EVENTS + " events",
+                allocated < 1024);
+
+        // "07"读作"7"。
+        assertEquals("7 30 AM ",
+                UtteranceFormatter.format(clickText, description, utterance).toString());
+    }
+
+    private static int runEvents(int count, List<CharSequence> clickText,
+                                 List<CharSequence> noText, CharSequence description,
+                                 StringBuilder utterance, FeedbackQueue queue,
+                                 FeedbackQueue.Request drained, SpeechCache cache) {
+        int spoken = 0;
+        for (int i = 0; i < count; i++) {
+            boolean click = (i & 1) == 0;
+            UtteranceFormatter.format(click ? clickText : noText, description, utterance);
+            queue.offer(SPEAK, click ? 1 : 8, utterance);
+            while (queue.poll(drained)) {
+                // 与ClockBackService.speak相同：查询缓存，未命中时决定是否合成。
+                String key = cache.keyOf(drained.text, Locale.US, 100);
+                cache.get(key);
+                cache.beginWrite(key);
+                spoken++;
+            }
+        }
+        return spoken;
+    }
+}